@@ -0,0 +1,35 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.metric;
+
+import java.util.List;
+
+/**
+ * A listener of the cardinalities reported by {@link CardinalityReporter}.
+ *
+ * @author Yauheni Shahun
+ */
+public interface CardinalityListener {
+
+  /**
+   * Receives the reports of all the meters for a single interval. The method is called by the
+   * reporter's thread, so it shouldn't block for long.
+   *
+   * @param reports the reports in the order of the meter names
+   */
+  void onReport(List<CardinalityReport> reports);
+}
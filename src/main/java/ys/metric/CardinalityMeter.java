@@ -16,9 +16,28 @@
 
 package ys.metric;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
 import org.HdrHistogram.WriterReaderPhaser;
 
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import ys.probabilistic.util.Instrumentation;
 import ys.probabilistic.util.LinearCounter;
+import ys.probabilistic.util.WriteConcurrentLinearCounter;
 
 /**
  * An object that meters the cardinality of the data set over a period of time using the linear
@@ -26,17 +45,43 @@ import ys.probabilistic.util.LinearCounter;
  * thread-safe if the underlying {@link LinearCounter} supports concurrent writing (counting
  * values). Reading phase is guarded by the {@link WriterReaderPhaser} synchronization primitive.
  *
+ * <p>The counters taken by {@link #getSnapshot()} are returned to a bounded pool when the snapshot
+ * is closed and are reused by the next snapshots, so taking snapshots doesn't allocate counters.
+ *
+ * <p>The counter that has been read is cleared outside the reading phase by the given
+ * {@link Executor}, so the latency of reading doesn't depend on the size of the counters. The next
+ * reading waits for the clearing only if it hasn't completed yet.
+ *
+ * <p>If {@link Instrumentation#ENABLED instrumentation} is enabled, the meter records the latencies
+ * of the reading phase and of the clearing. They can be exported by {@link CardinalityMeterStats}.
+ *
  * @param <V> the type of values being counted
  *
  * @author Yauheni Shahun
  */
-public class CardinalityMeter<V> {
+public class CardinalityMeter<V> implements Closeable {
+
+  /**
+   * Default maximum number of the released counters kept for reuse.
+   */
+  public static final int DEFAULT_POOL_SIZE = 2;
 
   private final WriterReaderPhaser phaser = new WriterReaderPhaser();
   private final LinearCounterFactory<V> factory;
+  private final Executor clearExecutor;
+  private final BlockingQueue<LinearCounter<V>> pool;
+  private final AtomicInteger createdCounterCount = new AtomicInteger();
+  private final AtomicInteger openSnapshotCount = new AtomicInteger();
+  private final Recorder readLatency;
+  private final Recorder clearLatency;
 
   private volatile LinearCounter<V> activeCounter;
   private volatile LinearCounter<V> inactiveCounter;
+  private volatile boolean closed;
+  /**
+   * The clearing of the inactive counter, guarded by the reader lock.
+   */
+  private FutureTask<Void> pendingClear;
 
   /**
    * Constructs a cardinality meter.
@@ -44,9 +89,41 @@ public class CardinalityMeter<V> {
    * @param factory the factory of the write-concurrent linear counters
    */
   public CardinalityMeter(LinearCounterFactory<V> factory) {
+    this(factory, DEFAULT_POOL_SIZE);
+  }
+
+  /**
+   * Constructs a cardinality meter.
+   *
+   * @param factory the factory of the write-concurrent linear counters
+   * @param poolSize the maximum number of the counters released by the snapshots that are kept for
+   *        reuse
+   */
+  public CardinalityMeter(LinearCounterFactory<V> factory, int poolSize) {
+    this(factory, poolSize, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Constructs a cardinality meter.
+   *
+   * @param factory the factory of the write-concurrent linear counters
+   * @param poolSize the maximum number of the counters released by the snapshots that are kept for
+   *        reuse
+   * @param clearExecutor the executor that clears the counters after they have been read; the
+   *        direct executor clears them in the reading thread after the reading phase is over
+   */
+  public CardinalityMeter(LinearCounterFactory<V> factory, int poolSize, Executor clearExecutor) {
+    if (poolSize <= 0) {
+      throw new IllegalArgumentException("Pool size must be positive");
+    }
+
     this.factory = factory;
-    this.activeCounter = factory.create();
-    this.inactiveCounter = factory.create();
+    this.clearExecutor = clearExecutor;
+    this.readLatency = Instrumentation.ENABLED ? new Recorder(2) : null;
+    this.clearLatency = Instrumentation.ENABLED ? new Recorder(2) : null;
+    this.pool = new ArrayBlockingQueue<>(poolSize);
+    this.activeCounter = createCounter();
+    this.inactiveCounter = createCounter();
   }
 
   /**
@@ -61,16 +138,104 @@ public class CardinalityMeter<V> {
     }
   }
 
+  /**
+   * Counts the given primitive value without boxing it.
+   *
+   * @see LinearCounter#countInt(int)
+   */
+  public void countInt(int value) {
+    long criticalValue = phaser.writerCriticalSectionEnter();
+    try {
+      activeCounter.countInt(value);
+    } finally {
+      phaser.writerCriticalSectionExit(criticalValue);
+    }
+  }
+
+  /**
+   * Counts the given primitive value without boxing it.
+   *
+   * @see LinearCounter#countLong(long)
+   */
+  public void countLong(long value) {
+    long criticalValue = phaser.writerCriticalSectionEnter();
+    try {
+      activeCounter.countLong(value);
+    } finally {
+      phaser.writerCriticalSectionExit(criticalValue);
+    }
+  }
+
+  /**
+   * Counts a value by its precomputed hash code.
+   *
+   * @see LinearCounter#countHash(int)
+   */
+  public void countHash(int hash) {
+    long criticalValue = phaser.writerCriticalSectionEnter();
+    try {
+      activeCounter.countHash(hash);
+    } finally {
+      phaser.writerCriticalSectionExit(criticalValue);
+    }
+  }
+
+  /**
+   * Counts the given values entering the critical section once per batch.
+   *
+   * @see LinearCounter#count(Object[])
+   */
+  public void count(V[] values) {
+    long criticalValue = phaser.writerCriticalSectionEnter();
+    try {
+      activeCounter.count(values);
+    } finally {
+      phaser.writerCriticalSectionExit(criticalValue);
+    }
+  }
+
+  /**
+   * Counts the given values entering the critical section once per batch.
+   *
+   * @see LinearCounter#count(Iterable)
+   */
+  public void count(Iterable<? extends V> values) {
+    long criticalValue = phaser.writerCriticalSectionEnter();
+    try {
+      activeCounter.count(values);
+    } finally {
+      phaser.writerCriticalSectionExit(criticalValue);
+    }
+  }
+
+  /**
+   * Counts the values by their precomputed hash codes entering the critical section once per
+   * batch.
+   *
+   * @see LinearCounter#countHashes(int[], int, int)
+   */
+  public void countHashes(int[] hashes, int offset, int length) {
+    long criticalValue = phaser.writerCriticalSectionEnter();
+    try {
+      activeCounter.countHashes(hashes, offset, length);
+    } finally {
+      phaser.writerCriticalSectionExit(criticalValue);
+    }
+  }
+
   /**
    * Returns the cardinality of the observed values since the last call of either
-   * {@link #getCardinality()} or {@link #getCounter()}.
+   * {@link #getCardinality()}, {@link #getCounter()} or {@link #getSnapshot()}.
    *
    * @return expected cardinality as {@code double}
    */
   public double getCardinality() {
+    FutureTask<Void> clear;
+    double cardinality;
+    long startTime = Instrumentation.ENABLED ? System.nanoTime() : 0;
     phaser.readerLock();
     try {
-      inactiveCounter.clear();
+      awaitClear();
 
       // Swap counters.
       LinearCounter<V> tempCounter = activeCounter;
@@ -79,33 +244,318 @@ public class CardinalityMeter<V> {
 
       phaser.flipPhase();
 
-      return inactiveCounter.getCardinality();
+      cardinality = inactiveCounter.getCardinality();
+      clear = newClearTask(inactiveCounter);
+      pendingClear = clear;
     } finally {
       phaser.readerUnlock();
+      if (Instrumentation.ENABLED) {
+        readLatency.recordValue(System.nanoTime() - startTime);
+      }
     }
+
+    execute(clear);
+    return cardinality;
   }
 
   /**
    * Returns the linear counter that accumulates info about the observed values since the last call
-   * of either {@link #getCardinality()} or {@link #getCounter()}.
+   * of either {@link #getCardinality()}, {@link #getCounter()} or {@link #getSnapshot()}.
    *
    * @return an instance of {@link LinearCounter} that can be safely used
    */
   public LinearCounter<V> getCounter() {
+    long startTime = Instrumentation.ENABLED ? System.nanoTime() : 0;
     phaser.readerLock();
     try {
-      inactiveCounter.clear();
+      awaitClear();
 
       // Swap counters.
       LinearCounter<V> snapshot = activeCounter;
       activeCounter = inactiveCounter;
-      inactiveCounter = factory.create();
+      inactiveCounter = createCounter();
 
       phaser.flipPhase();
 
       return snapshot;
     } finally {
       phaser.readerUnlock();
+      if (Instrumentation.ENABLED) {
+        readLatency.recordValue(System.nanoTime() - startTime);
+      }
+    }
+  }
+
+  /**
+   * Returns a snapshot of the linear counter that accumulates info about the observed values since
+   * the last call of either {@link #getCardinality()}, {@link #getCounter()} or
+   * {@link #getSnapshot()}. Unlike {@link #getCounter()} the counter is taken from the pool, and
+   * the snapshot must be closed (e.g. by try-with-resources) to return the counter back.
+   *
+   * @return a snapshot of the counter that can be safely used until it's closed
+   */
+  public Snapshot getSnapshot() {
+    long startTime = Instrumentation.ENABLED ? System.nanoTime() : 0;
+    phaser.readerLock();
+    try {
+      awaitClear();
+
+      // Swap counters.
+      LinearCounter<V> counter = activeCounter;
+      activeCounter = inactiveCounter;
+      LinearCounter<V> pooledCounter = pool.poll();
+      inactiveCounter = pooledCounter != null ? pooledCounter : createCounter();
+
+      phaser.flipPhase();
+
+      openSnapshotCount.incrementAndGet();
+      return new Snapshot(counter);
+    } finally {
+      phaser.readerUnlock();
+      if (Instrumentation.ENABLED) {
+        readLatency.recordValue(System.nanoTime() - startTime);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of the snapshots that haven't been closed yet. The growing number indicates
+   * that the snapshots leak.
+   */
+  public int getOpenSnapshotCount() {
+    return openSnapshotCount.get();
+  }
+
+  /**
+   * Returns the number of the counters created by the meter so far.
+   */
+  public int getCreatedCounterCount() {
+    return createdCounterCount.get();
+  }
+
+  /**
+   * Returns the number of the released counters that are kept for reuse.
+   */
+  public int getPooledCounterCount() {
+    return pool.size();
+  }
+
+  /**
+   * Returns the fill ratio of the active counter (see {@link LinearCounter#getFillRatio()}). The
+   * values close to 1 mean that the counter is going to saturate before the end of the current
+   * interval.
+   */
+  public double getFillRatio() {
+    return activeCounter.getFillRatio();
+  }
+
+  /**
+   * Returns the number of the failed CAS attempts of the writers in the current interval. It's
+   * always 0 if instrumentation is disabled or the counters aren't
+   * {@link WriteConcurrentLinearCounter}s.
+   */
+  public long getCasRetryCount() {
+    LinearCounter<V> counter = activeCounter;
+    if (counter instanceof WriteConcurrentLinearCounter) {
+      return ((WriteConcurrentLinearCounter<V>) counter).getCasRetryCount();
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the latencies of the reading phase (swapping the counters and flipping the phase) in
+   * nanoseconds recorded since the last call, or {@code null} if instrumentation is disabled.
+   */
+  public Histogram getReadLatencyHistogram() {
+    return Instrumentation.ENABLED ? readLatency.getIntervalHistogram() : null;
+  }
+
+  /**
+   * Returns the latencies of clearing the counters that have been read in nanoseconds recorded
+   * since the last call, or {@code null} if instrumentation is disabled.
+   */
+  public Histogram getClearLatencyHistogram() {
+    return Instrumentation.ENABLED ? clearLatency.getIntervalHistogram() : null;
+  }
+
+  /**
+   * Returns the latencies of the reading phase like {@link #getReadLatencyHistogram()}, but reuses
+   * the given histogram instead of allocating a new one. So the periodic pollers don't create
+   * garbage.
+   *
+   * @param recycled the histogram previously returned by this method or {@code null}
+   */
+  public Histogram getReadLatencyHistogram(Histogram recycled) {
+    return Instrumentation.ENABLED ? readLatency.getIntervalHistogram(recycled) : null;
+  }
+
+  /**
+   * Returns the latencies of clearing the counters like {@link #getClearLatencyHistogram()}, but
+   * reuses the given histogram instead of allocating a new one.
+   *
+   * @param recycled the histogram previously returned by this method or {@code null}
+   */
+  public Histogram getClearLatencyHistogram(Histogram recycled) {
+    return Instrumentation.ENABLED ? clearLatency.getIntervalHistogram(recycled) : null;
+  }
+
+  /**
+   * Releases the resources held by the underlying linear counters if they are {@link Closeable}
+   * (e.g. the native memory of the off-heap counters). The counters returned by
+   * {@link #getCounter()} aren't affected, and the ones held by the open snapshots are released
+   * when the snapshots are closed. The meter must not be used after it has been closed: counting
+   * fails with {@link IllegalStateException}.
+   */
+  @Override
+  public void close() throws IOException {
+    phaser.readerLock();
+    try {
+      closed = true;
+      awaitClear();
+
+      LinearCounter<V> counter = activeCounter;
+      LinearCounter<V> otherCounter = inactiveCounter;
+      activeCounter = ClosedLinearCounter.getInstance();
+      inactiveCounter = ClosedLinearCounter.getInstance();
+
+      // Wait for the writers that could have obtained the active counter before releasing it.
+      phaser.flipPhase();
+
+      if (counter instanceof Closeable) {
+        ((Closeable) counter).close();
+      }
+      if (otherCounter instanceof Closeable) {
+        ((Closeable) otherCounter).close();
+      }
+      drainPool();
+    } finally {
+      phaser.readerUnlock();
+    }
+  }
+
+  /**
+   * Waits until the inactive counter is cleared, so it can become active. Must be called under the
+   * reader lock.
+   */
+  private void awaitClear() {
+    if (pendingClear == null) {
+      return;
+    }
+    try {
+      Uninterruptibles.getUninterruptibly(pendingClear);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+    pendingClear = null;
+  }
+
+  private FutureTask<Void> newClearTask(final LinearCounter<V> counter) {
+    return new FutureTask<>(new Runnable() {
+      @Override
+      public void run() {
+        long startTime = Instrumentation.ENABLED ? System.nanoTime() : 0;
+        counter.clear();
+        if (Instrumentation.ENABLED) {
+          clearLatency.recordValue(System.nanoTime() - startTime);
+        }
+      }
+    }, null);
+  }
+
+  private void execute(FutureTask<Void> task) {
+    try {
+      clearExecutor.execute(task);
+    } catch (RejectedExecutionException e) {
+      task.run();
+    }
+  }
+
+  private LinearCounter<V> createCounter() {
+    createdCounterCount.incrementAndGet();
+    return factory.create();
+  }
+
+  /**
+   * Releases the counter of the closed snapshot. The counter is either returned to the pool or
+   * discarded if the pool is full or the meter is closed.
+   */
+  private void release(LinearCounter<V> counter) {
+    openSnapshotCount.decrementAndGet();
+
+    if (!closed) {
+      counter.clear();
+      if (pool.offer(counter)) {
+        // The meter may have been closed before the counter got into the pool.
+        if (closed) {
+          drainPool();
+        }
+        return;
+      }
+    }
+    closeQuietly(counter);
+  }
+
+  /**
+   * Discards the pooled counters.
+   */
+  private void drainPool() {
+    LinearCounter<V> counter;
+    while ((counter = pool.poll()) != null) {
+      closeQuietly(counter);
+    }
+  }
+
+  private static void closeQuietly(LinearCounter<?> counter) {
+    if (counter instanceof Closeable) {
+      try {
+        ((Closeable) counter).close();
+      } catch (IOException e) {
+        // The counter is discarded anyway.
+      }
+    }
+  }
+
+  /**
+   * A snapshot of the meter's counter. Closing the snapshot returns the counter to the meter, so
+   * it must not be used afterwards.
+   */
+  public final class Snapshot implements Closeable {
+    private final LinearCounter<V> counter;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    Snapshot(LinearCounter<V> counter) {
+      this.counter = counter;
+    }
+
+    /**
+     * Returns the counter of the snapshot.
+     *
+     * @throws IllegalStateException if the snapshot is closed
+     */
+    public LinearCounter<V> getCounter() {
+      if (closed.get()) {
+        throw new IllegalStateException("Snapshot is closed");
+      }
+      return counter;
+    }
+
+    /**
+     * Returns the cardinality of the values observed by the snapshot.
+     *
+     * @return expected cardinality as {@code double}
+     */
+    public double getCardinality() {
+      return getCounter().getCardinality();
+    }
+
+    /**
+     * Returns the counter to the meter. Repeated calls have no effect.
+     */
+    @Override
+    public void close() {
+      if (closed.compareAndSet(false, true)) {
+        release(counter);
+      }
     }
   }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.metric;
+
+import ys.probabilistic.util.LinearCounter;
+
+/**
+ * A JMX interface exposing the statistics of a {@link CardinalityMeter}. The latencies are in
+ * nanoseconds and cover the time since the meter was registered. They are 0 if instrumentation is
+ * disabled.
+ *
+ * @author Yauheni Shahun
+ */
+public interface CardinalityMeterMXBean {
+
+  /**
+   * Returns the fill ratio of the active counter (see {@link LinearCounter#getFillRatio()}).
+   */
+  double getFillRatio();
+
+  /**
+   * Returns the number of the failed CAS attempts of the writers in the current interval.
+   */
+  long getCasRetryCount();
+
+  /**
+   * Returns the number of the snapshots that haven't been closed yet.
+   */
+  int getOpenSnapshotCount();
+
+  /**
+   * Returns the number of the counters created by the meter.
+   */
+  int getCreatedCounterCount();
+
+  /**
+   * Returns the number of the reading phases.
+   */
+  long getReadCount();
+
+  /**
+   * Returns the mean latency of the reading phase.
+   */
+  double getReadLatencyMean();
+
+  /**
+   * Returns the 99th percentile of the latency of the reading phase.
+   */
+  long getReadLatency99thPercentile();
+
+  /**
+   * Returns the maximum latency of the reading phase.
+   */
+  long getReadLatencyMax();
+
+  /**
+   * Returns the 99th percentile of the latency of clearing the counters.
+   */
+  long getClearLatency99thPercentile();
+
+  /**
+   * Returns the maximum latency of clearing the counters.
+   */
+  long getClearLatencyMax();
+}
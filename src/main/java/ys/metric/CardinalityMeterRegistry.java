@@ -0,0 +1,383 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.metric;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.HdrHistogram.WriterReaderPhaser;
+
+import ys.probabilistic.util.LinearCounter;
+
+/**
+ * A registry of the cardinality meters identified by keys (e.g. per endpoint or per tenant). It
+ * works like a set of {@link CardinalityMeter}s that share a single {@link WriterReaderPhaser}, so
+ * the cardinalities of all the keys are requested (and reset) at once by a single phase flip.
+ *
+ * <p>The counters of a key are created lazily when its first value is counted. Looking up the
+ * counter of an existing key is lock-free. The memory is bounded by the maximum number of keys:
+ * when it's reached, the least recently used keys are evicted. The recency is tracked in reporting
+ * intervals (between the calls of {@link #getCardinalities()}), and the keys that have been idle
+ * for the given number of intervals are evicted on reporting. The values counted by the evicted
+ * keys are discarded.
+ *
+ * <p>The implementation is thread-safe if the underlying {@link LinearCounter} supports concurrent
+ * writing.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values being counted
+ *
+ * @author Yauheni Shahun
+ */
+public class CardinalityMeterRegistry<K, V> implements Closeable {
+
+  private final WriterReaderPhaser phaser = new WriterReaderPhaser();
+  private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+  private final LinearCounterFactory<V> factory;
+  private final int maxKeyCount;
+  private final int maxIdleIntervals;
+
+  private volatile boolean closed;
+
+  /**
+   * The number of the current reporting interval.
+   */
+  private volatile int interval;
+
+  /**
+   * Constructs a registry of cardinality meters.
+   *
+   * @param factory the factory of the write-concurrent linear counters
+   * @param maxKeyCount the maximum number of keys (each key takes up to two counters)
+   * @param maxIdleIntervals the number of reporting intervals without counted values after which a
+   *        key is evicted
+   */
+  public CardinalityMeterRegistry(LinearCounterFactory<V> factory, int maxKeyCount,
+      int maxIdleIntervals) {
+    if (maxKeyCount <= 0) {
+      throw new IllegalArgumentException("Maximum key count must be positive");
+    }
+    if (maxIdleIntervals <= 0) {
+      throw new IllegalArgumentException("Maximum idle intervals must be positive");
+    }
+
+    this.factory = factory;
+    this.maxKeyCount = maxKeyCount;
+    this.maxIdleIntervals = maxIdleIntervals;
+  }
+
+  /**
+   * Returns the number of keys in the registry.
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Counts the given value for the key.
+   */
+  public void count(K key, V value) {
+    for (;;) {
+      long criticalValue = phaser.writerCriticalSectionEnter();
+      try {
+        LinearCounter<V> counter = getActiveCounter(key);
+        if (counter != null) {
+          counter.count(value);
+          return;
+        }
+      } finally {
+        phaser.writerCriticalSectionExit(criticalValue);
+      }
+      addKey(key);
+    }
+  }
+
+  /**
+   * Counts the given primitive value for the key without boxing it.
+   *
+   * @see LinearCounter#countInt(int)
+   */
+  public void countInt(K key, int value) {
+    for (;;) {
+      long criticalValue = phaser.writerCriticalSectionEnter();
+      try {
+        LinearCounter<V> counter = getActiveCounter(key);
+        if (counter != null) {
+          counter.countInt(value);
+          return;
+        }
+      } finally {
+        phaser.writerCriticalSectionExit(criticalValue);
+      }
+      addKey(key);
+    }
+  }
+
+  /**
+   * Counts the given primitive value for the key without boxing it.
+   *
+   * @see LinearCounter#countLong(long)
+   */
+  public void countLong(K key, long value) {
+    for (;;) {
+      long criticalValue = phaser.writerCriticalSectionEnter();
+      try {
+        LinearCounter<V> counter = getActiveCounter(key);
+        if (counter != null) {
+          counter.countLong(value);
+          return;
+        }
+      } finally {
+        phaser.writerCriticalSectionExit(criticalValue);
+      }
+      addKey(key);
+    }
+  }
+
+  /**
+   * Counts a value by its precomputed hash code for the key.
+   *
+   * @see LinearCounter#countHash(int)
+   */
+  public void countHash(K key, int hash) {
+    for (;;) {
+      long criticalValue = phaser.writerCriticalSectionEnter();
+      try {
+        LinearCounter<V> counter = getActiveCounter(key);
+        if (counter != null) {
+          counter.countHash(hash);
+          return;
+        }
+      } finally {
+        phaser.writerCriticalSectionExit(criticalValue);
+      }
+      addKey(key);
+    }
+  }
+
+  /**
+   * Returns the cardinalities of the values observed for each key since the last call of
+   * {@link #getCardinalities()} and starts a new reporting interval. The counters of all the keys
+   * are swapped by a single phase flip. The keys that have been idle for too long are evicted
+   * afterwards.
+   *
+   * @return the map of the keys to their expected cardinalities
+   */
+  public Map<K, Double> getCardinalities() {
+    phaser.readerLock();
+    try {
+      int currentInterval = interval;
+      interval = currentInterval + 1;
+
+      List<Map.Entry<K, Entry<V>>> snapshot = new ArrayList<>(entries.entrySet());
+      for (Map.Entry<K, Entry<V>> mapEntry : snapshot) {
+        mapEntry.getValue().swap(factory);
+      }
+
+      phaser.flipPhase();
+
+      Map<K, Double> cardinalities = new HashMap<>();
+      List<Entry<V>> evicted = new ArrayList<>();
+      for (Map.Entry<K, Entry<V>> mapEntry : snapshot) {
+        Entry<V> entry = mapEntry.getValue();
+        cardinalities.put(mapEntry.getKey(), entry.inactiveCounter.getCardinality());
+
+        if (currentInterval - entry.lastInterval >= maxIdleIntervals
+            && entries.remove(mapEntry.getKey(), entry)) {
+          evicted.add(entry);
+        }
+      }
+
+      if (!evicted.isEmpty()) {
+        // Wait for the writers that could have obtained the evicted counters.
+        phaser.flipPhase();
+        closeCounters(evicted);
+      }
+      return cardinalities;
+    } finally {
+      phaser.readerUnlock();
+    }
+  }
+
+  /**
+   * Releases the resources held by the underlying linear counters if they are {@link Closeable}.
+   * The registry must not be used after it has been closed: counting fails with
+   * {@link IllegalStateException}.
+   */
+  @Override
+  public void close() throws IOException {
+    phaser.readerLock();
+    try {
+      closed = true;
+      List<Entry<V>> closedEntries = new ArrayList<>(entries.values());
+      entries.clear();
+
+      // Wait for the writers that could have obtained the counters before releasing them.
+      phaser.flipPhase();
+      closeCounters(closedEntries);
+    } finally {
+      phaser.readerUnlock();
+    }
+  }
+
+  /**
+   * Returns the active counter of the key and marks the key as used in the current interval. It
+   * must be called in the writer critical section.
+   */
+  private LinearCounter<V> getActiveCounter(K key) {
+    Entry<V> entry = entries.get(key);
+    if (entry == null) {
+      return null;
+    }
+
+    int currentInterval = interval;
+    if (entry.lastInterval != currentInterval) {
+      entry.lastInterval = currentInterval;
+    }
+    return entry.activeCounter;
+  }
+
+  /**
+   * Adds the key with the new counter evicting the least recently used keys if the registry is
+   * full. It must be called outside the writer critical section.
+   */
+  private void addKey(K key) {
+    if (entries.size() >= maxKeyCount) {
+      evict();
+    }
+
+    if (closed) {
+      throw new IllegalStateException("Registry is closed");
+    }
+
+    Entry<V> entry = new Entry<>(factory.create(), interval);
+    if (entries.putIfAbsent(key, entry) != null) {
+      closeCounters(Collections.singletonList(entry));
+    } else if (closed && entries.remove(key, entry)) {
+      // The registry has been closed concurrently, so the entry is released here.
+      phaser.readerLock();
+      try {
+        phaser.flipPhase();
+      } finally {
+        phaser.readerUnlock();
+      }
+      closeCounters(Collections.singletonList(entry));
+      throw new IllegalStateException("Registry is closed");
+    }
+  }
+
+  /**
+   * Evicts the least recently used keys so that the registry has room for 1/8 of the maximum key
+   * count. Evicting in batches amortizes the cost of finding the keys.
+   */
+  private void evict() {
+    phaser.readerLock();
+    try {
+      int evictionCount = entries.size() - maxKeyCount + Math.max(1, maxKeyCount / 8);
+      if (entries.size() < maxKeyCount || evictionCount <= 0) {
+        return;
+      }
+
+      List<Map.Entry<K, Entry<V>>> candidates = new ArrayList<>(entries.entrySet());
+      Collections.sort(candidates, new Comparator<Map.Entry<K, Entry<V>>>() {
+        @Override
+        public int compare(Map.Entry<K, Entry<V>> entry1, Map.Entry<K, Entry<V>> entry2) {
+          int interval1 = entry1.getValue().lastInterval;
+          int interval2 = entry2.getValue().lastInterval;
+          return interval1 < interval2 ? -1 : (interval1 == interval2 ? 0 : 1);
+        }
+      });
+
+      List<Entry<V>> evicted = new ArrayList<>();
+      for (int i = 0; i < evictionCount && i < candidates.size(); i++) {
+        Map.Entry<K, Entry<V>> candidate = candidates.get(i);
+        if (entries.remove(candidate.getKey(), candidate.getValue())) {
+          evicted.add(candidate.getValue());
+        }
+      }
+
+      // Wait for the writers that could have obtained the evicted counters.
+      phaser.flipPhase();
+      closeCounters(evicted);
+    } finally {
+      phaser.readerUnlock();
+    }
+  }
+
+  /**
+   * Closes the counters of the entries if they are {@link Closeable}.
+   */
+  private static void closeCounters(Iterable<? extends Entry<?>> entries) {
+    for (Entry<?> entry : entries) {
+      closeQuietly(entry.activeCounter);
+      closeQuietly(entry.inactiveCounter);
+    }
+  }
+
+  private static void closeQuietly(LinearCounter<?> counter) {
+    if (counter instanceof Closeable) {
+      try {
+        ((Closeable) counter).close();
+      } catch (IOException e) {
+        // The counter is discarded anyway.
+      }
+    }
+  }
+
+  /**
+   * The counters of a key.
+   */
+  private static final class Entry<V> {
+    volatile LinearCounter<V> activeCounter;
+    /**
+     * The counter of the previous interval. It's created on the first swap.
+     */
+    LinearCounter<V> inactiveCounter;
+    /**
+     * The last interval when a value was counted.
+     */
+    volatile int lastInterval;
+
+    Entry(LinearCounter<V> activeCounter, int lastInterval) {
+      this.activeCounter = activeCounter;
+      this.lastInterval = lastInterval;
+    }
+
+    /**
+     * Swaps the active counter with the cleared inactive one. It must be called under the reader
+     * lock.
+     */
+    void swap(LinearCounterFactory<V> factory) {
+      LinearCounter<V> counter = inactiveCounter;
+      if (counter == null) {
+        counter = factory.create();
+      } else {
+        counter.clear();
+      }
+      inactiveCounter = activeCounter;
+      activeCounter = counter;
+    }
+  }
+}
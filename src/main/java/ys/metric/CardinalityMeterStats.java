@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.metric;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.HdrHistogram.Histogram;
+
+import ys.probabilistic.util.Instrumentation;
+
+/**
+ * An implementation of {@link CardinalityMeterMXBean} that accumulates the latencies recorded by
+ * the meter. The latencies are available only if {@link Instrumentation#ENABLED instrumentation} is
+ * enabled, the rest of the statistics are always available.
+ *
+ * @author Yauheni Shahun
+ */
+public class CardinalityMeterStats implements CardinalityMeterMXBean {
+
+  /**
+   * The JMX domain of the meters.
+   */
+  public static final String DOMAIN = "ys.metric";
+
+  private final CardinalityMeter<?> meter;
+  private final Histogram readLatency = new Histogram(2);
+  private final Histogram clearLatency = new Histogram(2);
+  private Histogram readInterval;
+  private Histogram clearInterval;
+
+  /**
+   * Constructs the statistics of the given meter.
+   */
+  public CardinalityMeterStats(CardinalityMeter<?> meter) {
+    this.meter = meter;
+  }
+
+  /**
+   * Registers the statistics of the meter in the platform MBean server.
+   *
+   * @param name the name of the meter
+   * @param meter the meter
+   * @return the name of the registered MBean
+   * @throws JMException if the MBean can't be registered (e.g. the name is already taken)
+   */
+  public static ObjectName register(String name, CardinalityMeter<?> meter) throws JMException {
+    ObjectName objectName = new ObjectName(DOMAIN + ":type=CardinalityMeter,name="
+        + ObjectName.quote(name));
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    server.registerMBean(new CardinalityMeterStats(meter), objectName);
+    return objectName;
+  }
+
+  @Override
+  public double getFillRatio() {
+    return meter.getFillRatio();
+  }
+
+  @Override
+  public long getCasRetryCount() {
+    return meter.getCasRetryCount();
+  }
+
+  @Override
+  public int getOpenSnapshotCount() {
+    return meter.getOpenSnapshotCount();
+  }
+
+  @Override
+  public int getCreatedCounterCount() {
+    return meter.getCreatedCounterCount();
+  }
+
+  @Override
+  public synchronized long getReadCount() {
+    update();
+    return readLatency.getTotalCount();
+  }
+
+  @Override
+  public synchronized double getReadLatencyMean() {
+    update();
+    return readLatency.getMean();
+  }
+
+  @Override
+  public synchronized long getReadLatency99thPercentile() {
+    update();
+    return readLatency.getValueAtPercentile(99);
+  }
+
+  @Override
+  public synchronized long getReadLatencyMax() {
+    update();
+    return readLatency.getMaxValue();
+  }
+
+  @Override
+  public synchronized long getClearLatency99thPercentile() {
+    update();
+    return clearLatency.getValueAtPercentile(99);
+  }
+
+  @Override
+  public synchronized long getClearLatencyMax() {
+    update();
+    return clearLatency.getMaxValue();
+  }
+
+  /**
+   * Adds the latencies recorded by the meter since the last update.
+   */
+  private void update() {
+    if (Instrumentation.ENABLED) {
+      readInterval = meter.getReadLatencyHistogram(readInterval);
+      readLatency.add(readInterval);
+      clearInterval = meter.getClearLatencyHistogram(clearInterval);
+      clearLatency.add(clearInterval);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.metric;
+
+/**
+ * An estimate of the cardinality measured by a meter over a single reporting interval.
+ *
+ * @author Yauheni Shahun
+ */
+public final class CardinalityReport {
+
+  private final String name;
+  private final long interval;
+  private final long timestamp;
+  private final double cardinality;
+  private final double fillRatio;
+
+  /**
+   * Constructs a report.
+   *
+   * @param name the name of the meter
+   * @param interval the number of the reporting interval
+   * @param timestamp the time of the end of the interval in milliseconds
+   * @param cardinality the expected cardinality
+   * @param fillRatio the fraction of 1s bits in the bitmap of the counter
+   */
+  public CardinalityReport(String name, long interval, long timestamp, double cardinality,
+      double fillRatio) {
+    this.name = name;
+    this.interval = interval;
+    this.timestamp = timestamp;
+    this.cardinality = cardinality;
+    this.fillRatio = fillRatio;
+  }
+
+  /**
+   * Returns the name of the meter.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the number of the reporting interval (starting from 1).
+   */
+  public long getInterval() {
+    return interval;
+  }
+
+  /**
+   * Returns the time of the end of the interval in milliseconds.
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Returns the expected cardinality.
+   */
+  public double getCardinality() {
+    return cardinality;
+  }
+
+  /**
+   * Returns the fraction of 1s bits in the bitmap of the counter. The values close to 1 mean that
+   * the counter is saturated and its estimate isn't reliable.
+   */
+  public double getFillRatio() {
+    return fillRatio;
+  }
+
+  @Override
+  public String toString() {
+    return "CardinalityReport{name=" + name + ", interval=" + interval + ", timestamp=" + timestamp
+        + ", cardinality=" + cardinality + ", fillRatio=" + fillRatio + "}";
+  }
+}
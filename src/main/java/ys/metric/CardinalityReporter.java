@@ -0,0 +1,203 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.metric;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import ys.probabilistic.util.LinearCounter;
+
+/**
+ * A reporter that reads a set of named {@link CardinalityMeter}s at a fixed rate on a single
+ * scheduler thread and delivers the estimates to the registered listeners. The meters are read by
+ * {@link CardinalityMeter#getSnapshot()}, so the estimates are calculated outside the reading phase
+ * of the meters and the counters are recycled. The reports of all the meters are batched, so each
+ * listener is called once per interval.
+ *
+ * <p>A meter or a listener that throws an exception doesn't affect the others and the next reports
+ * (the meter is just missing from the batch); the exception is passed to the uncaught exception
+ * handler of the reporter's thread. Otherwise it would cancel the scheduled reporting.
+ *
+ * @author Yauheni Shahun
+ */
+public class CardinalityReporter implements Closeable {
+
+  private final ConcurrentMap<String, CardinalityMeter<?>> meters = new ConcurrentSkipListMap<>();
+  private final List<CardinalityListener> listeners = new CopyOnWriteArrayList<>();
+  private final ScheduledExecutorService executor;
+  private final boolean ownsExecutor;
+  private final long period;
+  private final TimeUnit unit;
+
+  private long interval;
+  private ScheduledFuture<?> future;
+
+  /**
+   * Constructs a reporter with its own scheduler thread.
+   *
+   * @param period the reporting period
+   * @param unit the time unit of the reporting period
+   */
+  public CardinalityReporter(long period, TimeUnit unit) {
+    this(Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "cardinality-reporter");
+        thread.setDaemon(true);
+        return thread;
+      }
+    }), true, period, unit);
+  }
+
+  /**
+   * Constructs a reporter that runs on the given scheduler. The scheduler isn't shut down when the
+   * reporter is closed.
+   *
+   * @param executor the scheduler that runs the reporting
+   * @param period the reporting period
+   * @param unit the time unit of the reporting period
+   */
+  public CardinalityReporter(ScheduledExecutorService executor, long period, TimeUnit unit) {
+    this(executor, false, period, unit);
+  }
+
+  private CardinalityReporter(ScheduledExecutorService executor, boolean ownsExecutor,
+      long period, TimeUnit unit) {
+    if (period <= 0) {
+      throw new IllegalArgumentException("Period must be positive");
+    }
+
+    this.executor = executor;
+    this.ownsExecutor = ownsExecutor;
+    this.period = period;
+    this.unit = unit;
+  }
+
+  /**
+   * Registers the meter under the given name.
+   *
+   * @throws IllegalArgumentException if another meter is registered under the name
+   */
+  public void register(String name, CardinalityMeter<?> meter) {
+    if (meters.putIfAbsent(name, meter) != null) {
+      throw new IllegalArgumentException("Meter is already registered: " + name);
+    }
+  }
+
+  /**
+   * Unregisters the meter with the given name.
+   *
+   * @return the unregistered meter or {@code null} if there is no meter with the name
+   */
+  public CardinalityMeter<?> unregister(String name) {
+    return meters.remove(name);
+  }
+
+  /**
+   * Adds the listener of the reports.
+   */
+  public void addListener(CardinalityListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Removes the listener of the reports.
+   */
+  public void removeListener(CardinalityListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Starts reporting at the fixed rate. The first report is made after a single period.
+   *
+   * @throws IllegalStateException if the reporter has already been started
+   */
+  public synchronized void start() {
+    if (future != null) {
+      throw new IllegalStateException("Reporter is already started");
+    }
+
+    future = executor.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        report();
+      }
+    }, period, period, unit);
+  }
+
+  /**
+   * Reads all the meters and delivers the reports to the listeners. It's called by the scheduler,
+   * but can also be called directly (e.g. to flush the meters on shutdown).
+   *
+   * @return the reports of the interval
+   */
+  public synchronized List<CardinalityReport> report() {
+    interval++;
+    long timestamp = System.currentTimeMillis();
+
+    List<CardinalityReport> reports = new ArrayList<>(meters.size());
+    for (Map.Entry<String, CardinalityMeter<?>> entry : meters.entrySet()) {
+      try (CardinalityMeter<?>.Snapshot snapshot = entry.getValue().getSnapshot()) {
+        LinearCounter<?> counter = snapshot.getCounter();
+        reports.add(new CardinalityReport(entry.getKey(), interval, timestamp,
+            counter.getCardinality(), counter.getFillRatio()));
+      } catch (RuntimeException e) {
+        handleException(e);
+      }
+    }
+    reports = Collections.unmodifiableList(reports);
+
+    for (CardinalityListener listener : listeners) {
+      try {
+        listener.onReport(reports);
+      } catch (RuntimeException e) {
+        handleException(e);
+      }
+    }
+    return reports;
+  }
+
+  private static void handleException(RuntimeException e) {
+    Thread thread = Thread.currentThread();
+    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+  }
+
+  /**
+   * Stops reporting. The reporter's own scheduler thread is shut down. The meters aren't closed.
+   */
+  @Override
+  public synchronized void close() {
+    if (future != null) {
+      future.cancel(false);
+    }
+    if (ownsExecutor) {
+      executor.shutdown();
+    }
+  }
+
+}
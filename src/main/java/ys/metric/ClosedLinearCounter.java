@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.metric;
+
+import ys.probabilistic.util.LinearCounter;
+
+/**
+ * A placeholder of the counters of a closed meter. The meters swap it in before they release the
+ * resources of their counters, so the writers that come late fail with
+ * {@link IllegalStateException} instead of accessing the released (e.g. native) memory.
+ *
+ * @param <V> the type of values being counted
+ *
+ * @author Yauheni Shahun
+ */
+final class ClosedLinearCounter<V> implements LinearCounter<V> {
+
+  private static final ClosedLinearCounter<Object> INSTANCE = new ClosedLinearCounter<>();
+
+  private ClosedLinearCounter() {}
+
+  /**
+   * Returns the shared instance of the closed counter.
+   */
+  @SuppressWarnings("unchecked")
+  static <V> LinearCounter<V> getInstance() {
+    return (LinearCounter<V>) INSTANCE;
+  }
+
+  @Override
+  public void count(V value) {
+    throw closed();
+  }
+
+  @Override
+  public void countInt(int value) {
+    throw closed();
+  }
+
+  @Override
+  public void countLong(long value) {
+    throw closed();
+  }
+
+  @Override
+  public void countHash(int hash) {
+    throw closed();
+  }
+
+  @Override
+  public void count(V[] values) {
+    throw closed();
+  }
+
+  @Override
+  public void count(Iterable<? extends V> values) {
+    throw closed();
+  }
+
+  @Override
+  public void countHashes(int[] hashes, int offset, int length) {
+    throw closed();
+  }
+
+  @Override
+  public double getCardinality() {
+    throw closed();
+  }
+
+  @Override
+  public double getFillRatio() {
+    throw closed();
+  }
+
+  @Override
+  public int[] getBitmap() {
+    throw closed();
+  }
+
+  @Override
+  public void mergeTo(int[] otherBitmap) {
+    throw closed();
+  }
+
+  @Override
+  public long[] getLongBitmap() {
+    throw closed();
+  }
+
+  @Override
+  public void mergeTo(long[] otherBitmap) {
+    throw closed();
+  }
+
+  @Override
+  public void mergeFrom(int[] otherBitmap) {
+    throw closed();
+  }
+
+  @Override
+  public void clear() {
+    throw closed();
+  }
+
+  private static IllegalStateException closed() {
+    return new IllegalStateException("Meter is closed");
+  }
+}
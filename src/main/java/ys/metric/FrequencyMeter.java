@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.metric;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.HdrHistogram.WriterReaderPhaser;
+
+import ys.probabilistic.util.CountMinSketch;
+import ys.probabilistic.util.Hasher64;
+
+/**
+ * An object that meters the frequencies of values over a period of time using the Count-Min
+ * sketches. It works like {@link CardinalityMeter}: the values are counted by the active sketch,
+ * and each time the frequencies are requested the sketches are swapped (and the metric is reset),
+ * so the memory is fixed regardless of the number of distinct values. Reading phase is guarded by
+ * the {@link WriterReaderPhaser} synchronization primitive.
+ *
+ * @param <V> the type of values being counted
+ *
+ * @author Yauheni Shahun
+ */
+public class FrequencyMeter<V> {
+
+  private final WriterReaderPhaser phaser = new WriterReaderPhaser();
+
+  private volatile CountMinSketch<V> activeSketch;
+  private volatile CountMinSketch<V> inactiveSketch;
+
+  /**
+   * Constructs a frequency meter.
+   *
+   * @param width the number of counters in a row of the sketches
+   * @param depth the number of rows of the sketches
+   * @param hasher the hash function used to map the values
+   */
+  public FrequencyMeter(int width, int depth, Hasher64<V> hasher) {
+    this.activeSketch = new CountMinSketch<>(width, depth, hasher);
+    this.inactiveSketch = new CountMinSketch<>(width, depth, hasher);
+  }
+
+  /**
+   * Counts the given value.
+   */
+  public void add(V value) {
+    long criticalValue = phaser.writerCriticalSectionEnter();
+    try {
+      activeSketch.add(value);
+    } finally {
+      phaser.writerCriticalSectionExit(criticalValue);
+    }
+  }
+
+  /**
+   * Counts the given value the given number of times.
+   */
+  public void add(V value, long count) {
+    long criticalValue = phaser.writerCriticalSectionEnter();
+    try {
+      activeSketch.add(value, count);
+    } finally {
+      phaser.writerCriticalSectionExit(criticalValue);
+    }
+  }
+
+  /**
+   * Returns the sketch that accumulates the frequencies of the observed values since the last call
+   * of either {@link #getSketch()} or {@link #getFrequencies(Iterable)}. The sketch can be safely
+   * used until the next call of these methods.
+   */
+  public CountMinSketch<V> getSketch() {
+    phaser.readerLock();
+    try {
+      inactiveSketch.clear();
+
+      // Swap sketches.
+      CountMinSketch<V> tempSketch = activeSketch;
+      activeSketch = inactiveSketch;
+      inactiveSketch = tempSketch;
+
+      phaser.flipPhase();
+
+      return inactiveSketch;
+    } finally {
+      phaser.readerUnlock();
+    }
+  }
+
+  /**
+   * Returns the estimated frequencies of the given values observed since the last call of either
+   * {@link #getSketch()} or {@link #getFrequencies(Iterable)}.
+   *
+   * @return the map of the values to their estimated frequencies in the order of the values
+   */
+  public Map<V, Long> getFrequencies(Iterable<? extends V> values) {
+    phaser.readerLock();
+    try {
+      CountMinSketch<V> sketch = getSketch();
+
+      Map<V, Long> frequencies = new LinkedHashMap<>();
+      for (V value : values) {
+        frequencies.put(value, sketch.estimate(value));
+      }
+      return frequencies;
+    } finally {
+      phaser.readerUnlock();
+    }
+  }
+}
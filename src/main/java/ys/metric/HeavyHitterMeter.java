@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.metric;
+
+import java.util.List;
+
+import org.HdrHistogram.WriterReaderPhaser;
+
+import ys.probabilistic.util.Hasher;
+import ys.probabilistic.util.SpaceSaving;
+
+/**
+ * An object that meters the most frequent values (heavy hitters) over a period of time using the
+ * {@link SpaceSaving} summaries. It works like {@link CardinalityMeter}: the values are counted by
+ * the active summary, and each time the top values are requested the summaries are swapped (and
+ * the metric is reset). The writers switch to the other summary as soon as the phase is flipped, so
+ * they aren't blocked by reading. The memory is bounded by the capacity of the summaries.
+ *
+ * @param <V> the type of values being counted
+ *
+ * @author Yauheni Shahun
+ */
+public class HeavyHitterMeter<V> {
+
+  private final WriterReaderPhaser phaser = new WriterReaderPhaser();
+  private final int k;
+
+  private volatile SpaceSaving<V> activeSummary;
+  private volatile SpaceSaving<V> inactiveSummary;
+
+  /**
+   * Constructs a heavy hitter meter.
+   *
+   * @param k the number of the top values to report
+   * @param capacity the number of the values monitored by a summary; the greater capacity (e.g. 10
+   *        times of {@code k}) gives the lower errors
+   * @param hasher the hash function used to distribute the values between the stripes of the
+   *        summaries
+   */
+  public HeavyHitterMeter(int k, int capacity, Hasher<V> hasher) {
+    if (k <= 0) {
+      throw new IllegalArgumentException("K must be positive");
+    }
+    if (capacity < k) {
+      throw new IllegalArgumentException("Capacity must not be less than k");
+    }
+
+    this.k = k;
+    this.activeSummary = new SpaceSaving<>(capacity, hasher);
+    this.inactiveSummary = new SpaceSaving<>(capacity, hasher);
+  }
+
+  /**
+   * Counts the given value.
+   */
+  public void count(V value) {
+    long criticalValue = phaser.writerCriticalSectionEnter();
+    try {
+      activeSummary.count(value);
+    } finally {
+      phaser.writerCriticalSectionExit(criticalValue);
+    }
+  }
+
+  /**
+   * Counts the given value the given number of times.
+   */
+  public void count(V value, long count) {
+    long criticalValue = phaser.writerCriticalSectionEnter();
+    try {
+      activeSummary.count(value, count);
+    } finally {
+      phaser.writerCriticalSectionExit(criticalValue);
+    }
+  }
+
+  /**
+   * Returns the top values observed since the last call in the descending order of their counts.
+   * Each item holds the upper and the lower bounds of the frequency of the value.
+   */
+  public List<SpaceSaving.Item<V>> getTopK() {
+    phaser.readerLock();
+    try {
+      inactiveSummary.clear();
+
+      // Swap summaries.
+      SpaceSaving<V> tempSummary = activeSummary;
+      activeSummary = inactiveSummary;
+      inactiveSummary = tempSummary;
+
+      phaser.flipPhase();
+
+      return inactiveSummary.getTopK(k);
+    } finally {
+      phaser.readerUnlock();
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.metric;
+
+import ys.probabilistic.util.Hasher;
+import ys.probabilistic.util.HyperLogLog;
+import ys.probabilistic.util.LinearCounter;
+
+/**
+ * A factory of {@link HyperLogLog} estimators. It allows {@link CardinalityMeter} to meter high
+ * cardinalities using a fixed amount of memory.
+ *
+ * @param <V> the type of values counted by the estimators
+ *
+ * @author Yauheni Shahun
+ */
+public class HyperLogLogFactory<V> implements LinearCounterFactory<V> {
+
+  private final int precision;
+  private final Hasher<V> hasher;
+
+  /**
+   * Constructs a factory of HyperLogLog estimators.
+   *
+   * @param precision the precision of the estimators
+   * @param hasher the idempotent hash function used by the estimators (preferably 64-bit)
+   */
+  public HyperLogLogFactory(int precision, Hasher<V> hasher) {
+    this.precision = precision;
+    this.hasher = hasher;
+  }
+
+  /**
+   * Creates a HyperLogLog estimator.
+   */
+  @Override
+  public LinearCounter<V> create() {
+    return new HyperLogLog<>(precision, hasher);
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.metric;
+
+import ys.probabilistic.util.Hasher;
+import ys.probabilistic.util.LinearCounter;
+import ys.probabilistic.util.OffHeapLinearCounter;
+
+/**
+ * A factory of {@link OffHeapLinearCounter}s. The meters that use it must be closed (see
+ * {@link CardinalityMeter#close()}) as well as the counters returned by
+ * {@link CardinalityMeter#getCounter()}.
+ *
+ * @param <V> the type of values counted by the linear counters
+ *
+ * @author Yauheni Shahun
+ */
+public class OffHeapLinearCounterFactory<V> implements LinearCounterFactory<V> {
+
+  private final int size;
+  private final Hasher<V> hasher;
+
+  /**
+   * Constructs a factory of the off-heap linear counters.
+   *
+   * @param size the number of bits used by the linear counters
+   * @param hasher the idempotent hash function used by the linear counters
+   */
+  public OffHeapLinearCounterFactory(int size, Hasher<V> hasher) {
+    this.size = size;
+    this.hasher = hasher;
+  }
+
+  /**
+   * Creates an off-heap linear counter.
+   */
+  @Override
+  public LinearCounter<V> create() {
+    return new OffHeapLinearCounter<>(size, hasher);
+  }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.metric;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.WriterReaderPhaser;
+
+import com.google.common.base.Ticker;
+
+import ys.probabilistic.util.LinearCounter;
+
+/**
+ * An object that meters the cardinality of the data set over a sliding window of time. The window
+ * is split into the slices of equal duration, each having its own linear counter. The writers
+ * count values only in the current slice, and the slices are rotated on the clock. The cardinality
+ * of the last slices is the cardinality of the union of their bitmaps, so it can be requested at
+ * any time without resetting the meter (unlike {@link CardinalityMeter}).
+ *
+ * <p>The implementation is thread-safe if the underlying {@link LinearCounter} supports concurrent
+ * writing. Rotation and reading are guarded by the {@link WriterReaderPhaser} synchronization
+ * primitive. The current slice is read while it's being written, so the values counted
+ * concurrently with reading may be missed by the result.
+ *
+ * @param <V> the type of values being counted
+ *
+ * @author Yauheni Shahun
+ */
+public class SlidingWindowCardinalityMeter<V> implements Closeable {
+
+  private final WriterReaderPhaser phaser = new WriterReaderPhaser();
+  private final Ticker ticker;
+  private final long sliceNanos;
+  /**
+   * The ring of the slices. It has a spare slice in addition to the window that is kept clear and
+   * becomes the current slice on the next rotation.
+   */
+  private final LinearCounter<V>[] slices;
+  /**
+   * The scratch bitmap that accumulates the union of the slices, guarded by the reader lock.
+   */
+  private final int[] unionBitmap;
+
+  private volatile int currentIndex;
+  /**
+   * The ticker's time when the current slice ends.
+   */
+  private volatile long nextRotation;
+
+  /**
+   * Constructs a sliding window cardinality meter that uses the system clock.
+   *
+   * @param factory the factory of the write-concurrent linear counters
+   * @param sliceCount the number of the slices in the window
+   * @param sliceDuration the duration of the slice
+   * @param unit the time unit of the slice duration
+   */
+  public SlidingWindowCardinalityMeter(LinearCounterFactory<V> factory, int sliceCount,
+      long sliceDuration, TimeUnit unit) {
+    this(factory, sliceCount, sliceDuration, unit, Ticker.systemTicker());
+  }
+
+  /**
+   * Constructs a sliding window cardinality meter.
+   *
+   * @param factory the factory of the write-concurrent linear counters
+   * @param sliceCount the number of the slices in the window
+   * @param sliceDuration the duration of the slice
+   * @param unit the time unit of the slice duration
+   * @param ticker the source of the time
+   */
+  public SlidingWindowCardinalityMeter(LinearCounterFactory<V> factory, int sliceCount,
+      long sliceDuration, TimeUnit unit, Ticker ticker) {
+    if (sliceCount <= 0) {
+      throw new IllegalArgumentException("Slice count must be positive");
+    }
+    if (sliceDuration <= 0) {
+      throw new IllegalArgumentException("Slice duration must be positive");
+    }
+
+    this.ticker = ticker;
+    this.sliceNanos = unit.toNanos(sliceDuration);
+    this.slices = newSlices(sliceCount + 1);
+    for (int i = 0; i < slices.length; i++) {
+      slices[i] = factory.create();
+    }
+    this.unionBitmap = new int[slices[0].getBitmap().length];
+    this.nextRotation = ticker.read() + sliceNanos;
+  }
+
+  /**
+   * Returns the number of the slices in the window.
+   */
+  public int getSliceCount() {
+    return slices.length - 1;
+  }
+
+  /**
+   * Counts the given value.
+   */
+  public void count(V value) {
+    rotateIfNeeded();
+
+    long criticalValue = phaser.writerCriticalSectionEnter();
+    try {
+      slices[currentIndex].count(value);
+    } finally {
+      phaser.writerCriticalSectionExit(criticalValue);
+    }
+  }
+
+  /**
+   * Counts the given primitive value without boxing it.
+   *
+   * @see LinearCounter#countInt(int)
+   */
+  public void countInt(int value) {
+    rotateIfNeeded();
+
+    long criticalValue = phaser.writerCriticalSectionEnter();
+    try {
+      slices[currentIndex].countInt(value);
+    } finally {
+      phaser.writerCriticalSectionExit(criticalValue);
+    }
+  }
+
+  /**
+   * Counts the given primitive value without boxing it.
+   *
+   * @see LinearCounter#countLong(long)
+   */
+  public void countLong(long value) {
+    rotateIfNeeded();
+
+    long criticalValue = phaser.writerCriticalSectionEnter();
+    try {
+      slices[currentIndex].countLong(value);
+    } finally {
+      phaser.writerCriticalSectionExit(criticalValue);
+    }
+  }
+
+  /**
+   * Counts a value by its precomputed hash code.
+   *
+   * @see LinearCounter#countHash(int)
+   */
+  public void countHash(int hash) {
+    rotateIfNeeded();
+
+    long criticalValue = phaser.writerCriticalSectionEnter();
+    try {
+      slices[currentIndex].countHash(hash);
+    } finally {
+      phaser.writerCriticalSectionExit(criticalValue);
+    }
+  }
+
+  /**
+   * Returns the cardinality of the values observed in the whole window.
+   *
+   * @return estimated cardinality as {@code double}
+   */
+  public double getCardinality() {
+    return getCardinality(getSliceCount());
+  }
+
+  /**
+   * Returns the cardinality of the values observed in the given number of the last slices
+   * (including the current one).
+   *
+   * @param sliceCount the number of the last slices (between 1 and the slice count of the window)
+   * @return estimated cardinality as {@code double}
+   */
+  public double getCardinality(int sliceCount) {
+    if (sliceCount <= 0 || sliceCount > getSliceCount()) {
+      throw new IllegalArgumentException(
+          "Slice count must be in range [1, " + getSliceCount() + "]");
+    }
+
+    phaser.readerLock();
+    try {
+      rotate(ticker.read());
+
+      Arrays.fill(unionBitmap, 0);
+      for (int i = 0, index = currentIndex; i < sliceCount; i++) {
+        slices[index].mergeTo(unionBitmap);
+        index = index == 0 ? slices.length - 1 : index - 1;
+      }
+
+      // The spare slice isn't written, so it estimates the cardinality of the union.
+      LinearCounter<V> union = slices[nextIndex(currentIndex)];
+      union.mergeFrom(unionBitmap);
+      double cardinality = union.getCardinality();
+      union.clear();
+      return cardinality;
+    } finally {
+      phaser.readerUnlock();
+    }
+  }
+
+  /**
+   * Releases the resources held by the underlying linear counters if they are {@link Closeable}.
+   * The meter must not be used after it has been closed: counting fails with
+   * {@link IllegalStateException}.
+   */
+  @Override
+  public void close() throws IOException {
+    phaser.readerLock();
+    try {
+      LinearCounter<V>[] closedSlices = slices.clone();
+      Arrays.fill(slices, ClosedLinearCounter.<V>getInstance());
+
+      // Wait for the writers that could have obtained the slices before releasing them.
+      phaser.flipPhase();
+
+      for (LinearCounter<V> slice : closedSlices) {
+        if (slice instanceof Closeable) {
+          ((Closeable) slice).close();
+        }
+      }
+    } finally {
+      phaser.readerUnlock();
+    }
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static <V> LinearCounter<V>[] newSlices(int length) {
+    return new LinearCounter[length];
+  }
+
+  private void rotateIfNeeded() {
+    long time = ticker.read();
+    if (time - nextRotation >= 0) {
+      phaser.readerLock();
+      try {
+        rotate(time);
+      } finally {
+        phaser.readerUnlock();
+      }
+    }
+  }
+
+  /**
+   * Rotates the slices that have ended by the given time. It must be called under the reader lock.
+   */
+  private void rotate(long time) {
+    long elapsed = time - nextRotation;
+    if (elapsed < 0) {
+      return;
+    }
+
+    long rotationCount = elapsed / sliceNanos + 1;
+    // All the slices are cleared after a full cycle.
+    int cycleCount = (int) Math.min(rotationCount, slices.length);
+    for (int i = 0; i < cycleCount; i++) {
+      currentIndex = nextIndex(currentIndex);
+      // Wait for the writers of the previous slice, so no one writes the oldest slice any more.
+      phaser.flipPhase();
+      slices[nextIndex(currentIndex)].clear();
+    }
+    nextRotation += rotationCount * sliceNanos;
+  }
+
+  private int nextIndex(int index) {
+    return index == slices.length - 1 ? 0 : index + 1;
+  }
+}
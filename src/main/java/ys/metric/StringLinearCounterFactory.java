@@ -29,6 +29,7 @@ public class StringLinearCounterFactory implements LinearCounterFactory<String>
 
   private final int size;
   private final Hasher<String> hasher;
+  private final boolean trackOneBitCount;
 
   /**
    * Constructs a factory of the write-concurrent linear counters.
@@ -37,8 +38,20 @@ public class StringLinearCounterFactory implements LinearCounterFactory<String>
    * @param hasher the idempotent hash function used by the linear counters
    */
   public StringLinearCounterFactory(int size, Hasher<String> hasher) {
+    this(size, hasher, false);
+  }
+
+  /**
+   * Constructs a factory of the write-concurrent linear counters.
+   *
+   * @param size the number of bits used by the linear counters
+   * @param hasher the idempotent hash function used by the linear counters
+   * @param trackOneBitCount whether the linear counters track the number of 1s bits incrementally
+   */
+  public StringLinearCounterFactory(int size, Hasher<String> hasher, boolean trackOneBitCount) {
     this.size = size;
     this.hasher = hasher;
+    this.trackOneBitCount = trackOneBitCount;
   }
 
   /**
@@ -46,6 +59,6 @@ public class StringLinearCounterFactory implements LinearCounterFactory<String>
    */
   @Override
   public LinearCounter<String> create() {
-    return new WriteConcurrentLinearCounter<>(size, hasher);
+    return new WriteConcurrentLinearCounter<>(size, hasher, trackOneBitCount);
   }
 }
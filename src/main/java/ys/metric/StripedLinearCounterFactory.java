@@ -0,0 +1,67 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.metric;
+
+import ys.probabilistic.util.Hasher;
+import ys.probabilistic.util.LinearCounter;
+import ys.probabilistic.util.StripedLinearCounter;
+
+/**
+ * A factory of {@link StripedLinearCounter}s. It suits meters that are updated by many threads.
+ *
+ * @param <V> the type of values counted by the linear counters
+ *
+ * @author Yauheni Shahun
+ */
+public class StripedLinearCounterFactory<V> implements LinearCounterFactory<V> {
+
+  private final int size;
+  private final int stripeCount;
+  private final Hasher<V> hasher;
+
+  /**
+   * Constructs a factory of the striped linear counters with the number of stripes equal to the
+   * number of the available processors.
+   *
+   * @param size the number of bits used by the linear counters
+   * @param hasher the idempotent hash function used by the linear counters
+   */
+  public StripedLinearCounterFactory(int size, Hasher<V> hasher) {
+    this(size, Runtime.getRuntime().availableProcessors(), hasher);
+  }
+
+  /**
+   * Constructs a factory of the striped linear counters.
+   *
+   * @param size the number of bits used by the linear counters
+   * @param stripeCount the number of stripes per linear counter
+   * @param hasher the idempotent hash function used by the linear counters
+   */
+  public StripedLinearCounterFactory(int size, int stripeCount, Hasher<V> hasher) {
+    this.size = size;
+    this.stripeCount = stripeCount;
+    this.hasher = hasher;
+  }
+
+  /**
+   * Creates a striped linear counter.
+   */
+  @Override
+  public LinearCounter<V> create() {
+    return new StripedLinearCounter<>(size, stripeCount, hasher);
+  }
+}
@@ -0,0 +1,96 @@
+package ys.metric.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import ys.probabilistic.util.AggregateLinearCounter;
+import ys.probabilistic.util.BitmapUtil;
+import ys.probabilistic.util.LinearCounter;
+import ys.probabilistic.util.LinearCounterAggregator;
+import ys.probabilistic.util.MurmurHashers;
+import ys.probabilistic.util.WriteConcurrentLinearCounter;
+
+/**
+ * Measures merging and aggregating the bitmaps of the linear counters of different sizes.
+ */
+@State(Scope.Thread)
+public class AggregationBenchmark {
+
+  private static final int COUNTER_COUNT = 16;
+
+  @Param({"65536", "1048576", "16777216"})
+  int size;
+
+  ForkJoinPool pool;
+  List<LinearCounter<Integer>> counters;
+  List<int[]> bitmaps;
+  int[] target;
+  AggregateLinearCounter<Integer> aggregate;
+
+  @Setup
+  public void setUp() {
+    pool = new ForkJoinPool();
+    counters = new ArrayList<>();
+    bitmaps = new ArrayList<>();
+
+    Random random = new Random(42);
+    for (int i = 0; i < COUNTER_COUNT; i++) {
+      LinearCounter<Integer> counter =
+          new WriteConcurrentLinearCounter<>(size, MurmurHashers.integerHasher());
+      for (int j = 0; j < size / 8; j++) {
+        counter.countInt(random.nextInt());
+      }
+      counters.add(counter);
+      bitmaps.add(counter.getBitmap());
+    }
+
+    target = new int[bitmaps.get(0).length];
+    aggregate = new AggregateLinearCounter<>(size);
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public int[] mergeTo() {
+    counters.get(0).mergeTo(target);
+    return target;
+  }
+
+  @Benchmark
+  public int[] or() {
+    BitmapUtil.or(target, bitmaps.get(0));
+    return target;
+  }
+
+  @Benchmark
+  public double mergeFromAndGetCardinality() {
+    return aggregate.mergeFromAndGetCardinality(bitmaps.get(0));
+  }
+
+  @Benchmark
+  public AggregateLinearCounter<Integer> mergeBitmaps() {
+    return LinearCounterAggregator.mergeBitmaps(size, bitmaps, pool);
+  }
+
+  @Benchmark
+  public double getCardinality() {
+    return LinearCounterAggregator.getCardinality(size, bitmaps, pool);
+  }
+
+  @Benchmark
+  public AggregateLinearCounter<Integer> mergeCounters() {
+    return LinearCounterAggregator.mergeCounters(size, counters, pool);
+  }
+}
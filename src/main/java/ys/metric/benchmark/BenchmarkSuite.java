@@ -0,0 +1,180 @@
+package ys.metric.benchmark;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.NoBenchmarksException;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs the benchmarks of the library and compares the results of different runs.
+ *
+ * <pre>
+ * java -cp benchmarks.jar ys.metric.benchmark.BenchmarkSuite run results.json [regexp]
+ * java -cp benchmarks.jar ys.metric.benchmark.BenchmarkSuite compare base.json new.json [percent]
+ * </pre>
+ *
+ * <p>The counting benchmarks of {@link LinearCounterBenchmark} are run with 1, 2, 4, ... threads up
+ * to the number of the available processors, the rest of the benchmarks are run with their default
+ * threads. All the benchmarks are run with the GC profiler. The results are written in the JSON
+ * format of JMH.
+ *
+ * <p>The comparison prints the change of the score of each benchmark found in both runs and flags
+ * the regressions greater than the given percentage (10% by default): lower throughput or higher
+ * time per operation. The exit status is 1 if there are regressions.
+ */
+public final class BenchmarkSuite {
+
+  private static final String PACKAGE = "ys\\.metric\\.benchmark\\.";
+  private static final String SCALING_BENCHMARKS = PACKAGE + "LinearCounterBenchmark\\.count";
+  private static final double DEFAULT_THRESHOLD = 10;
+
+  private BenchmarkSuite() {}
+
+  public static void main(String[] args) throws IOException, RunnerException {
+    if (args.length >= 2 && args[0].equals("run")) {
+      run(args[1], args.length > 2 ? args[2] : null);
+    } else if (args.length >= 3 && args[0].equals("compare")) {
+      double threshold = args.length > 3 ? Double.parseDouble(args[3]) : DEFAULT_THRESHOLD;
+      if (compare(args[1], args[2], threshold) > 0) {
+        System.exit(1);
+      }
+    } else {
+      System.err.println("Usage: BenchmarkSuite run <output.json> [regexp]");
+      System.err.println("       BenchmarkSuite compare <baseline.json> <current.json> [percent]");
+      System.exit(2);
+    }
+  }
+
+  /**
+   * Runs the benchmarks matching the optional regular expression and writes the results to the
+   * given file.
+   */
+  public static void run(String output, String filter) throws IOException, RunnerException {
+    List<RunResult> results = new ArrayList<>();
+
+    int processorCount = Runtime.getRuntime().availableProcessors();
+    for (int threads = 1;; threads = Math.min(threads * 2, processorCount)) {
+      results.addAll(run(new OptionsBuilder()
+          .include(restrict(SCALING_BENCHMARKS, filter))
+          .threads(threads)));
+      if (threads == processorCount) {
+        break;
+      }
+    }
+
+    results.addAll(run(new OptionsBuilder()
+        .include(restrict(PACKAGE + ".*Benchmark", filter))
+        .exclude(SCALING_BENCHMARKS)));
+
+    // The runs with different options can't share a result file, so their results are merged.
+    ResultFormatFactory.getInstance(ResultFormatType.JSON, output).writeOut(results);
+  }
+
+  /**
+   * Compares the results of two runs and prints the changes.
+   *
+   * @return the number of the regressions
+   */
+  public static int compare(String baseline, String current, double threshold)
+      throws IOException {
+    Map<String, Double> baselineScores = readScores(baseline);
+    Map<String, Double> currentScores = readScores(current);
+
+    int regressionCount = 0;
+    for (Map.Entry<String, Double> entry : baselineScores.entrySet()) {
+      Double score = currentScores.get(entry.getKey());
+      if (score == null) {
+        System.out.println(String.format(Locale.ROOT, "%-100s %10s", entry.getKey(), "missing"));
+        continue;
+      }
+
+      double change = (score - entry.getValue()) / entry.getValue() * 100;
+      // The higher throughput is better, the lower time is better.
+      boolean higherIsBetter = entry.getKey().contains("[" + Mode.Throughput.shortLabel() + "]");
+      boolean regression = higherIsBetter ? change < -threshold : change > threshold;
+      if (regression) {
+        regressionCount++;
+      }
+      System.out.println(String.format(Locale.ROOT, "%-100s %+9.1f%% %s", entry.getKey(), change,
+          regression ? "REGRESSION" : ""));
+    }
+    System.out.println(regressionCount + " regression(s) above " + threshold + "%");
+    return regressionCount;
+  }
+
+  private static Collection<RunResult> run(ChainedOptionsBuilder builder) throws RunnerException {
+    Options options = builder
+        .addProfiler(GCProfiler.class)
+        .warmupIterations(5)
+        .warmupTime(TimeValue.seconds(1))
+        .measurementIterations(5)
+        .measurementTime(TimeValue.seconds(1))
+        .forks(1)
+        .shouldFailOnError(true)
+        .build();
+    try {
+      return new Runner(options).run();
+    } catch (NoBenchmarksException e) {
+      // The filter excludes all the benchmarks of this part of the suite.
+      return Collections.emptyList();
+    }
+  }
+
+  private static String restrict(String pattern, String filter) {
+    return filter == null ? pattern : "(?=.*" + filter + ")" + pattern;
+  }
+
+  private static Map<String, Double> readScores(String file) throws IOException {
+    JsonArray results;
+    try (Reader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+      results = new JsonParser().parse(reader).getAsJsonArray();
+    }
+
+    Map<String, Double> scores = new TreeMap<>();
+    for (JsonElement element : results) {
+      JsonObject result = element.getAsJsonObject();
+      JsonElement score = result.getAsJsonObject("primaryMetric").get("score");
+      if (!score.isJsonPrimitive() || !score.getAsJsonPrimitive().isNumber()) {
+        continue;
+      }
+
+      Map<String, String> params = new TreeMap<>();
+      if (result.has("params")) {
+        for (Map.Entry<String, JsonElement> param : result.getAsJsonObject("params").entrySet()) {
+          params.put(param.getKey(), param.getValue().getAsString());
+        }
+      }
+      String key = result.get("benchmark").getAsString() + " ["
+          + result.get("mode").getAsString() + "] threads=" + result.get("threads").getAsInt()
+          + " " + params;
+      scores.put(key, score.getAsDouble());
+    }
+    return scores;
+  }
+}
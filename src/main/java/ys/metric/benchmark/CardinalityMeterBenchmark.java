@@ -11,6 +11,7 @@ import org.openjdk.jmh.annotations.State;
 
 import ys.metric.CardinalityMeter;
 import ys.metric.StringLinearCounterFactory;
+import ys.metric.StripedLinearCounterFactory;
 import ys.probabilistic.util.MurmurHashers;
 
 public class CardinalityMeterBenchmark {
@@ -23,6 +24,12 @@ public class CardinalityMeterBenchmark {
         new StringLinearCounterFactory(COUNTER_SIZE, MurmurHashers.stringHasher()));
   }
 
+  @State(Scope.Group)
+  public static class StripedGroupState {
+    final CardinalityMeter<String> meter = new CardinalityMeter<>(
+        new StripedLinearCounterFactory<>(COUNTER_SIZE, MurmurHashers.stringHasher()));
+  }
+
   @State(Scope.Thread)
   public static class Data {
     final String[] data = generateData(10000, 1000);
@@ -47,13 +54,6 @@ public class CardinalityMeterBenchmark {
     state.meter.count(data.nextValue());
   }
 
-  /*@Benchmark
-  @Group("two")
-  @GroupThreads(1)
-  public double cardinality_2(GroupState state) {
-    return state.meter.getCardinality();
-  }*/
-
   @Benchmark
   @Group("four")
   @GroupThreads(4)
@@ -61,6 +61,71 @@ public class CardinalityMeterBenchmark {
     state.meter.count(data.nextValue());
   }
 
+  @Benchmark
+  @Group("sixteen")
+  @GroupThreads(16)
+  public void count_16(GroupState state, Data data) {
+    state.meter.count(data.nextValue());
+  }
+
+  @Benchmark
+  @Group("striped_four")
+  @GroupThreads(4)
+  public void countStriped_4(StripedGroupState state, Data data) {
+    state.meter.count(data.nextValue());
+  }
+
+  @Benchmark
+  @Group("striped_sixteen")
+  @GroupThreads(16)
+  public void countStriped_16(StripedGroupState state, Data data) {
+    state.meter.count(data.nextValue());
+  }
+
+  @Benchmark
+  @Group("read_cardinality")
+  @GroupThreads(3)
+  public void countWhileReadingCardinality(GroupState state, Data data) {
+    state.meter.count(data.nextValue());
+  }
+
+  @Benchmark
+  @Group("read_cardinality")
+  @GroupThreads(1)
+  public double readCardinality(GroupState state) {
+    return state.meter.getCardinality();
+  }
+
+  @Benchmark
+  @Group("read_counter")
+  @GroupThreads(3)
+  public void countWhileReadingCounter(GroupState state, Data data) {
+    state.meter.count(data.nextValue());
+  }
+
+  @Benchmark
+  @Group("read_counter")
+  @GroupThreads(1)
+  public double readCounter(GroupState state) {
+    return state.meter.getCounter().getCardinality();
+  }
+
+  @Benchmark
+  @Group("read_snapshot")
+  @GroupThreads(3)
+  public void countWhileReadingSnapshot(GroupState state, Data data) {
+    state.meter.count(data.nextValue());
+  }
+
+  @Benchmark
+  @Group("read_snapshot")
+  @GroupThreads(1)
+  public double readSnapshot(GroupState state) {
+    try (CardinalityMeter<String>.Snapshot snapshot = state.meter.getSnapshot()) {
+      return snapshot.getCardinality();
+    }
+  }
+
   private static String[] generateData(int count, int uniqueCount) {
     String[] uniqueData = new String[uniqueCount];
     for (int i = 0; i < uniqueCount; i++) {
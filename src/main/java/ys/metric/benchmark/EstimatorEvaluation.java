@@ -0,0 +1,359 @@
+package ys.metric.benchmark;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import ys.probabilistic.util.AdaptiveLinearCounter;
+import ys.probabilistic.util.Hasher;
+import ys.probabilistic.util.HyperLogLog;
+import ys.probabilistic.util.LinearCounter;
+import ys.probabilistic.util.MurmurHashers;
+import ys.probabilistic.util.OffHeapLinearCounter;
+import ys.probabilistic.util.StripedLinearCounter;
+import ys.probabilistic.util.WriteConcurrentLinearCounter;
+import ys.probabilistic.util.WriteConcurrentLongLinearCounter;
+
+/**
+ * Evaluates the cardinality estimators of the library over the datasets of different cardinalities
+ * within different memory budgets. For each combination it reports the relative error of the
+ * estimate, the memory used by the estimator and the single-thread counting throughput, so the
+ * size of the counters can be chosen from data.
+ *
+ * <pre>
+ * java -cp benchmarks.jar ys.metric.benchmark.EstimatorEvaluation --csv=evaluation.csv
+ * </pre>
+ *
+ * <p>Options (with the defaults):
+ * <ul>
+ * <li>{@code --estimators=all}: the comma-separated names of the estimators (see
+ * {@link Estimator})
+ * <li>{@code --budgets=1024,8192,65536,524288}: the memory budgets in bytes
+ * <li>{@code --cardinalities=1000,10000,100000,1000000}: the sizes of the domains of the
+ * synthetic datasets
+ * <li>{@code --distributions=uniform,zipf}: the distributions of the synthetic datasets; the
+ * uniform dataset has 2 samples per value of its domain, the Zipf one has 10
+ * <li>{@code --file}: the file whose lines are evaluated as an additional dataset
+ * <li>{@code --runs=3}: the number of runs with different seeds; the errors are averaged over the
+ * runs, the throughput is the best one
+ * <li>{@code --csv}: the file for the results in the CSV format
+ * </ul>
+ */
+public final class EstimatorEvaluation {
+
+  private static final Map<String, String> DEFAULTS = new HashMap<>();
+
+  static {
+    DEFAULTS.put("estimators", "all");
+    DEFAULTS.put("budgets", "1024,8192,65536,524288");
+    DEFAULTS.put("cardinalities", "1000,10000,100000,1000000");
+    DEFAULTS.put("distributions", "uniform,zipf");
+    DEFAULTS.put("file", "");
+    DEFAULTS.put("runs", "3");
+    DEFAULTS.put("csv", "");
+  }
+
+  private static final String HEADER =
+      "dataset,estimator,bytes,cardinality,estimate,error_pct,abs_error_pct,counts_per_sec";
+
+  /**
+   * The evaluated estimators. The size of each one is derived from the memory budget.
+   */
+  public enum Estimator {
+    LINEAR {
+      @Override
+      <T> LinearCounter<T> create(int budget, Hasher<T> hasher) {
+        return new WriteConcurrentLinearCounter<>(budget * Byte.SIZE, hasher);
+      }
+    },
+    LINEAR_TRACKING {
+      @Override
+      <T> LinearCounter<T> create(int budget, Hasher<T> hasher) {
+        return new WriteConcurrentLinearCounter<>(budget * Byte.SIZE, hasher, true);
+      }
+    },
+    LINEAR_LONG {
+      @Override
+      <T> LinearCounter<T> create(int budget, Hasher<T> hasher) {
+        return new WriteConcurrentLongLinearCounter<>(budget * Byte.SIZE, hasher);
+      }
+    },
+    STRIPED {
+      @Override
+      <T> LinearCounter<T> create(int budget, Hasher<T> hasher) {
+        return new StripedLinearCounter<>(budget * Byte.SIZE / STRIPE_COUNT, STRIPE_COUNT, hasher);
+      }
+    },
+    OFF_HEAP {
+      @Override
+      <T> LinearCounter<T> create(int budget, Hasher<T> hasher) {
+        return new OffHeapLinearCounter<>(budget * Byte.SIZE, hasher);
+      }
+    },
+    HLL {
+      @Override
+      <T> LinearCounter<T> create(int budget, Hasher<T> hasher) {
+        return new HyperLogLog<>(getPrecision(budget), hasher);
+      }
+
+      @Override
+      long getBytes(int budget) {
+        return 1L << getPrecision(budget);
+      }
+    },
+    ADAPTIVE {
+      @Override
+      <T> LinearCounter<T> create(int budget, Hasher<T> hasher) {
+        return new AdaptiveLinearCounter<>(getPrecision(budget), hasher);
+      }
+
+      /**
+       * Returns the peak memory (of the HyperLogLog level).
+       */
+      @Override
+      long getBytes(int budget) {
+        return 1L << getPrecision(budget);
+      }
+    };
+
+    private static final int STRIPE_COUNT = 4;
+
+    abstract <T> LinearCounter<T> create(int budget, Hasher<T> hasher);
+
+    /**
+     * Returns the number of bytes used by the estimator created for the budget.
+     */
+    long getBytes(int budget) {
+      return budget;
+    }
+
+    /**
+     * Returns the precision of HyperLogLog whose registers (a byte each) fit into the budget.
+     */
+    private static int getPrecision(int budget) {
+      int precision = 31 - Integer.numberOfLeadingZeros(budget);
+      return Math.max(HyperLogLog.MIN_PRECISION, Math.min(HyperLogLog.MAX_PRECISION, precision));
+    }
+  }
+
+  private final Map<String, String> options;
+  private final List<String> results = new ArrayList<>();
+
+  private EstimatorEvaluation(Map<String, String> options) {
+    this.options = options;
+  }
+
+  public static void main(String[] args) throws IOException {
+    Map<String, String> options = new HashMap<>(DEFAULTS);
+    for (String arg : args) {
+      int index = arg.indexOf('=');
+      if (!arg.startsWith("--") || index < 0 || !DEFAULTS.containsKey(arg.substring(2, index))) {
+        System.err.println("Unknown option: " + arg);
+        System.exit(2);
+      }
+      options.put(arg.substring(2, index), arg.substring(index + 1));
+    }
+
+    new EstimatorEvaluation(options).run();
+  }
+
+  private void run() throws IOException {
+    List<Estimator> estimators = new ArrayList<>();
+    if (options.get("estimators").equals("all")) {
+      estimators.addAll(Arrays.asList(Estimator.values()));
+    } else {
+      for (String name : options.get("estimators").split(",")) {
+        estimators.add(Estimator.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+      }
+    }
+    int runs = Integer.parseInt(options.get("runs"));
+
+    System.out.println(String.format(Locale.ROOT, "%-24s %-16s %10s %12s %12s %9s %14s",
+        "dataset", "estimator", "bytes", "cardinality", "estimate", "error", "counts/s"));
+
+    for (String distribution : options.get("distributions").split(",")) {
+      for (String cardinality : options.get("cardinalities").split(",")) {
+        int n = Integer.parseInt(cardinality.trim());
+        List<int[]> datasets = new ArrayList<>();
+        for (int run = 0; run < runs; run++) {
+          datasets.add(generate(distribution.trim(), n, new Random(run)));
+        }
+        String name = distribution.trim() + "-" + n;
+        for (Estimator estimator : estimators) {
+          for (int budget : getBudgets()) {
+            evaluateInts(name, estimator, budget, datasets);
+          }
+        }
+      }
+    }
+
+    if (!options.get("file").isEmpty()) {
+      List<String> lines = Files.readAllLines(Paths.get(options.get("file")),
+          StandardCharsets.UTF_8);
+      String[] values = lines.toArray(new String[lines.size()]);
+      String name = Paths.get(options.get("file")).getFileName().toString();
+      for (Estimator estimator : estimators) {
+        for (int budget : getBudgets()) {
+          evaluateStrings(name, estimator, budget, values, runs);
+        }
+      }
+    }
+
+    if (!options.get("csv").isEmpty()) {
+      try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(
+          options.get("csv")), StandardCharsets.UTF_8))) {
+        writer.println(HEADER);
+        for (String result : results) {
+          writer.println(result);
+        }
+      }
+    }
+  }
+
+  private int[] getBudgets() {
+    String[] budgets = options.get("budgets").split(",");
+    int[] result = new int[budgets.length];
+    for (int i = 0; i < budgets.length; i++) {
+      result[i] = Integer.parseInt(budgets[i].trim());
+    }
+    return result;
+  }
+
+  /**
+   * Generates a dataset whose first element is the exact number of the distinct values followed by
+   * the values.
+   */
+  private static int[] generate(String distribution, int n, Random random) {
+    // Maps the ranks to the values by a random bijection, so the values differ between the runs.
+    int multiplier = random.nextInt() | 1;
+    int offset = random.nextInt();
+
+    int[] values;
+    int distinctCount;
+    switch (distribution) {
+      case "uniform":
+        values = new int[2 * n];
+        for (int i = 0; i < values.length; i++) {
+          values[i] = random.nextInt(n);
+        }
+        distinctCount = countDistinctRanks(values, n);
+        break;
+      case "zipf":
+        ZipfDistribution zipf = new ZipfDistribution(n, 1.0);
+        values = new int[10 * n];
+        for (int i = 0; i < values.length; i++) {
+          values[i] = zipf.next(random);
+        }
+        distinctCount = countDistinctRanks(values, n);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown distribution: " + distribution);
+    }
+
+    int[] dataset = new int[values.length + 1];
+    dataset[0] = distinctCount;
+    for (int i = 0; i < values.length; i++) {
+      dataset[i + 1] = values[i] * multiplier + offset;
+    }
+    return dataset;
+  }
+
+  private static int countDistinctRanks(int[] ranks, int n) {
+    boolean[] seen = new boolean[n];
+    int count = 0;
+    for (int rank : ranks) {
+      if (!seen[rank]) {
+        seen[rank] = true;
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private void evaluateInts(String name, Estimator estimator, int budget, List<int[]> datasets)
+      throws IOException {
+    Hasher<Integer> hasher = MurmurHashers.integerHasher();
+    double errorSum = 0;
+    double absErrorSum = 0;
+    double estimateSum = 0;
+    double bestThroughput = 0;
+    for (int[] dataset : datasets) {
+      LinearCounter<Integer> counter = estimator.create(budget, hasher);
+      try {
+        long start = System.nanoTime();
+        for (int i = 1; i < dataset.length; i++) {
+          counter.countInt(dataset[i]);
+        }
+        long time = System.nanoTime() - start;
+
+        double estimate = counter.getCardinality();
+        double error = (estimate - dataset[0]) / dataset[0];
+        estimateSum += estimate;
+        errorSum += error;
+        absErrorSum += Math.abs(error);
+        bestThroughput = Math.max(bestThroughput, (dataset.length - 1) * 1e9 / time);
+      } finally {
+        close(counter);
+      }
+    }
+
+    int count = datasets.size();
+    report(name, estimator, budget, datasets.get(0)[0], estimateSum / count, errorSum / count,
+        absErrorSum / count, bestThroughput);
+  }
+
+  private void evaluateStrings(String name, Estimator estimator, int budget, String[] values,
+      int runs) throws IOException {
+    int distinctCount = new HashSet<>(Arrays.asList(values)).size();
+    Hasher<String> hasher = MurmurHashers.stringHasher();
+    double estimate = 0;
+    double bestThroughput = 0;
+    // The dataset is fixed, so the runs only measure the throughput.
+    for (int run = 0; run < runs; run++) {
+      LinearCounter<String> counter = estimator.create(budget, hasher);
+      try {
+        long start = System.nanoTime();
+        for (String value : values) {
+          counter.count(value);
+        }
+        long time = System.nanoTime() - start;
+
+        estimate = counter.getCardinality();
+        bestThroughput = Math.max(bestThroughput, values.length * 1e9 / time);
+      } finally {
+        close(counter);
+      }
+    }
+
+    double error = distinctCount == 0 ? 0 : (estimate - distinctCount) / distinctCount;
+    report(name, estimator, budget, distinctCount, estimate, error, Math.abs(error),
+        bestThroughput);
+  }
+
+  private void report(String name, Estimator estimator, int budget, int cardinality,
+      double estimate, double error, double absError, double throughput) {
+    String estimatorName = estimator.name().toLowerCase(Locale.ROOT);
+    long bytes = estimator.getBytes(budget);
+    System.out.println(String.format(Locale.ROOT, "%-24s %-16s %10d %12d %12.0f %+8.2f%% %14.0f",
+        name, estimatorName, bytes, cardinality, estimate, error * 100, throughput));
+    results.add(String.format(Locale.ROOT, "%s,%s,%d,%d,%.1f,%.4f,%.4f,%.0f", name, estimatorName,
+        bytes, cardinality, estimate, error * 100, absError * 100, throughput));
+  }
+
+  private static void close(LinearCounter<?> counter) throws IOException {
+    if (counter instanceof Closeable) {
+      ((Closeable) counter).close();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package ys.metric.benchmark;
+
+import java.util.Random;
+import java.util.UUID;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import ys.probabilistic.util.Hasher;
+import ys.probabilistic.util.Hasher64;
+import ys.probabilistic.util.IntHasher;
+import ys.probabilistic.util.MurmurHashers;
+import ys.probabilistic.util.SimpleHasher;
+
+/**
+ * Measures the cost of hashing the values with the hashers of the library.
+ */
+public class HasherBenchmark {
+
+  @State(Scope.Thread)
+  public static class Data {
+    final Hasher<String> murmurStringHasher = MurmurHashers.stringHasher();
+    final Hasher64<String> murmurStringHasher64 = MurmurHashers.stringHasher64();
+    final IntHasher murmurIntHasher = (IntHasher) MurmurHashers.integerHasher();
+    final SimpleHasher<String> simpleHasher = new SimpleHasher<>();
+
+    final String[] strings = new String[1024];
+    final int[] ints = new int[1024];
+    int index;
+
+    public Data() {
+      Random random = new Random(42);
+      for (int i = 0; i < strings.length; i++) {
+        strings[i] = UUID.randomUUID().toString();
+        ints[i] = random.nextInt();
+      }
+    }
+
+    int next() {
+      return index++ & (strings.length - 1);
+    }
+  }
+
+  @Benchmark
+  public int murmurString(Data data) {
+    return data.murmurStringHasher.hash(data.strings[data.next()]);
+  }
+
+  @Benchmark
+  public long murmurString64(Data data) {
+    return data.murmurStringHasher64.hash64(data.strings[data.next()]);
+  }
+
+  @Benchmark
+  public int simpleString(Data data) {
+    return data.simpleHasher.hash(data.strings[data.next()]);
+  }
+
+  @Benchmark
+  public int murmurInt(Data data) {
+    return data.murmurIntHasher.hash(data.ints[data.next()]);
+  }
+
+  @Benchmark
+  public int simpleInt(Data data) {
+    return data.simpleHasher.hash(data.ints[data.next()]);
+  }
+}
@@ -0,0 +1,279 @@
+package ys.metric.benchmark;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import ys.metric.CardinalityMeter;
+import ys.metric.LinearCounterFactory;
+import ys.probabilistic.util.AdaptiveLinearCounter;
+import ys.probabilistic.util.HyperLogLog;
+import ys.probabilistic.util.LinearCounter;
+import ys.probabilistic.util.MurmurHashers;
+import ys.probabilistic.util.OffHeapLinearCounter;
+import ys.probabilistic.util.StripedLinearCounter;
+import ys.probabilistic.util.WriteConcurrentLinearCounter;
+
+/**
+ * A load generator that measures the latency distribution of the operations of
+ * {@link CardinalityMeter} under load. Unlike the JMH benchmarks, it's open-loop: each thread
+ * issues the operations at a fixed rate, and the latency is measured from the time the operation
+ * was due, so the stalls (e.g. a writer spinning on CAS, a reader waiting for the phase flip)
+ * delay the following operations and show up in the tail instead of being hidden.
+ *
+ * <pre>
+ * java -cp benchmarks.jar ys.metric.benchmark.LatencyHarness --counter=striped --writers=8
+ * </pre>
+ *
+ * <p>Options (with the defaults):
+ * <ul>
+ * <li>{@code --counter=concurrent}: {@code concurrent}, {@code concurrent_tracking},
+ * {@code striped}, {@code off_heap}, {@code hll} or {@code adaptive}
+ * <li>{@code --size=1048576}: the number of bits of the linear counters
+ * <li>{@code --precision=14}: the precision of HyperLogLog and the adaptive counter
+ * <li>{@code --writers=4}, {@code --readers=1}: the numbers of threads
+ * <li>{@code --write-rate=100000}, {@code --read-rate=10}: operations per second per thread
+ * <li>{@code --read=cardinality}: {@code cardinality}, {@code snapshot} or {@code counter}
+ * <li>{@code --distribution=uniform}: {@code uniform} or {@code zipf}
+ * <li>{@code --unique=1000000}: the number of distinct values
+ * <li>{@code --zipf-exponent=1.0}
+ * <li>{@code --warmup=5}, {@code --duration=30}: seconds
+ * <li>{@code --output}: the prefix of the files for the full percentile distributions
+ * </ul>
+ */
+public final class LatencyHarness {
+
+  private static final Map<String, String> DEFAULTS = new HashMap<>();
+
+  static {
+    DEFAULTS.put("counter", "concurrent");
+    DEFAULTS.put("size", "1048576");
+    DEFAULTS.put("precision", "14");
+    DEFAULTS.put("writers", "4");
+    DEFAULTS.put("readers", "1");
+    DEFAULTS.put("write-rate", "100000");
+    DEFAULTS.put("read-rate", "10");
+    DEFAULTS.put("read", "cardinality");
+    DEFAULTS.put("distribution", "uniform");
+    DEFAULTS.put("unique", "1000000");
+    DEFAULTS.put("zipf-exponent", "1.0");
+    DEFAULTS.put("warmup", "5");
+    DEFAULTS.put("duration", "30");
+    DEFAULTS.put("output", "");
+  }
+
+  private final Map<String, String> options;
+  private final CardinalityMeter<Integer> meter;
+  private final int uniqueCount;
+  private final ZipfDistribution zipf;
+  private final Recorder writeLatency = new Recorder(3);
+  private final Recorder readLatency = new Recorder(3);
+
+  private LatencyHarness(Map<String, String> options) {
+    this.options = options;
+    this.meter = new CardinalityMeter<>(createFactory(options.get("counter"),
+        getInt("size"), getInt("precision")));
+    this.uniqueCount = getInt("unique");
+    this.zipf = options.get("distribution").equals("zipf")
+        ? new ZipfDistribution(uniqueCount, Double.parseDouble(options.get("zipf-exponent")))
+        : null;
+  }
+
+  public static void main(String[] args) throws InterruptedException, IOException {
+    Map<String, String> options = new HashMap<>(DEFAULTS);
+    for (String arg : args) {
+      int index = arg.indexOf('=');
+      if (!arg.startsWith("--") || index < 0 || !DEFAULTS.containsKey(arg.substring(2, index))) {
+        System.err.println("Unknown option: " + arg);
+        System.exit(2);
+      }
+      options.put(arg.substring(2, index), arg.substring(index + 1));
+    }
+
+    new LatencyHarness(options).run();
+  }
+
+  private void run() throws InterruptedException, IOException {
+    System.out.println("Options: " + options);
+
+    long warmup = TimeUnit.SECONDS.toNanos(getInt("warmup"));
+    long duration = TimeUnit.SECONDS.toNanos(getInt("duration"));
+    final long start = System.nanoTime();
+    final long measurementStart = start + warmup;
+    final long end = measurementStart + duration;
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < getInt("writers"); i++) {
+      threads.add(new Thread(new Worker(getInt("write-rate"), start, measurementStart, end,
+          writeLatency, i) {
+        @Override
+        void execute(Random random) {
+          meter.countInt(nextValue(random));
+        }
+      }, "writer-" + i));
+    }
+    final String read = options.get("read");
+    for (int i = 0; i < getInt("readers"); i++) {
+      threads.add(new Thread(new Worker(getInt("read-rate"), start, measurementStart, end,
+          readLatency, i) {
+        @Override
+        void execute(Random random) {
+          read(read);
+        }
+      }, "reader-" + i));
+    }
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    meter.close();
+
+    double seconds = duration / 1e9;
+    report("count", writeLatency.getIntervalHistogram(), seconds);
+    report(read, readLatency.getIntervalHistogram(), seconds);
+  }
+
+  private void read(String read) {
+    switch (read) {
+      case "cardinality":
+        meter.getCardinality();
+        break;
+      case "snapshot":
+        try (CardinalityMeter<Integer>.Snapshot snapshot = meter.getSnapshot()) {
+          snapshot.getCardinality();
+        }
+        break;
+      case "counter":
+        LinearCounter<Integer> counter = meter.getCounter();
+        counter.getCardinality();
+        // The counters returned by the meter are owned by the caller (e.g. the off-heap ones).
+        if (counter instanceof Closeable) {
+          try {
+            ((Closeable) counter).close();
+          } catch (IOException e) {
+            // The counter is discarded anyway.
+          }
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown read operation: " + read);
+    }
+  }
+
+  private int nextValue(Random random) {
+    int rank = zipf != null ? zipf.next(random) : random.nextInt(uniqueCount);
+    // Spreads the ranks, so the popular values aren't adjacent integers.
+    return rank * 0x9e3779b9;
+  }
+
+  private void report(String operation, Histogram histogram, double seconds) throws IOException {
+    System.out.println(String.format(Locale.ROOT,
+        "%-12s ops=%d rate=%.0f/s p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus p99.99=%.1fus "
+            + "max=%.1fus", operation, histogram.getTotalCount(),
+        histogram.getTotalCount() / seconds, micros(histogram.getValueAtPercentile(50)),
+        micros(histogram.getValueAtPercentile(90)), micros(histogram.getValueAtPercentile(99)),
+        micros(histogram.getValueAtPercentile(99.9)),
+        micros(histogram.getValueAtPercentile(99.99)), micros(histogram.getMaxValue())));
+
+    String output = options.get("output");
+    if (!output.isEmpty()) {
+      try (PrintStream stream = new PrintStream(new FileOutputStream(output + "-" + operation
+          + ".hgrm"), false, "UTF-8")) {
+        histogram.outputPercentileDistribution(stream, 1000.0);
+      }
+    }
+  }
+
+  private int getInt(String name) {
+    return Integer.parseInt(options.get(name));
+  }
+
+  private static double micros(long nanos) {
+    return nanos / 1000.0;
+  }
+
+  private static LinearCounterFactory<Integer> createFactory(final String counter, final int size,
+      final int precision) {
+    return new LinearCounterFactory<Integer>() {
+      @Override
+      public LinearCounter<Integer> create() {
+        switch (counter) {
+          case "concurrent":
+            return new WriteConcurrentLinearCounter<>(size, MurmurHashers.integerHasher());
+          case "concurrent_tracking":
+            return new WriteConcurrentLinearCounter<>(size, MurmurHashers.integerHasher(), true);
+          case "striped":
+            return new StripedLinearCounter<>(size, MurmurHashers.integerHasher());
+          case "off_heap":
+            return new OffHeapLinearCounter<>(size, MurmurHashers.integerHasher());
+          case "hll":
+            return new HyperLogLog<>(precision, MurmurHashers.integerHasher());
+          case "adaptive":
+            return new AdaptiveLinearCounter<>(precision, MurmurHashers.integerHasher());
+          default:
+            throw new IllegalArgumentException("Unknown counter type: " + counter);
+        }
+      }
+    };
+  }
+
+  /**
+   * A thread that issues the operations at the fixed rate and records their latencies from the
+   * intended start time (that accounts for the coordinated omission).
+   */
+  private abstract static class Worker implements Runnable {
+    private final long interval;
+    private final long start;
+    private final long measurementStart;
+    private final long end;
+    private final Recorder recorder;
+    private final Random random;
+
+    Worker(int rate, long start, long measurementStart, long end, Recorder recorder, int seed) {
+      this.interval = TimeUnit.SECONDS.toNanos(1) / rate;
+      this.start = start;
+      this.measurementStart = measurementStart;
+      this.end = end;
+      this.recorder = recorder;
+      this.random = new Random(seed);
+    }
+
+    abstract void execute(Random random);
+
+    @Override
+    public void run() {
+      // Shifts the schedule of each thread a bit, so they don't fire at the same time.
+      for (long next = start + (long) (random.nextDouble() * interval); next < end;
+          next += interval) {
+        long now;
+        while ((now = System.nanoTime()) < next) {
+          long delay = next - now;
+          if (delay > TimeUnit.MICROSECONDS.toNanos(100)) {
+            LockSupport.parkNanos(delay - TimeUnit.MICROSECONDS.toNanos(50));
+          }
+        }
+
+        execute(random);
+
+        if (next >= measurementStart) {
+          recorder.recordValue(System.nanoTime() - next);
+        }
+      }
+    }
+  }
+}
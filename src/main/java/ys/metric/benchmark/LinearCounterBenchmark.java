@@ -0,0 +1,102 @@
+package ys.metric.benchmark;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import ys.probabilistic.util.LinearCounter;
+import ys.probabilistic.util.MurmurHashers;
+import ys.probabilistic.util.OffHeapLinearCounter;
+import ys.probabilistic.util.StripedLinearCounter;
+import ys.probabilistic.util.WriteConcurrentLinearCounter;
+
+/**
+ * Measures counting by a single counter shared by all the benchmark threads. The number of threads
+ * is set by the runner (see {@link BenchmarkSuite}).
+ */
+@State(Scope.Benchmark)
+public class LinearCounterBenchmark {
+
+  private static final int BATCH_SIZE = 256;
+
+  @Param({"1024", "65536", "1048576"})
+  int size;
+
+  @Param({"concurrent", "concurrent_tracking", "striped", "off_heap"})
+  String type;
+
+  LinearCounter<Integer> counter;
+
+  @Setup
+  public void setUp() {
+    switch (type) {
+      case "concurrent":
+        counter = new WriteConcurrentLinearCounter<>(size, MurmurHashers.integerHasher());
+        break;
+      case "concurrent_tracking":
+        counter = new WriteConcurrentLinearCounter<>(size, MurmurHashers.integerHasher(), true);
+        break;
+      case "striped":
+        counter = new StripedLinearCounter<>(size, MurmurHashers.integerHasher());
+        break;
+      case "off_heap":
+        counter = new OffHeapLinearCounter<>(size, MurmurHashers.integerHasher());
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown counter type: " + type);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if (counter instanceof Closeable) {
+      ((Closeable) counter).close();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Data {
+    final int[] values = new int[64 * 1024];
+    int index;
+
+    public Data() {
+      Random random = new Random();
+      for (int i = 0; i < values.length; i++) {
+        values[i] = random.nextInt();
+      }
+    }
+
+    int next() {
+      return values[index++ & (values.length - 1)];
+    }
+
+    int nextOffset() {
+      index = (index + BATCH_SIZE) & (values.length - 1);
+      return index;
+    }
+  }
+
+  @Benchmark
+  public void count(Data data) {
+    counter.countInt(data.next());
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void countHashes(Data data) {
+    counter.countHashes(data.values, data.nextOffset(), BATCH_SIZE);
+  }
+
+  @Benchmark
+  public double getCardinality() {
+    return counter.getCardinality();
+  }
+}
@@ -0,0 +1,44 @@
+package ys.metric.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A Zipf distribution over the ranks {@code 0..n-1}: the probability of rank {@code k} is
+ * proportional to {@code 1 / (k + 1)^s}. The ranks are sampled by the binary search over the
+ * precomputed cumulative distribution.
+ */
+public final class ZipfDistribution {
+
+  private final double[] cdf;
+
+  /**
+   * Constructs a distribution.
+   *
+   * @param n the number of ranks
+   * @param exponent the exponent {@code s} (e.g. 1.0 for the classic Zipf's law)
+   */
+  public ZipfDistribution(int n, double exponent) {
+    if (n <= 0) {
+      throw new IllegalArgumentException("Number of ranks must be positive");
+    }
+
+    cdf = new double[n];
+    double sum = 0;
+    for (int k = 0; k < n; k++) {
+      sum += 1 / Math.pow(k + 1, exponent);
+      cdf[k] = sum;
+    }
+    for (int k = 0; k < n; k++) {
+      cdf[k] /= sum;
+    }
+  }
+
+  /**
+   * Returns the next random rank.
+   */
+  public int next(Random random) {
+    int index = Arrays.binarySearch(cdf, random.nextDouble());
+    return Math.min(index >= 0 ? index : -index - 1, cdf.length - 1);
+  }
+}
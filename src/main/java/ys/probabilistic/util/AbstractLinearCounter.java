@@ -0,0 +1,194 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+import java.util.Arrays;
+
+/**
+ * A skeletal implementation of {@link LinearCounter} that hashes the values and delegates counting
+ * to {@link #countHash(int)}. The primitive values are hashed without boxing, so they are only
+ * accepted if the hasher implements {@link IntHasher} or {@link LongHasher} respectively.
+ *
+ * <p>The counters that benefit from the wide hash codes may opt in for them. In this case all
+ * values are hashed by {@link Hasher64#hash64(Object)} and counted by {@link #countHash64(long)} if
+ * the hasher implements {@link Hasher64}. The primitive values are then only accepted if the hasher
+ * implements {@link IntHasher64} or {@link LongHasher64} respectively.
+ *
+ * @param <T> the type of values being counted
+ *
+ * @author Yauheni Shahun
+ */
+public abstract class AbstractLinearCounter<T> implements LinearCounter<T> {
+
+  private final Hasher<T> hasher;
+  private final Hasher64<T> hasher64;
+  private final IntHasher intHasher;
+  private final LongHasher longHasher;
+  private final IntHasher64 intHasher64;
+  private final LongHasher64 longHasher64;
+
+  /**
+   * Constructs a linear counter that uses the given hash function.
+   *
+   * @param hasher the hash function used to map the values
+   */
+  protected AbstractLinearCounter(Hasher<T> hasher) {
+    this(hasher, false);
+  }
+
+  /**
+   * Constructs a linear counter that uses the given hash function.
+   *
+   * @param hasher the hash function used to map the values
+   * @param use64BitHash whether to use the 64-bit hash codes if the hasher supports them
+   */
+  @SuppressWarnings("unchecked")
+  protected AbstractLinearCounter(Hasher<T> hasher, boolean use64BitHash) {
+    this.hasher = hasher;
+    this.hasher64 = use64BitHash && hasher instanceof Hasher64 ? (Hasher64<T>) hasher : null;
+    // The primitive values must be hashed in the same way as the boxed ones.
+    boolean use32BitHash = hasher64 == null;
+    this.intHasher = use32BitHash && hasher instanceof IntHasher ? (IntHasher) hasher : null;
+    this.longHasher = use32BitHash && hasher instanceof LongHasher ? (LongHasher) hasher : null;
+    this.intHasher64 = !use32BitHash && hasher instanceof IntHasher64 ? (IntHasher64) hasher : null;
+    this.longHasher64 =
+        !use32BitHash && hasher instanceof LongHasher64 ? (LongHasher64) hasher : null;
+  }
+
+  /**
+   * Returns the hash function used by the counter.
+   */
+  public Hasher<T> getHasher() {
+    return hasher;
+  }
+
+  @Override
+  public void count(T value) {
+    if (value == null) {
+      throw new NullPointerException("Value is null");
+    }
+
+    if (hasher64 != null) {
+      countHash64(hasher64.hash64(value));
+    } else {
+      countHash(hasher.hash(value));
+    }
+  }
+
+  @Override
+  public void countInt(int value) {
+    if (intHasher64 != null) {
+      countHash64(intHasher64.hash64(value));
+    } else if (intHasher != null) {
+      countHash(intHasher.hash(value));
+    } else {
+      throw new UnsupportedOperationException("Hasher doesn't support int values");
+    }
+  }
+
+  @Override
+  public void countLong(long value) {
+    if (longHasher64 != null) {
+      countHash64(longHasher64.hash64(value));
+    } else if (longHasher != null) {
+      countHash(longHasher.hash(value));
+    } else {
+      throw new UnsupportedOperationException("Hasher doesn't support long values");
+    }
+  }
+
+  /**
+   * @throws NullPointerException if any of the values is {@code null} (the preceding values may
+   *         have been counted)
+   */
+  @Override
+  public void count(T[] values) {
+    count(Arrays.asList(values));
+  }
+
+  /**
+   * @throws NullPointerException if any of the values is {@code null} (the preceding values may
+   *         have been counted)
+   */
+  @Override
+  public void count(Iterable<? extends T> values) {
+    if (hasher64 != null) {
+      for (T value : values) {
+        if (value == null) {
+          throw new NullPointerException("Value is null");
+        }
+        countHash64(hasher64.hash64(value));
+      }
+      return;
+    }
+
+    int[] hashes = CountUtil.getBatchBuffer().hashes;
+    int length = 0;
+    for (T value : values) {
+      if (value == null) {
+        throw new NullPointerException("Value is null");
+      }
+      hashes[length++] = hasher.hash(value);
+      if (length == hashes.length) {
+        countHashes(hashes, 0, length);
+        length = 0;
+      }
+    }
+    if (length > 0) {
+      countHashes(hashes, 0, length);
+    }
+  }
+
+  /**
+   * Counts the hash codes one by one. The counters that can update the bitmap by blocks should
+   * override it.
+   */
+  @Override
+  public void countHashes(int[] hashes, int offset, int length) {
+    for (int i = offset; i < offset + length; i++) {
+      countHash(hashes[i]);
+    }
+  }
+
+  /**
+   * Returns the bitmap converted from {@link #getBitmap()}. The counters that store the bitmap in
+   * {@code long} words should override it.
+   */
+  @Override
+  public long[] getLongBitmap() {
+    return CountUtil.toLongBitmap(getBitmap());
+  }
+
+  /**
+   * Merges the bitmap converted from {@link #getBitmap()}. The counters that store the bitmap in
+   * {@code long} words should override it.
+   */
+  @Override
+  public void mergeTo(long[] otherBitmap) {
+    CountUtil.mergeTo(getBitmap(), otherBitmap);
+  }
+
+  /**
+   * Counts a value by its precomputed 64-bit hash code. It's supported only by the counters that
+   * have opted in for the 64-bit hash codes.
+   *
+   * @throws UnsupportedOperationException if the counter doesn't support the 64-bit hash codes
+   */
+  public void countHash64(long hash) {
+    throw new UnsupportedOperationException();
+  }
+}
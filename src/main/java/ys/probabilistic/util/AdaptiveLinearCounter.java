@@ -0,0 +1,563 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A cardinality estimator that adapts its representation to the observed cardinality. It starts
+ * as a small set of hash codes (exact counting), is promoted to a linear counting bitmap when the
+ * set fills up and finally to {@link HyperLogLog} when the bitmap's fill ratio reaches the point
+ * where HyperLogLog is as accurate. So the small counters take little memory while the large ones
+ * don't saturate.
+ *
+ * <p>The counter is lock-free for writers including the promotion: a full representation is sealed
+ * first, then any thread copies it into the next representation and installs the latter with CAS.
+ * The writers that have observed the seal repeat counting in the next representation (counting is
+ * idempotent), so no value is lost. Like the other counters, it isn't thread-safe for reading.
+ *
+ * <p>For the precision {@code p} the set takes up to 2<sup>p-1</sup> bytes, the bitmap
+ * 2<sup>p+1</sup> bytes and HyperLogLog 2<sup>p</sup> bytes. The bitmap is indexed by the leading
+ * bits of the hash code, so it's converted to the registers of HyperLogLog losing only the ranks
+ * greater than {@value #EXTRA_BITS}. The "bitmap" of this counter ({@link #getBitmap()},
+ * {@link #mergeTo(int[])}, {@link #getLongBitmap()}, {@link #mergeTo(long[])}) is always the
+ * packed registers of HyperLogLog with the same precision, so it's compatible with
+ * {@link HyperLogLog}. The counters of any representations are merged by
+ * {@link #mergeFrom(AdaptiveLinearCounter)}.
+ *
+ * @param <T> the type of values being counted
+ *
+ * @author Yauheni Shahun
+ */
+public class AdaptiveLinearCounter<T> extends AbstractLinearCounter<T> {
+
+  /**
+   * Number of the hash code bits following the register index that the bitmap keeps.
+   */
+  private static final int EXTRA_BITS = 4;
+
+  private final int precision;
+  private final AtomicReference<Representation<T>> state;
+
+  /**
+   * The representations of the counter's state in the order of promotion.
+   */
+  public enum Level {
+    /**
+     * A set of hash codes (exact counting).
+     */
+    SPARSE,
+    /**
+     * A linear counting bitmap.
+     */
+    LINEAR,
+    /**
+     * HyperLogLog.
+     */
+    HYPER_LOG_LOG
+  }
+
+  /**
+   * Constructs an adaptive counter.
+   *
+   * @param precision the precision of the final HyperLogLog representation (between
+   *        {@value HyperLogLog#MIN_PRECISION} and {@value HyperLogLog#MAX_PRECISION})
+   * @param hasher the hash function used to map the values (preferably 64-bit)
+   */
+  public AdaptiveLinearCounter(int precision, Hasher<T> hasher) {
+    super(hasher, true);
+    if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+      throw new IllegalArgumentException("Precision must be in range ["
+          + HyperLogLog.MIN_PRECISION + ", " + HyperLogLog.MAX_PRECISION + "]");
+    }
+
+    this.precision = precision;
+    this.state = new AtomicReference<Representation<T>>(new SparseSet<>(precision, hasher));
+  }
+
+  /**
+   * Returns the precision of the final HyperLogLog representation.
+   */
+  public int getPrecision() {
+    return precision;
+  }
+
+  /**
+   * Returns the current representation.
+   */
+  public Level getLevel() {
+    return state.get().level;
+  }
+
+  /**
+   * Counts a value by its precomputed 32-bit hash code. The hash code is spread to 64 bits.
+   */
+  @Override
+  public void countHash(int hash) {
+    countHash64(Murmur3.fmix64(hash));
+  }
+
+  /**
+   * Counts a value by its precomputed 64-bit hash code.
+   */
+  @Override
+  public void countHash64(long hash) {
+    for (;;) {
+      Representation<T> representation = state.get();
+      boolean added = representation.add(hash);
+      if (added && !representation.sealed) {
+        if (representation.isFull()) {
+          promote(representation);
+        }
+        return;
+      }
+      // Either the representation is sealed or it has no room, so count in the next one.
+      promote(representation);
+    }
+  }
+
+  @Override
+  public double getCardinality() {
+    return state.get().getCardinality();
+  }
+
+  /**
+   * Returns the fill ratio of the current representation: the fraction of the occupied slots of
+   * the set, the fraction of 1s bits of the bitmap (both are promoted before they saturate) or the
+   * fraction of the non-zero registers of HyperLogLog (see {@link HyperLogLog#getFillRatio()}).
+   */
+  @Override
+  public double getFillRatio() {
+    return state.get().getFillRatio();
+  }
+
+  /**
+   * Resets the counter to the initial (smallest) representation.
+   */
+  @Override
+  public void clear() {
+    state.set(new SparseSet<>(precision, getHasher()));
+  }
+
+  /**
+   * Returns the state of the counter as the packed registers of {@link HyperLogLog} with the same
+   * precision.
+   */
+  @Override
+  public int[] getBitmap() {
+    int[] bitmap = new int[HyperLogLog.getBlockCount(precision)];
+    state.get().mergeTo(bitmap);
+    return bitmap;
+  }
+
+  /**
+   * Merges the state of the counter into the given packed registers of {@link HyperLogLog} with
+   * the same precision.
+   */
+  @Override
+  public void mergeTo(int[] otherBitmap) {
+    if (otherBitmap.length != HyperLogLog.getBlockCount(precision)) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+    state.get().mergeTo(otherBitmap);
+  }
+
+  /**
+   * Returns the state of the counter as the packed registers of {@link HyperLogLog} with the same
+   * precision in {@code long} words.
+   */
+  @Override
+  public long[] getLongBitmap() {
+    return CountUtil.toLongBitmap(getBitmap());
+  }
+
+  /**
+   * Merges the state of the counter into the given packed registers (in {@code long} words) of
+   * {@link HyperLogLog} with the same precision.
+   */
+  @Override
+  public void mergeTo(long[] otherBitmap) {
+    int[] bitmap = getBitmap();
+    if (otherBitmap.length != (bitmap.length + 1) / 2) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+
+    for (int i = 0; i < bitmap.length; i++) {
+      HyperLogLog.max(otherBitmap, i, bitmap[i]);
+    }
+  }
+
+  /**
+   * Merges the given packed registers of {@link HyperLogLog} with the same precision into the
+   * counter. The counter is promoted to the HyperLogLog representation.
+   */
+  @Override
+  public void mergeFrom(int[] otherBitmap) {
+    if (otherBitmap.length != HyperLogLog.getBlockCount(precision)) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+
+    Representation<T> representation;
+    while ((representation = state.get()).level != Level.HYPER_LOG_LOG) {
+      promote(representation);
+    }
+    ((HyperLogLogWrapper<T>) representation).hyperLogLog.mergeFrom(otherBitmap);
+  }
+
+  /**
+   * Merges the other counter of the same precision into this one. The representation of this
+   * counter is promoted to at least the one of the other counter. The other counter must not be
+   * updated concurrently.
+   */
+  public void mergeFrom(AdaptiveLinearCounter<?> other) {
+    if (other.precision != precision) {
+      throw new IllegalArgumentException("Counters have different precisions.");
+    }
+
+    Representation<?> otherRepresentation = other.state.get();
+    for (;;) {
+      Representation<T> representation = state.get();
+      if (representation.level.compareTo(otherRepresentation.level) < 0) {
+        promote(representation);
+        continue;
+      }
+
+      representation.mergeFrom(otherRepresentation);
+      if (!representation.sealed) {
+        if (representation.isFull()) {
+          promote(representation);
+        }
+        return;
+      }
+      promote(representation);
+    }
+  }
+
+  /**
+   * Seals the given representation and replaces it with the next one unless another thread has
+   * already done that.
+   */
+  private void promote(Representation<T> representation) {
+    representation.sealed = true;
+    if (state.get() == representation) {
+      state.compareAndSet(representation, representation.promote());
+    }
+  }
+
+  /**
+   * A representation of the counter's state.
+   */
+  private abstract static class Representation<T> {
+    final Level level;
+    final int precision;
+    final Hasher<T> hasher;
+    /**
+     * Whether the representation is being replaced by the next one. The writers check the flag
+     * after updating the representation, and the promoting thread sets it before copying the
+     * representation, so every value is either copied or counted again.
+     */
+    volatile boolean sealed;
+
+    Representation(Level level, int precision, Hasher<T> hasher) {
+      this.level = level;
+      this.precision = precision;
+      this.hasher = hasher;
+    }
+
+    /**
+     * Adds the hash code. Returns {@code false} if there is no room for it.
+     */
+    abstract boolean add(long hash);
+
+    /**
+     * Returns whether the representation should be promoted.
+     */
+    abstract boolean isFull();
+
+    /**
+     * Returns the next representation that holds the same data.
+     */
+    abstract Representation<T> promote();
+
+    abstract double getCardinality();
+
+    abstract double getFillRatio();
+
+    /**
+     * Merges the data into the packed registers of {@link HyperLogLog}.
+     */
+    abstract void mergeTo(int[] registers);
+
+    /**
+     * Merges the representation of the same or lower level into this one.
+     */
+    abstract void mergeFrom(Representation<?> other);
+  }
+
+  /**
+   * An open-addressing set of the hash codes.
+   */
+  private static final class SparseSet<T> extends Representation<T> {
+    private static final long EMPTY = 0L;
+
+    private final AtomicLongArray table;
+    private final AtomicInteger size = new AtomicInteger();
+    private final int threshold;
+
+    SparseSet(int precision, Hasher<T> hasher) {
+      super(Level.SPARSE, precision, hasher);
+      // Takes a quarter of the bitmap's size, and is promoted when half full.
+      int capacity = Math.max(16, (1 << precision) >>> 4);
+      this.table = new AtomicLongArray(capacity);
+      this.threshold = capacity / 2;
+    }
+
+    @Override
+    boolean add(long hash) {
+      // The empty marker is reserved, so the lowest bit is set (it's almost never used).
+      long value = hash | 1L;
+      int mask = table.length() - 1;
+      int index = (int) (value >>> 1) & mask;
+      for (int i = 0; i < table.length(); i++, index = (index + 1) & mask) {
+        long current = table.get(index);
+        if (current == EMPTY) {
+          if (table.compareAndSet(index, EMPTY, value)) {
+            size.incrementAndGet();
+            return true;
+          }
+          current = table.get(index);
+        }
+        if (current == value) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    boolean isFull() {
+      return size.get() >= threshold;
+    }
+
+    @Override
+    Representation<T> promote() {
+      LinearBitmap<T> bitmap = new LinearBitmap<>(precision, hasher);
+      for (int i = 0; i < table.length(); i++) {
+        long value = table.get(i);
+        if (value != EMPTY) {
+          bitmap.add(value);
+        }
+      }
+      return bitmap;
+    }
+
+    @Override
+    double getCardinality() {
+      return size.get();
+    }
+
+    @Override
+    double getFillRatio() {
+      return size.get() / (double) table.length();
+    }
+
+    @Override
+    void mergeTo(int[] registers) {
+      for (int i = 0; i < table.length(); i++) {
+        long value = table.get(i);
+        if (value != EMPTY) {
+          HyperLogLog.update(registers, HyperLogLog.getIndex(value, precision),
+              HyperLogLog.getRank(value, precision));
+        }
+      }
+    }
+
+    @Override
+    void mergeFrom(Representation<?> other) {
+      SparseSet<?> otherSet = (SparseSet<?>) other;
+      for (int i = 0; i < otherSet.table.length(); i++) {
+        long value = otherSet.table.get(i);
+        if (value != EMPTY && !add(value)) {
+          // Let the caller promote this set and merge again.
+          sealed = true;
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * A linear counting bitmap indexed by the leading bits of the hash code.
+   */
+  private static final class LinearBitmap<T> extends Representation<T> {
+    private final int indexBits;
+    private final int size;
+    private final AtomicIntegerArray bitmap;
+    private final AtomicInteger oneBitCount = new AtomicInteger();
+    private final int threshold;
+
+    LinearBitmap(int precision, Hasher<T> hasher) {
+      super(Level.LINEAR, precision, hasher);
+      this.indexBits = precision + EXTRA_BITS;
+      this.size = 1 << indexBits;
+      this.bitmap = new AtomicIntegerArray(size / BLOCK_SIZE);
+      // Promote when the expected cardinality reaches 2.5 * registers, i.e. where HyperLogLog
+      // switches from linear counting to its own estimate.
+      double cardinality = 2.5d * (1 << precision);
+      this.threshold = (int) (size * (1d - Math.exp(-cardinality / size)));
+    }
+
+    @Override
+    boolean add(long hash) {
+      int index = (int) (hash >>> (Long.SIZE - indexBits));
+      setBits(index / BLOCK_SIZE, 1 << (index % BLOCK_SIZE));
+      return true;
+    }
+
+    private void setBits(int blockIndex, int mask) {
+      int oldBlock;
+      int newBlock;
+      do {
+        oldBlock = bitmap.get(blockIndex);
+        newBlock = oldBlock | mask;
+      } while (oldBlock != newBlock && !bitmap.compareAndSet(blockIndex, oldBlock, newBlock));
+
+      if (oldBlock != newBlock) {
+        oneBitCount.addAndGet(Integer.bitCount(newBlock & ~oldBlock));
+      }
+    }
+
+    @Override
+    boolean isFull() {
+      return oneBitCount.get() >= threshold;
+    }
+
+    @Override
+    Representation<T> promote() {
+      int[] registers = new int[HyperLogLog.getBlockCount(precision)];
+      mergeTo(registers);
+
+      HyperLogLog<T> hyperLogLog = new HyperLogLog<>(precision, hasher);
+      hyperLogLog.mergeFrom(registers);
+      return new HyperLogLogWrapper<>(hyperLogLog);
+    }
+
+    @Override
+    double getCardinality() {
+      int oneBitCount = 0;
+      for (int i = 0; i < bitmap.length(); i++) {
+        oneBitCount += Integer.bitCount(bitmap.get(i));
+      }
+      return CountUtil.calculateCardinality(size, oneBitCount);
+    }
+
+    @Override
+    double getFillRatio() {
+      return oneBitCount.get() / (double) size;
+    }
+
+    @Override
+    void mergeTo(int[] registers) {
+      int lowMask = (1 << EXTRA_BITS) - 1;
+      for (int i = 0; i < bitmap.length(); i++) {
+        int block = bitmap.get(i);
+        while (block != 0) {
+          int index = i * BLOCK_SIZE + Integer.numberOfTrailingZeros(block);
+          block &= block - 1;
+
+          // The rank is known exactly only if one of the extra bits is set.
+          int extraBits = index & lowMask;
+          int rank = extraBits == 0
+              ? EXTRA_BITS + 1
+              : Integer.numberOfLeadingZeros(extraBits) - (Integer.SIZE - EXTRA_BITS) + 1;
+          HyperLogLog.update(registers, index >>> EXTRA_BITS, rank);
+        }
+      }
+    }
+
+    @Override
+    void mergeFrom(Representation<?> other) {
+      if (other.level == Level.SPARSE) {
+        SparseSet<?> otherSet = (SparseSet<?>) other;
+        for (int i = 0; i < otherSet.table.length(); i++) {
+          long value = otherSet.table.get(i);
+          if (value != SparseSet.EMPTY) {
+            add(value);
+          }
+        }
+      } else {
+        LinearBitmap<?> otherBitmap = (LinearBitmap<?>) other;
+        for (int i = 0; i < bitmap.length(); i++) {
+          setBits(i, otherBitmap.bitmap.get(i));
+        }
+      }
+    }
+  }
+
+  /**
+   * The final representation.
+   */
+  private static final class HyperLogLogWrapper<T> extends Representation<T> {
+    private final HyperLogLog<T> hyperLogLog;
+
+    HyperLogLogWrapper(HyperLogLog<T> hyperLogLog) {
+      super(Level.HYPER_LOG_LOG, hyperLogLog.getPrecision(), hyperLogLog.getHasher());
+      this.hyperLogLog = hyperLogLog;
+    }
+
+    @Override
+    boolean add(long hash) {
+      hyperLogLog.countHash64(hash);
+      return true;
+    }
+
+    @Override
+    boolean isFull() {
+      return false;
+    }
+
+    @Override
+    Representation<T> promote() {
+      throw new IllegalStateException("HyperLogLog can't be promoted");
+    }
+
+    @Override
+    double getCardinality() {
+      return hyperLogLog.getCardinality();
+    }
+
+    @Override
+    double getFillRatio() {
+      return hyperLogLog.getFillRatio();
+    }
+
+    @Override
+    void mergeTo(int[] registers) {
+      hyperLogLog.mergeTo(registers);
+    }
+
+    @Override
+    void mergeFrom(Representation<?> other) {
+      int[] registers = new int[HyperLogLog.getBlockCount(precision)];
+      other.mergeTo(registers);
+      hyperLogLog.mergeFrom(registers);
+    }
+  }
+}
@@ -50,11 +50,67 @@ public class AggregateLinearCounter<T> implements LinearCounter<T> {
     throw new UnsupportedOperationException();
   }
 
+  /**
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  public void countInt(int value) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  public void countLong(long value) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  public void countHash(int hash) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  public void count(T[] values) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  public void count(Iterable<? extends T> values) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  public void countHashes(int[] hashes, int offset, int length) {
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   public double getCardinality() {
     return CountUtil.calculateCardinality(size, CountUtil.getBitCount(bitmap));
   }
 
+  /**
+   * Returns the fraction of 1s bits in the bitmap.
+   */
+  @Override
+  public double getFillRatio() {
+    return CountUtil.getBitCount(bitmap) / (double) size;
+  }
+
   @Override
   public void clear() {
     Arrays.fill(bitmap, 0);
@@ -70,12 +126,32 @@ public class AggregateLinearCounter<T> implements LinearCounter<T> {
 
   @Override
   public void mergeTo(int[] otherBitmap) {
-    if (otherBitmap.length != bitmap.length) {
-      throw new IllegalArgumentException("Bitmaps have different lengths.");
-    }
+    BitmapUtil.or(otherBitmap, bitmap);
+  }
+
+  @Override
+  public long[] getLongBitmap() {
+    return CountUtil.toLongBitmap(bitmap);
+  }
 
-    for (int i = 0; i < otherBitmap.length; i++) {
-      otherBitmap[i] |= bitmap[i];
-    }
+  @Override
+  public void mergeTo(long[] otherBitmap) {
+    CountUtil.mergeTo(bitmap, otherBitmap);
+  }
+
+  @Override
+  public void mergeFrom(int[] otherBitmap) {
+    BitmapUtil.or(bitmap, otherBitmap);
+  }
+
+  /**
+   * Merges the given bitmap into the internal bitmap and returns the cardinality of the union. It
+   * takes a single pass over the bitmap, so it's cheaper than merging and getting the cardinality
+   * separately.
+   *
+   * @return estimated cardinality as {@code double}
+   */
+  public double mergeFromAndGetCardinality(int[] otherBitmap) {
+    return CountUtil.calculateCardinality(size, BitmapUtil.orAndBitCount(bitmap, otherBitmap));
   }
 }
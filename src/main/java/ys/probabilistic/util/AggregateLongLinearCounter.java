@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+import java.util.Arrays;
+
+/**
+ * A {@link LinearCounter} that aggregates results from other linear counters in the bitmap of
+ * {@code long} words. It doesn't count values itself. The implementation is not thread safe.
+ *
+ * @param <T> the type of values being counted
+ *
+ * @author Yauheni Shahun
+ */
+public class AggregateLongLinearCounter<T> implements LinearCounter<T> {
+
+  private final int size;
+  private final int blockCount;
+  private final long[] bitmap;
+
+  /**
+   * Constructs an aggregate counter.
+   *
+   * @param size the number of bits in the bitmap
+   */
+  public AggregateLongLinearCounter(int size) {
+    this.size = size;
+    this.blockCount = CountUtil.getBlockCount(size);
+    this.bitmap = new long[CountUtil.getWordCount(size)];
+  }
+
+  /**
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  public void count(T value) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  public void countInt(int value) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  public void countLong(long value) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  public void countHash(int hash) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  public void count(T[] values) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  public void count(Iterable<? extends T> values) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @throws UnsupportedOperationException
+   */
+  @Override
+  public void countHashes(int[] hashes, int offset, int length) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public double getCardinality() {
+    return CountUtil.calculateCardinality(size, BitmapUtil.bitCount(bitmap));
+  }
+
+  /**
+   * Returns the fraction of 1s bits in the bitmap.
+   */
+  @Override
+  public double getFillRatio() {
+    return BitmapUtil.bitCount(bitmap) / (double) size;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(bitmap, 0L);
+  }
+
+  /**
+   * Returns a copy of the bitmap converted to {@code int} blocks.
+   */
+  @Override
+  public int[] getBitmap() {
+    return CountUtil.toIntBitmap(bitmap, blockCount);
+  }
+
+  @Override
+  public void mergeTo(int[] otherBitmap) {
+    if (otherBitmap.length != blockCount) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+    CountUtil.mergeTo(bitmap, otherBitmap);
+  }
+
+  @Override
+  public void mergeFrom(int[] otherBitmap) {
+    if (otherBitmap.length != blockCount) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+    CountUtil.mergeTo(otherBitmap, bitmap);
+  }
+
+  /**
+   * Returns the internal bitmap.
+   */
+  @Override
+  public long[] getLongBitmap() {
+    return bitmap;
+  }
+
+  @Override
+  public void mergeTo(long[] otherBitmap) {
+    BitmapUtil.or(otherBitmap, bitmap);
+  }
+
+  /**
+   * Merges the given bitmap of {@code long} words into the internal bitmap.
+   */
+  public void mergeFrom(long[] otherBitmap) {
+    BitmapUtil.or(bitmap, otherBitmap);
+  }
+
+  /**
+   * Merges the given bitmap of {@code long} words into the internal bitmap and returns the
+   * cardinality of the union in a single pass over the bitmap.
+   *
+   * @return estimated cardinality as {@code double}
+   */
+  public double mergeFromAndGetCardinality(long[] otherBitmap) {
+    return CountUtil.calculateCardinality(size, BitmapUtil.orAndBitCount(bitmap, otherBitmap));
+  }
+}
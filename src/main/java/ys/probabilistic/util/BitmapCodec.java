@@ -0,0 +1,527 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A compact binary format of the linear counter bitmaps. It's intended for shipping bitmaps between
+ * processes to aggregate them (see {@link AggregateLinearCounter}).
+ *
+ * <p>The encoded bitmap consists of the header (magic number, version, size of the bitmap in bits,
+ * hasher id and seed) followed by the containers. Each container describes a chunk of
+ * {@value #CHUNK_BITS} bits in one of the forms (similarly to Roaring bitmaps):
+ * <ul>
+ * <li>empty or full chunk - no payload;
+ * <li>sorted positions of 1's - for sparse chunks;
+ * <li>sorted positions of 0's - for dense chunks;
+ * <li>raw {@code int} blocks - otherwise.
+ * </ul>
+ * The form that takes less space is chosen. All numbers are big-endian.
+ *
+ * <p>Encoding and decoding are streaming, i.e. they don't build an intermediate copy of the
+ * bitmap. Decoding merges (ORs) the bitmap into the given one, so many encoded bitmaps can be
+ * aggregated into the same bitmap directly.
+ *
+ * @author Yauheni Shahun
+ */
+public final class BitmapCodec {
+
+  /**
+   * Number of bits in a chunk described by a single container.
+   */
+  public static final int CHUNK_BITS = 1 << 16;
+
+  private static final int MAGIC = 0x4c434231; // "LCB1"
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 4 + 1 + 4 + 4 + 4;
+
+  private static final int CHUNK_BLOCKS = CHUNK_BITS / LinearCounter.BLOCK_SIZE;
+
+  private static final byte EMPTY = 0;
+  private static final byte FULL = 1;
+  private static final byte ONES = 2;
+  private static final byte ZEROS = 3;
+  private static final byte RAW = 4;
+
+  private BitmapCodec() {}
+
+  /**
+   * The header of the encoded bitmap.
+   */
+  public static final class Header {
+    private final int size;
+    private final int hasherId;
+    private final int seed;
+
+    /**
+     * Constructs a header.
+     *
+     * @param size the number of bits in the bitmap
+     * @param hasherId an application-defined id of the hash function that has filled the bitmap
+     * @param seed the seed of the hash function
+     */
+    public Header(int size, int hasherId, int seed) {
+      if (size <= 0) {
+        throw new IllegalArgumentException("Size must be positive");
+      }
+      this.size = size;
+      this.hasherId = hasherId;
+      this.seed = seed;
+    }
+
+    /**
+     * Returns the number of bits in the bitmap.
+     */
+    public int getSize() {
+      return size;
+    }
+
+    /**
+     * Returns the id of the hash function.
+     */
+    public int getHasherId() {
+      return hasherId;
+    }
+
+    /**
+     * Returns the seed of the hash function.
+     */
+    public int getSeed() {
+      return seed;
+    }
+  }
+
+  /**
+   * Returns the number of bytes that the encoded bitmap takes.
+   */
+  public static int getEncodedLength(int[] bitmap) {
+    int length = HEADER_BYTES;
+    for (int from = 0; from < bitmap.length; from += CHUNK_BLOCKS) {
+      int to = Math.min(from + CHUNK_BLOCKS, bitmap.length);
+      int oneBitCount = getBitCount(bitmap, from, to);
+      byte type = getContainerType(to - from, oneBitCount);
+      length += 1 + getPayloadLength(type, to - from, oneBitCount);
+    }
+    return length;
+  }
+
+  /**
+   * Encodes the bitmap into the output stream. The stream isn't closed.
+   *
+   * @throws IllegalArgumentException if the bitmap's length doesn't match the header
+   */
+  public static void encode(Header header, int[] bitmap, OutputStream out) throws IOException {
+    DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+    encode(header, bitmap, new StreamSink(dataOut));
+    dataOut.flush();
+  }
+
+  /**
+   * Encodes the bitmap into the byte buffer starting at its current position (see
+   * {@link #getEncodedLength(int[])} to allocate the buffer).
+   *
+   * @throws IllegalArgumentException if the bitmap's length doesn't match the header
+   * @throws java.nio.BufferOverflowException if the buffer doesn't have enough space
+   */
+  public static void encode(Header header, int[] bitmap, ByteBuffer out) {
+    ByteOrder order = out.order();
+    out.order(ByteOrder.BIG_ENDIAN);
+    try {
+      encode(header, bitmap, new BufferSink(out));
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    } finally {
+      out.order(order);
+    }
+  }
+
+  /**
+   * Decodes the bitmap from the input stream and merges it into the given bitmap. Exactly the
+   * encoded bytes are consumed, so the stream should be buffered by the caller.
+   *
+   * @return the header of the decoded bitmap
+   * @throws IOException if the stream can't be read or contains malformed data
+   * @throws IllegalArgumentException if the bitmap's length doesn't match the decoded one
+   */
+  public static Header decodeTo(InputStream in, int[] bitmap) throws IOException {
+    return decodeTo(new StreamSource(new DataInputStream(in)), bitmap);
+  }
+
+  /**
+   * Decodes the bitmap from the byte buffer starting at its current position and merges it into
+   * the given bitmap.
+   *
+   * @return the header of the decoded bitmap
+   * @throws IOException if the buffer contains malformed data
+   * @throws IllegalArgumentException if the bitmap's length doesn't match the decoded one
+   */
+  public static Header decodeTo(ByteBuffer in, int[] bitmap) throws IOException {
+    ByteOrder order = in.order();
+    in.order(ByteOrder.BIG_ENDIAN);
+    try {
+      return decodeTo(new BufferSource(in), bitmap);
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Unexpected end of the encoded bitmap", e);
+    } finally {
+      in.order(order);
+    }
+  }
+
+  /**
+   * Decodes the bitmap from the input stream into a new aggregate counter.
+   *
+   * @throws IOException if the stream can't be read or contains malformed data
+   */
+  public static <T> AggregateLinearCounter<T> decode(InputStream in) throws IOException {
+    DataInputStream dataIn = new DataInputStream(in);
+    StreamSource source = new StreamSource(dataIn);
+    Header header = readHeader(source);
+    AggregateLinearCounter<T> counter = new AggregateLinearCounter<>(header.getSize());
+    readContainers(source, counter.getBitmap());
+    return counter;
+  }
+
+  /**
+   * Decodes the bitmap from the byte buffer into a new aggregate counter.
+   *
+   * @throws IOException if the buffer contains malformed data
+   */
+  public static <T> AggregateLinearCounter<T> decode(ByteBuffer in) throws IOException {
+    ByteOrder order = in.order();
+    in.order(ByteOrder.BIG_ENDIAN);
+    try {
+      BufferSource source = new BufferSource(in);
+      Header header = readHeader(source);
+      AggregateLinearCounter<T> counter = new AggregateLinearCounter<>(header.getSize());
+      readContainers(source, counter.getBitmap());
+      return counter;
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Unexpected end of the encoded bitmap", e);
+    } finally {
+      in.order(order);
+    }
+  }
+
+  private static void encode(Header header, int[] bitmap, Sink sink) throws IOException {
+    if (bitmap.length != CountUtil.getBlockCount(header.getSize())) {
+      throw new IllegalArgumentException("Bitmap length doesn't match the size.");
+    }
+
+    sink.writeInt(MAGIC);
+    sink.writeByte(VERSION);
+    sink.writeInt(header.getSize());
+    sink.writeInt(header.getHasherId());
+    sink.writeInt(header.getSeed());
+
+    for (int from = 0; from < bitmap.length; from += CHUNK_BLOCKS) {
+      int to = Math.min(from + CHUNK_BLOCKS, bitmap.length);
+      int oneBitCount = getBitCount(bitmap, from, to);
+      byte type = getContainerType(to - from, oneBitCount);
+      sink.writeByte(type);
+
+      switch (type) {
+        case ONES:
+          sink.writeShort(oneBitCount - 1);
+          writePositions(bitmap, from, to, 0, sink);
+          break;
+        case ZEROS:
+          sink.writeShort((to - from) * LinearCounter.BLOCK_SIZE - oneBitCount - 1);
+          writePositions(bitmap, from, to, -1, sink);
+          break;
+        case RAW:
+          for (int i = from; i < to; i++) {
+            sink.writeInt(bitmap[i]);
+          }
+          break;
+        default:
+          // No payload.
+      }
+    }
+  }
+
+  /**
+   * Writes the positions of the bits that differ from the bits of the given background block.
+   */
+  private static void writePositions(int[] bitmap, int from, int to, int background, Sink sink)
+      throws IOException {
+    for (int i = from; i < to; i++) {
+      int block = bitmap[i] ^ background;
+      while (block != 0) {
+        int bit = Integer.numberOfTrailingZeros(block);
+        sink.writeShort((i - from) * LinearCounter.BLOCK_SIZE + bit);
+        block &= block - 1;
+      }
+    }
+  }
+
+  private static Header decodeTo(Source source, int[] bitmap) throws IOException {
+    Header header = readHeader(source);
+    if (bitmap.length != CountUtil.getBlockCount(header.getSize())) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+
+    readContainers(source, bitmap);
+    return header;
+  }
+
+  private static Header readHeader(Source source) throws IOException {
+    if (source.readInt() != MAGIC) {
+      throw new IOException("Not an encoded bitmap");
+    }
+    int version = source.readByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported version of the encoded bitmap: " + version);
+    }
+
+    int size = source.readInt();
+    if (size <= 0) {
+      throw new IOException("Invalid bitmap size: " + size);
+    }
+    return new Header(size, source.readInt(), source.readInt());
+  }
+
+  private static void readContainers(Source source, int[] bitmap) throws IOException {
+    for (int from = 0; from < bitmap.length; from += CHUNK_BLOCKS) {
+      int to = Math.min(from + CHUNK_BLOCKS, bitmap.length);
+      byte type = source.readByte();
+
+      switch (type) {
+        case EMPTY:
+          break;
+        case FULL:
+          for (int i = from; i < to; i++) {
+            bitmap[i] = -1;
+          }
+          break;
+        case ONES:
+          for (int count = source.readShort() + 1; count > 0; count--) {
+            int position = readPosition(source, from, to);
+            bitmap[from + position / LinearCounter.BLOCK_SIZE] |= 1 << position;
+          }
+          break;
+        case ZEROS:
+          readZeros(source, bitmap, from, to);
+          break;
+        case RAW:
+          for (int i = from; i < to; i++) {
+            bitmap[i] |= source.readInt();
+          }
+          break;
+        default:
+          throw new IOException("Unknown container type: " + type);
+      }
+    }
+  }
+
+  /**
+   * Reads the sorted positions of 0's and merges the chunk block by block.
+   */
+  private static void readZeros(Source source, int[] bitmap, int from, int to) throws IOException {
+    int remaining = source.readShort();
+    int position = readPosition(source, from, to);
+    for (int i = from; i < to; i++) {
+      int zeros = 0;
+      while (position >= 0 && position / LinearCounter.BLOCK_SIZE == i - from) {
+        zeros |= 1 << position;
+        if (remaining > 0) {
+          int nextPosition = readPosition(source, from, to);
+          if (nextPosition <= position) {
+            throw new IOException("Bit positions aren't sorted");
+          }
+          position = nextPosition;
+          remaining--;
+        } else {
+          position = -1;
+        }
+      }
+      bitmap[i] |= ~zeros;
+    }
+  }
+
+  private static int readPosition(Source source, int from, int to) throws IOException {
+    int position = source.readShort();
+    if (position >= (to - from) * LinearCounter.BLOCK_SIZE) {
+      throw new IOException("Bit position is out of the chunk: " + position);
+    }
+    return position;
+  }
+
+  private static int getBitCount(int[] bitmap, int from, int to) {
+    int bitCount = 0;
+    for (int i = from; i < to; i++) {
+      bitCount += Integer.bitCount(bitmap[i]);
+    }
+    return bitCount;
+  }
+
+  private static byte getContainerType(int blockCount, int oneBitCount) {
+    int bitCount = blockCount * LinearCounter.BLOCK_SIZE;
+    if (oneBitCount == 0) {
+      return EMPTY;
+    }
+    if (oneBitCount == bitCount) {
+      return FULL;
+    }
+
+    int rawLength = getPayloadLength(RAW, blockCount, oneBitCount);
+    int onesLength = getPayloadLength(ONES, blockCount, oneBitCount);
+    int zerosLength = getPayloadLength(ZEROS, blockCount, oneBitCount);
+    if (onesLength < rawLength && onesLength <= zerosLength) {
+      return ONES;
+    }
+    if (zerosLength < rawLength) {
+      return ZEROS;
+    }
+    return RAW;
+  }
+
+  private static int getPayloadLength(byte type, int blockCount, int oneBitCount) {
+    switch (type) {
+      case ONES:
+        return 2 + 2 * oneBitCount;
+      case ZEROS:
+        return 2 + 2 * (blockCount * LinearCounter.BLOCK_SIZE - oneBitCount);
+      case RAW:
+        return 4 * blockCount;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * A destination of the encoded data.
+   */
+  private interface Sink {
+    void writeByte(int value) throws IOException;
+
+    void writeShort(int value) throws IOException;
+
+    void writeInt(int value) throws IOException;
+  }
+
+  private static final class StreamSink implements Sink {
+    private final DataOutputStream out;
+
+    StreamSink(DataOutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void writeByte(int value) throws IOException {
+      out.writeByte(value);
+    }
+
+    @Override
+    public void writeShort(int value) throws IOException {
+      out.writeShort(value);
+    }
+
+    @Override
+    public void writeInt(int value) throws IOException {
+      out.writeInt(value);
+    }
+  }
+
+  private static final class BufferSink implements Sink {
+    private final ByteBuffer out;
+
+    BufferSink(ByteBuffer out) {
+      this.out = out;
+    }
+
+    @Override
+    public void writeByte(int value) {
+      out.put((byte) value);
+    }
+
+    @Override
+    public void writeShort(int value) {
+      out.putShort((short) value);
+    }
+
+    @Override
+    public void writeInt(int value) {
+      out.putInt(value);
+    }
+  }
+
+  /**
+   * A source of the encoded data. Shorts are read as unsigned.
+   */
+  private interface Source {
+    byte readByte() throws IOException;
+
+    int readShort() throws IOException;
+
+    int readInt() throws IOException;
+  }
+
+  private static final class StreamSource implements Source {
+    private final DataInputStream in;
+
+    StreamSource(DataInputStream in) {
+      this.in = in;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      return in.readByte();
+    }
+
+    @Override
+    public int readShort() throws IOException {
+      return in.readUnsignedShort();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+      return in.readInt();
+    }
+  }
+
+  private static final class BufferSource implements Source {
+    private final ByteBuffer in;
+
+    BufferSource(ByteBuffer in) {
+      this.in = in;
+    }
+
+    @Override
+    public byte readByte() {
+      return in.get();
+    }
+
+    @Override
+    public int readShort() {
+      return in.getShort() & 0xffff;
+    }
+
+    @Override
+    public int readInt() {
+      return in.getInt();
+    }
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+/**
+ * Bulk operations on the bitmaps used for aggregating the linear counters. The loops are kept
+ * simple (no branches, no aliasing of arrays of different lengths), so the JIT compiler can unroll
+ * and vectorize the bitwise ones. Counting the bits packs two {@code int} blocks into a
+ * {@code long}, so it takes half the number of {@code POPCNT} instructions, and uses independent
+ * accumulators to avoid the dependency chain.
+ *
+ * @author Yauheni Shahun
+ */
+public final class BitmapUtil {
+
+  private BitmapUtil() {}
+
+  /**
+   * Merges (bitwise OR) the source bitmap into the target one.
+   */
+  public static void or(int[] target, int[] source) {
+    checkLengths(target.length, source.length);
+    for (int i = 0; i < target.length; i++) {
+      target[i] |= source[i];
+    }
+  }
+
+  /**
+   * Intersects (bitwise AND) the target bitmap with the source one.
+   */
+  public static void and(int[] target, int[] source) {
+    checkLengths(target.length, source.length);
+    for (int i = 0; i < target.length; i++) {
+      target[i] &= source[i];
+    }
+  }
+
+  /**
+   * Returns the count of 1s bits in the bitmap.
+   */
+  public static int bitCount(int[] bitmap) {
+    int count1 = 0;
+    int count2 = 0;
+    int i = 0;
+    for (int limit = bitmap.length - 3; i < limit; i += 4) {
+      count1 += Long.bitCount(pack(bitmap[i], bitmap[i + 1]));
+      count2 += Long.bitCount(pack(bitmap[i + 2], bitmap[i + 3]));
+    }
+    for (; i < bitmap.length; i++) {
+      count1 += Integer.bitCount(bitmap[i]);
+    }
+    return count1 + count2;
+  }
+
+  /**
+   * Returns the fraction of 1s bits in the bitmap.
+   */
+  public static double fillRatio(int[] bitmap) {
+    if (bitmap.length == 0) {
+      return 0;
+    }
+    return bitCount(bitmap) / ((double) bitmap.length * Integer.SIZE);
+  }
+
+  /**
+   * Merges (bitwise OR) the source bitmap into the target one and returns the count of 1s bits in
+   * the result in the same pass.
+   */
+  public static int orAndBitCount(int[] target, int[] source) {
+    checkLengths(target.length, source.length);
+    int count1 = 0;
+    int count2 = 0;
+    int i = 0;
+    for (int limit = target.length - 1; i < limit; i += 2) {
+      int block1 = target[i] | source[i];
+      int block2 = target[i + 1] | source[i + 1];
+      target[i] = block1;
+      target[i + 1] = block2;
+      count1 += Integer.bitCount(block1);
+      count2 += Integer.bitCount(block2);
+    }
+    if (i < target.length) {
+      target[i] |= source[i];
+      count1 += Integer.bitCount(target[i]);
+    }
+    return count1 + count2;
+  }
+
+  /**
+   * Returns the count of 1s bits in the union of the bitmaps without modifying them.
+   */
+  public static int unionBitCount(int[] bitmap1, int[] bitmap2) {
+    checkLengths(bitmap1.length, bitmap2.length);
+    int count1 = 0;
+    int count2 = 0;
+    int i = 0;
+    for (int limit = bitmap1.length - 3; i < limit; i += 4) {
+      long words1 = pack(bitmap1[i] | bitmap2[i], bitmap1[i + 1] | bitmap2[i + 1]);
+      long words2 = pack(bitmap1[i + 2] | bitmap2[i + 2], bitmap1[i + 3] | bitmap2[i + 3]);
+      count1 += Long.bitCount(words1);
+      count2 += Long.bitCount(words2);
+    }
+    for (; i < bitmap1.length; i++) {
+      count1 += Integer.bitCount(bitmap1[i] | bitmap2[i]);
+    }
+    return count1 + count2;
+  }
+
+  /**
+   * Returns the count of 1s bits in the union of the given range of the bitmaps without modifying
+   * them. The bitmaps are read block by block, so the range should fit into the CPU cache.
+   *
+   * @param bitmaps the bitmaps of the same length
+   * @param from the index of the first block of the range
+   * @param to the index of the block following the range
+   */
+  public static int unionBitCount(int[][] bitmaps, int from, int to) {
+    int count = 0;
+    int i = from;
+    for (int limit = to - 1; i < limit; i += 2) {
+      int block1 = 0;
+      int block2 = 0;
+      for (int[] bitmap : bitmaps) {
+        block1 |= bitmap[i];
+        block2 |= bitmap[i + 1];
+      }
+      count += Long.bitCount(pack(block1, block2));
+    }
+    if (i < to) {
+      int block = 0;
+      for (int[] bitmap : bitmaps) {
+        block |= bitmap[i];
+      }
+      count += Integer.bitCount(block);
+    }
+    return count;
+  }
+
+  /**
+   * Merges (bitwise OR) the source bitmap into the target one.
+   */
+  public static void or(long[] target, long[] source) {
+    checkLengths(target.length, source.length);
+    for (int i = 0; i < target.length; i++) {
+      target[i] |= source[i];
+    }
+  }
+
+  /**
+   * Intersects (bitwise AND) the target bitmap with the source one.
+   */
+  public static void and(long[] target, long[] source) {
+    checkLengths(target.length, source.length);
+    for (int i = 0; i < target.length; i++) {
+      target[i] &= source[i];
+    }
+  }
+
+  /**
+   * Returns the count of 1s bits in the bitmap.
+   */
+  public static int bitCount(long[] bitmap) {
+    int count1 = 0;
+    int count2 = 0;
+    int i = 0;
+    for (int limit = bitmap.length - 1; i < limit; i += 2) {
+      count1 += Long.bitCount(bitmap[i]);
+      count2 += Long.bitCount(bitmap[i + 1]);
+    }
+    if (i < bitmap.length) {
+      count1 += Long.bitCount(bitmap[i]);
+    }
+    return count1 + count2;
+  }
+
+  /**
+   * Merges (bitwise OR) the source bitmap into the target one and returns the count of 1s bits in
+   * the result in the same pass.
+   */
+  public static int orAndBitCount(long[] target, long[] source) {
+    checkLengths(target.length, source.length);
+    int count1 = 0;
+    int count2 = 0;
+    int i = 0;
+    for (int limit = target.length - 1; i < limit; i += 2) {
+      long word1 = target[i] | source[i];
+      long word2 = target[i + 1] | source[i + 1];
+      target[i] = word1;
+      target[i + 1] = word2;
+      count1 += Long.bitCount(word1);
+      count2 += Long.bitCount(word2);
+    }
+    if (i < target.length) {
+      target[i] |= source[i];
+      count1 += Long.bitCount(target[i]);
+    }
+    return count1 + count2;
+  }
+
+  /**
+   * Returns the count of 1s bits in the union of the bitmaps without modifying them.
+   */
+  public static int unionBitCount(long[] bitmap1, long[] bitmap2) {
+    checkLengths(bitmap1.length, bitmap2.length);
+    int count1 = 0;
+    int count2 = 0;
+    int i = 0;
+    for (int limit = bitmap1.length - 1; i < limit; i += 2) {
+      count1 += Long.bitCount(bitmap1[i] | bitmap2[i]);
+      count2 += Long.bitCount(bitmap1[i + 1] | bitmap2[i + 1]);
+    }
+    if (i < bitmap1.length) {
+      count1 += Long.bitCount(bitmap1[i] | bitmap2[i]);
+    }
+    return count1 + count2;
+  }
+
+  private static long pack(int block1, int block2) {
+    return ((long) block1 << Integer.SIZE) | (block2 & 0xffffffffL);
+  }
+
+  private static void checkLengths(int length1, int length2) {
+    if (length1 != length2) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A Bloom filter that is lock-free for writers. It shares the bitmap layout of the linear counters:
+ * the bits are set by CAS on the blocks of {@link AtomicIntegerArray}, and the bitmaps of the
+ * filters of the same size can be merged the same way. The {@code k} probes of a value are derived
+ * from a single 64-bit hash code by double hashing ({@code h1 + i * h2}).
+ *
+ * <p>Unlike the linear counters, the filter is safe for concurrent reading (checking values).
+ * {@link #putIfAbsent(Object)} combines the check and the update, so a value is reported as new
+ * only by the thread that has set at least one of its bits. If two threads put the same new value
+ * concurrently, both may report it as new.
+ *
+ * @param <T> the type of values being put
+ *
+ * @author Yauheni Shahun
+ */
+public class BloomFilter<T> {
+
+  private final int size;
+  private final int hashCount;
+  private final Hasher64<T> hasher;
+  private final AtomicIntegerArray bitmap;
+
+  /**
+   * Constructs a Bloom filter.
+   *
+   * @param size the number of bits in the bitmap
+   * @param hashCount the number of bits each value is mapped to
+   * @param hasher the hash function used to map the values
+   */
+  public BloomFilter(int size, int hashCount, Hasher64<T> hasher) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Size must be positive");
+    }
+    if (hashCount <= 0) {
+      throw new IllegalArgumentException("Hash count must be positive");
+    }
+
+    this.size = size;
+    this.hashCount = hashCount;
+    this.hasher = hasher;
+    this.bitmap = new AtomicIntegerArray(CountUtil.getBlockCount(size));
+  }
+
+  /**
+   * Creates a Bloom filter of the optimal size and number of hash functions for the expected
+   * number of values and the false positive probability.
+   *
+   * @param expectedCount the expected number of distinct values
+   * @param falsePositiveProbability the desired false positive probability (between 0 and 1)
+   * @param hasher the hash function used to map the values
+   */
+  public static <T> BloomFilter<T> create(int expectedCount, double falsePositiveProbability,
+      Hasher64<T> hasher) {
+    if (expectedCount <= 0) {
+      throw new IllegalArgumentException("Expected count must be positive");
+    }
+    if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+      throw new IllegalArgumentException("False positive probability must be in range (0, 1)");
+    }
+
+    double ln2 = Math.log(2);
+    long size = (long) Math.ceil(-expectedCount * Math.log(falsePositiveProbability)
+        / (ln2 * ln2));
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Bloom filter is too large");
+    }
+    int hashCount = Math.max(1, (int) Math.round((double) size / expectedCount * ln2));
+    return new BloomFilter<>((int) size, hashCount, hasher);
+  }
+
+  /**
+   * Puts the value into the filter.
+   *
+   * @return {@code true} if the value definitely hasn't been put before (at least one of its bits
+   *         has been set by this call), {@code false} if it might have been put
+   */
+  public boolean putIfAbsent(T value) {
+    long hash = hasher.hash64(value);
+    int hash1 = (int) hash;
+    int hash2 = (int) (hash >>> 32);
+
+    boolean changed = false;
+    for (int i = 0; i < hashCount; i++) {
+      int index = CountUtil.reduce(hash1 + i * hash2, size);
+      changed |= setBit(index / LinearCounter.BLOCK_SIZE, 1 << (index % LinearCounter.BLOCK_SIZE));
+    }
+    return changed;
+  }
+
+  /**
+   * Checks whether the value might have been put into the filter.
+   *
+   * @return {@code false} if the value definitely hasn't been put, {@code true} if it might have
+   *         been put
+   */
+  public boolean mightContain(T value) {
+    long hash = hasher.hash64(value);
+    int hash1 = (int) hash;
+    int hash2 = (int) (hash >>> 32);
+
+    for (int i = 0; i < hashCount; i++) {
+      int index = CountUtil.reduce(hash1 + i * hash2, size);
+      int mask = 1 << (index % LinearCounter.BLOCK_SIZE);
+      if ((bitmap.get(index / LinearCounter.BLOCK_SIZE) & mask) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean setBit(int blockIndex, int mask) {
+    int oldBlock;
+    do {
+      oldBlock = bitmap.get(blockIndex);
+      if ((oldBlock & mask) != 0) {
+        return false;
+      }
+    } while (!bitmap.compareAndSet(blockIndex, oldBlock, oldBlock | mask));
+    return true;
+  }
+
+  /**
+   * Returns the number of bits in the bitmap.
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Returns the number of bits each value is mapped to.
+   */
+  public int getHashCount() {
+    return hashCount;
+  }
+
+  /**
+   * Returns the number of 1s bits in the bitmap.
+   */
+  public int getOneBitCount() {
+    int count = 0;
+    for (int i = 0; i < bitmap.length(); i++) {
+      count += Integer.bitCount(bitmap.get(i));
+    }
+    return count;
+  }
+
+  /**
+   * Returns the fraction of 1s bits in the bitmap.
+   */
+  public double getFillRatio() {
+    return getOneBitCount() / (double) size;
+  }
+
+  /**
+   * Returns the probability that {@link #mightContain(Object)} returns {@code true} for a value
+   * that hasn't been put, given the current fill ratio.
+   */
+  public double getFalsePositiveProbability() {
+    return Math.pow(getFillRatio(), hashCount);
+  }
+
+  /**
+   * Estimates the number of the distinct values put into the filter from its fill ratio.
+   *
+   * @return expected cardinality as {@code double}
+   */
+  public double getCardinality() {
+    return CountUtil.calculateCardinality(size, getOneBitCount()) / hashCount;
+  }
+
+  /**
+   * Returns a copy of the bitmap.
+   */
+  public int[] getBitmap() {
+    int[] copy = new int[bitmap.length()];
+    for (int i = 0; i < copy.length; i++) {
+      copy[i] = bitmap.get(i);
+    }
+    return copy;
+  }
+
+  /**
+   * Merges the bitmap into the given one (of a filter with the same size and number of hash
+   * functions).
+   */
+  public void mergeTo(int[] target) {
+    checkLength(target);
+    for (int i = 0; i < target.length; i++) {
+      target[i] |= bitmap.get(i);
+    }
+  }
+
+  /**
+   * Merges the given bitmap (of a filter with the same size and number of hash functions) into the
+   * bitmap of the filter. It's safe to merge concurrently with putting values.
+   */
+  public void mergeFrom(int[] source) {
+    checkLength(source);
+    for (int i = 0; i < source.length; i++) {
+      int mask = source[i];
+      int oldBlock;
+      do {
+        oldBlock = bitmap.get(i);
+        if ((oldBlock | mask) == oldBlock) {
+          break;
+        }
+      } while (!bitmap.compareAndSet(i, oldBlock, oldBlock | mask));
+    }
+  }
+
+  /**
+   * Merges the given filter into this one.
+   *
+   * @throws IllegalArgumentException if the filters have different sizes or numbers of hash
+   *         functions
+   */
+  public void mergeFrom(BloomFilter<T> other) {
+    if (other.size != size || other.hashCount != hashCount) {
+      throw new IllegalArgumentException("Bloom filters are incompatible.");
+    }
+    mergeFrom(other.getBitmap());
+  }
+
+  /**
+   * Resets the filter.
+   */
+  public void clear() {
+    for (int i = 0; i < bitmap.length(); i++) {
+      bitmap.set(i, 0);
+    }
+  }
+
+  private void checkLength(int[] other) {
+    if (other.length != bitmap.length()) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Count-Min sketch that estimates the frequencies of values in a fixed memory. It's lock-free for
+ * writers and safe for concurrent reading. Each of the {@code depth} rows has {@code width}
+ * counters, and the columns of a value are derived from a single 64-bit hash code by double
+ * hashing. The estimate of a value is the minimum of its counters, so it doesn't underestimate the
+ * true frequency and overestimates it by at most {@code e / width} of the total count with the
+ * probability {@code 1 - exp(-depth)}.
+ *
+ * <p>By default the sketch uses the conservative update: only the minimal counters of a value are
+ * incremented, and the others are raised up to the new minimum, which reduces the overestimation of
+ * the rare values. The counters are updated one by one, so a conservative update racing with
+ * another update of the same value may be partially lost, and the estimates of the hot values may
+ * be slightly lower than their true frequencies under contention. The plain update (all the
+ * counters are incremented atomically) never loses updates.
+ *
+ * @param <T> the type of values being counted
+ *
+ * @author Yauheni Shahun
+ */
+public class CountMinSketch<T> {
+
+  private final int width;
+  private final int depth;
+  private final boolean conservative;
+  private final Hasher64<T> hasher;
+  private final AtomicLongArray counters;
+  private final StripedAdder totalCount = new StripedAdder();
+
+  /**
+   * Constructs a sketch with the conservative update.
+   *
+   * @param width the number of counters in a row
+   * @param depth the number of rows
+   * @param hasher the hash function used to map the values
+   */
+  public CountMinSketch(int width, int depth, Hasher64<T> hasher) {
+    this(width, depth, true, hasher);
+  }
+
+  /**
+   * Constructs a sketch.
+   *
+   * @param width the number of counters in a row
+   * @param depth the number of rows
+   * @param conservative whether to use the conservative update
+   * @param hasher the hash function used to map the values
+   */
+  public CountMinSketch(int width, int depth, boolean conservative, Hasher64<T> hasher) {
+    if (width <= 0 || depth <= 0) {
+      throw new IllegalArgumentException("Width and depth must be positive");
+    }
+    if ((long) width * depth > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Sketch is too large");
+    }
+
+    this.width = width;
+    this.depth = depth;
+    this.conservative = conservative;
+    this.hasher = hasher;
+    this.counters = new AtomicLongArray(width * depth);
+  }
+
+  /**
+   * Creates a sketch with the conservative update that overestimates the frequencies by at most
+   * {@code epsilon} of the total count with the probability {@code 1 - delta}.
+   */
+  public static <T> CountMinSketch<T> create(double epsilon, double delta, Hasher64<T> hasher) {
+    if (epsilon <= 0 || epsilon >= 1 || delta <= 0 || delta >= 1) {
+      throw new IllegalArgumentException("Epsilon and delta must be in range (0, 1)");
+    }
+    int width = (int) Math.ceil(Math.E / epsilon);
+    int depth = (int) Math.ceil(Math.log(1 / delta));
+    return new CountMinSketch<>(width, depth, hasher);
+  }
+
+  /**
+   * Counts the value once.
+   */
+  public void add(T value) {
+    add(value, 1);
+  }
+
+  /**
+   * Counts the value the given number of times.
+   */
+  public void add(T value, long count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("Count must not be negative");
+    }
+
+    long hash = hasher.hash64(value);
+    int hash1 = (int) hash;
+    int hash2 = (int) (hash >>> 32);
+
+    if (!conservative) {
+      for (int row = 0; row < depth; row++) {
+        counters.getAndAdd(getIndex(hash1, hash2, row), count);
+      }
+    } else {
+      // The indexes are recomputed in each pass, so the writes don't allocate.
+      long min = Long.MAX_VALUE;
+      for (int row = 0; row < depth; row++) {
+        min = Math.min(min, counters.get(getIndex(hash1, hash2, row)));
+      }
+
+      // Increments the minimal counters atomically, so the concurrent increments aren't lost.
+      long newMin = Long.MAX_VALUE;
+      for (int row = 0; row < depth; row++) {
+        int index = getIndex(hash1, hash2, row);
+        if (counters.get(index) == min) {
+          newMin = Math.min(newMin, counters.addAndGet(index, count));
+        }
+      }
+      if (newMin == Long.MAX_VALUE) {
+        // All the minimal counters have been updated concurrently since the first pass.
+        newMin = min + count;
+      }
+      // The counters incremented above are already at least the new minimum.
+      for (int row = 0; row < depth; row++) {
+        raise(getIndex(hash1, hash2, row), newMin);
+      }
+    }
+
+    totalCount.add(count);
+  }
+
+  private void raise(int index, long value) {
+    long current;
+    do {
+      current = counters.get(index);
+      if (current >= value) {
+        return;
+      }
+    } while (!counters.compareAndSet(index, current, value));
+  }
+
+  /**
+   * Returns the estimated frequency of the value.
+   */
+  public long estimate(T value) {
+    long hash = hasher.hash64(value);
+    int hash1 = (int) hash;
+    int hash2 = (int) (hash >>> 32);
+
+    long min = Long.MAX_VALUE;
+    for (int row = 0; row < depth; row++) {
+      min = Math.min(min, counters.get(getIndex(hash1, hash2, row)));
+    }
+    return min;
+  }
+
+  private int getIndex(int hash1, int hash2, int row) {
+    return row * width + CountUtil.reduce(hash1 + row * hash2, width);
+  }
+
+  /**
+   * Returns the total count of the values.
+   */
+  public long getTotalCount() {
+    return totalCount.sum();
+  }
+
+  /**
+   * Returns the number of counters in a row.
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Returns the number of rows.
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Returns a copy of the counters (row by row).
+   */
+  public long[] getCounters() {
+    long[] copy = new long[counters.length()];
+    for (int i = 0; i < copy.length; i++) {
+      copy[i] = counters.get(i);
+    }
+    return copy;
+  }
+
+  /**
+   * Adds the counters of the given sketch (of the same width and depth, with the same hasher) to
+   * the counters of this sketch. The result overestimates the frequencies of the union of the
+   * counted values, even if the sketches use the conservative update.
+   *
+   * @throws IllegalArgumentException if the sketches have different width or depth
+   */
+  public void mergeFrom(CountMinSketch<T> other) {
+    if (other.width != width || other.depth != depth) {
+      throw new IllegalArgumentException("Sketches have different dimensions.");
+    }
+    for (int i = 0; i < counters.length(); i++) {
+      long count = other.counters.get(i);
+      if (count != 0) {
+        counters.getAndAdd(i, count);
+      }
+    }
+    totalCount.add(other.getTotalCount());
+  }
+
+  /**
+   * Resets the sketch.
+   */
+  public void clear() {
+    for (int i = 0; i < counters.length(); i++) {
+      counters.set(i, 0);
+    }
+    totalCount.reset();
+  }
+}
@@ -16,6 +16,8 @@
 
 package ys.probabilistic.util;
 
+import java.util.Arrays;
+
 /**
  * Utilities for counting unique objects (cardinality).
  *
@@ -23,17 +25,158 @@ package ys.probabilistic.util;
  */
 public final class CountUtil {
 
+  /**
+   * Maximum number of hash codes that are grouped by block at once.
+   */
+  static final int BATCH_SIZE = 1024;
+
+  private static final ThreadLocal<BatchBuffer> BATCH_BUFFER = new ThreadLocal<BatchBuffer>() {
+    @Override
+    protected BatchBuffer initialValue() {
+      return new BatchBuffer();
+    }
+  };
+
   private CountUtil() {}
 
+  /**
+   * Returns the current thread's scratch arrays for counting in batches. The arrays hold
+   * {@link #BATCH_SIZE} elements and are reused by all the counters, so a counter must not count
+   * another batch while it's using them.
+   */
+  static BatchBuffer getBatchBuffer() {
+    return BATCH_BUFFER.get();
+  }
+
   /**
    * Returns the count of 1s bits in the given bitmap.
    */
   public static int getBitCount(int[] bitmap) {
-    int bitCount = 0;
-    for (int block : bitmap) {
-      bitCount += Integer.bitCount(block);
+    return BitmapUtil.bitCount(bitmap);
+  }
+
+  /**
+   * Maps the hash code to the index of the bit in the bitmap of the given size.
+   */
+  static int getBitIndex(int hash, int size) {
+    int index = hash % size;
+    // Get the absolute value.
+    int t = index >> 31;
+    return (index ^ t) - t;
+  }
+
+  /**
+   * Maps the hash code to the index of the bit in the bitmap of the given size by multiplying and
+   * shifting (Lemire's fast range reduction). It's cheaper than {@link #getBitIndex(int, int)}, but
+   * maps the hash codes to other indexes.
+   */
+  static int reduce(int hash, int size) {
+    return (int) (((hash & 0xffffffffL) * size) >>> 32);
+  }
+
+  /**
+   * Groups the bits that the hash codes are mapped to by the blocks of the bitmap. The indexes of
+   * the distinct blocks (in ascending order) and the masks of their bits are stored to the given
+   * arrays.
+   *
+   * @param hashes the array of the hash codes
+   * @param offset the index of the first hash code
+   * @param length the number of the hash codes (not greater than the length of the output arrays)
+   * @param size the number of bits in the bitmap
+   * @param blockIndexes the output array of the block indexes
+   * @param masks the output array of the bit masks
+   * @return the number of the distinct blocks
+   */
+  static int groupByBlock(int[] hashes, int offset, int length, int size, int[] blockIndexes,
+      int[] masks) {
+    for (int i = 0; i < length; i++) {
+      blockIndexes[i] = getBitIndex(hashes[offset + i], size);
+    }
+    Arrays.sort(blockIndexes, 0, length);
+
+    // Compact the sorted bit indexes in place.
+    int blockCount = 0;
+    for (int i = 0; i < length; blockCount++) {
+      int blockIndex = blockIndexes[i] / LinearCounter.BLOCK_SIZE;
+      int mask = 0;
+      do {
+        mask |= 1 << (blockIndexes[i] % LinearCounter.BLOCK_SIZE);
+        i++;
+      } while (i < length && blockIndexes[i] / LinearCounter.BLOCK_SIZE == blockIndex);
+
+      blockIndexes[blockCount] = blockIndex;
+      masks[blockCount] = mask;
+    }
+    return blockCount;
+  }
+
+  /**
+   * Returns the number of {@code int} blocks needed to hold the bitmap of the given size.
+   */
+  static int getBlockCount(int size) {
+    return (int) (((long) size + LinearCounter.BLOCK_SIZE - 1) / LinearCounter.BLOCK_SIZE);
+  }
+
+  /**
+   * Returns the number of {@code long} words needed to hold the bitmap of the given size.
+   */
+  static int getWordCount(int size) {
+    return (int) (((long) size + LinearCounter.WORD_SIZE - 1) / LinearCounter.WORD_SIZE);
+  }
+
+  /**
+   * Converts the bitmap of {@code int} blocks to the one of {@code long} words. The bit {@code i}
+   * of the bitmap remains the bit {@code i}, i.e. the block {@code 2k} becomes the lower half of
+   * the word {@code k}.
+   */
+  public static long[] toLongBitmap(int[] bitmap) {
+    long[] words = new long[(bitmap.length + 1) / 2];
+    mergeTo(bitmap, words);
+    return words;
+  }
+
+  /**
+   * Converts the bitmap of {@code long} words to the one of {@code int} blocks.
+   *
+   * @param bitmap the bitmap of {@code long} words
+   * @param blockCount the number of {@code int} blocks in the resulting bitmap (either twice the
+   *        number of words or one less)
+   * @see #toLongBitmap(int[])
+   */
+  public static int[] toIntBitmap(long[] bitmap, int blockCount) {
+    if (bitmap.length != (blockCount + 1) / 2) {
+      throw new IllegalArgumentException("Block count doesn't match the bitmap length.");
+    }
+
+    int[] blocks = new int[blockCount];
+    mergeTo(bitmap, blocks);
+    return blocks;
+  }
+
+  /**
+   * Merges the bitmap of {@code int} blocks into the bitmap of {@code long} words.
+   */
+  static void mergeTo(int[] bitmap, long[] otherBitmap) {
+    if (otherBitmap.length != (bitmap.length + 1) / 2) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+
+    for (int i = 0; i < bitmap.length; i++) {
+      otherBitmap[i >>> 1] |= (bitmap[i] & 0xffffffffL) << ((i & 1) * Integer.SIZE);
+    }
+  }
+
+  /**
+   * Merges the bitmap of {@code long} words into the bitmap of {@code int} blocks.
+   */
+  static void mergeTo(long[] bitmap, int[] otherBitmap) {
+    if (bitmap.length != (otherBitmap.length + 1) / 2) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+
+    for (int i = 0; i < otherBitmap.length; i++) {
+      otherBitmap[i] |= (int) (bitmap[i >>> 1] >>> ((i & 1) * Integer.SIZE));
     }
-    return bitCount;
   }
 
   /**
@@ -46,4 +189,25 @@ public final class CountUtil {
   public static double calculateCardinality(int bitCount, int oneBitCount) {
     return -bitCount * Math.log((bitCount - oneBitCount) / (double) bitCount);
   }
+
+  /**
+   * Calculates the cardinality of the data set for the bitmaps that have more than
+   * {@link Integer#MAX_VALUE} bits.
+   *
+   * @param bitCount the total number of bits allocated for counting
+   * @param oneBitCount the number of 1's in the bitmap
+   * @return estimated cardinality as {@code double}
+   */
+  public static double calculateCardinality(long bitCount, long oneBitCount) {
+    return -bitCount * Math.log((bitCount - oneBitCount) / (double) bitCount);
+  }
+
+  /**
+   * The scratch arrays for counting in batches (see {@link #groupByBlock}).
+   */
+  static final class BatchBuffer {
+    final int[] hashes = new int[BATCH_SIZE];
+    final int[] blockIndexes = new int[BATCH_SIZE];
+    final int[] masks = new int[BATCH_SIZE];
+  }
 }
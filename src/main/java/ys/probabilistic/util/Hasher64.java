@@ -0,0 +1,33 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+/**
+ * A {@link Hasher} that is also able to calculate 64-bit hash codes. The 32-bit hash code returned
+ * by {@link #hash(Object)} is supposed to be the lower half of the 64-bit one.
+ *
+ * @param <T> the type of values whose hash codes are calculated
+ *
+ * @author Yauheni Shahun
+ */
+public interface Hasher64<T> extends Hasher<T> {
+
+  /**
+   * Returns a 64-bit hash code of the given value.
+   */
+  long hash64(T value);
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A HyperLogLog cardinality estimator. Unlike the linear counters, its memory doesn't depend on
+ * the cardinality: it takes 2<sup>p</sup> bytes for the precision {@code p} and has the relative
+ * standard error of about 1.04/sqrt(2<sup>p</sup>). It's lock-free for writers: the registers are
+ * updated by CAS-max. Like the other counters, it isn't thread-safe for reading.
+ *
+ * <p>The estimator uses the 64-bit hash codes if the hasher implements {@link Hasher64}, so it
+ * doesn't need the large range correction (as HyperLogLog++). The 32-bit hash codes are spread to
+ * 64 bits, but the estimates become inaccurate when the cardinality approaches 2<sup>32</sup>. The
+ * small range is estimated by linear counting over the empty registers.
+ *
+ * <p>The registers (8 bits each) are packed 4 per {@code int}. The "bitmap" returned by
+ * {@link #getBitmap()} and consumed by {@link #mergeTo(int[])} is the array of the packed
+ * registers, and merging takes the maximum of the registers instead of OR. The same applies to
+ * the {@code long} words of {@link #getLongBitmap()} and {@link #mergeTo(long[])}, which pack 8
+ * registers each. So the bitmaps of HyperLogLog can be merged only with each other (use
+ * {@link #mergeFrom(int[])} to aggregate them) and not with the bitmaps of the linear counters.
+ *
+ * @param <T> the type of values being counted
+ *
+ * @author Yauheni Shahun
+ */
+public class HyperLogLog<T> extends AbstractLinearCounter<T> {
+
+  /**
+   * Minimum supported precision.
+   */
+  public static final int MIN_PRECISION = 4;
+  /**
+   * Maximum supported precision.
+   */
+  public static final int MAX_PRECISION = 18;
+
+  private static final int REGISTER_SIZE = 8;
+  private static final int REGISTERS_PER_BLOCK = BLOCK_SIZE / REGISTER_SIZE;
+  private static final int REGISTER_MASK = (1 << REGISTER_SIZE) - 1;
+
+  private final int precision;
+  private final int registerCount;
+  private final AtomicIntegerArray registers;
+
+  /**
+   * Constructs a HyperLogLog estimator.
+   *
+   * @param precision the number of the hash code bits used to select a register (between
+   *        {@value #MIN_PRECISION} and {@value #MAX_PRECISION})
+   * @param hasher the hash function used to map the values
+   */
+  public HyperLogLog(int precision, Hasher<T> hasher) {
+    super(hasher, true);
+    checkPrecision(precision);
+
+    this.precision = precision;
+    this.registerCount = 1 << precision;
+    this.registers = new AtomicIntegerArray(registerCount / REGISTERS_PER_BLOCK);
+  }
+
+  /**
+   * Returns the precision of the estimator.
+   */
+  public int getPrecision() {
+    return precision;
+  }
+
+  /**
+   * Counts a value by its precomputed 32-bit hash code. The hash code is spread to 64 bits.
+   */
+  @Override
+  public void countHash(int hash) {
+    countHash64(Murmur3.fmix64(hash));
+  }
+
+  /**
+   * Counts a value by its precomputed 64-bit hash code.
+   */
+  @Override
+  public void countHash64(long hash) {
+    int index = getIndex(hash, precision);
+    int rank = getRank(hash, precision);
+
+    int blockIndex = index / REGISTERS_PER_BLOCK;
+    int shift = (index % REGISTERS_PER_BLOCK) * REGISTER_SIZE;
+
+    int oldBlock;
+    int newBlock;
+    do {
+      oldBlock = registers.get(blockIndex);
+      if (((oldBlock >>> shift) & REGISTER_MASK) >= rank) {
+        return;
+      }
+      newBlock = (oldBlock & ~(REGISTER_MASK << shift)) | (rank << shift);
+    } while (!registers.compareAndSet(blockIndex, oldBlock, newBlock));
+  }
+
+  @Override
+  public double getCardinality() {
+    double sum = 0d;
+    int zeroCount = 0;
+    for (int i = 0; i < registers.length(); i++) {
+      int block = registers.get(i);
+      for (int j = 0; j < REGISTERS_PER_BLOCK; j++, block >>>= REGISTER_SIZE) {
+        int register = block & REGISTER_MASK;
+        sum += Double.longBitsToDouble((1023L - register) << 52); // 2^-register
+        if (register == 0) {
+          zeroCount++;
+        }
+      }
+    }
+
+    return estimate(registerCount, sum, zeroCount);
+  }
+
+  /**
+   * Returns the fraction of the non-zero registers. HyperLogLog doesn't saturate, but while the
+   * ratio is low the cardinality is estimated by linear counting over the empty registers.
+   */
+  @Override
+  public double getFillRatio() {
+    int nonZeroCount = 0;
+    for (int i = 0; i < registers.length(); i++) {
+      int block = registers.get(i);
+      for (int j = 0; j < REGISTERS_PER_BLOCK; j++, block >>>= REGISTER_SIZE) {
+        if ((block & REGISTER_MASK) != 0) {
+          nonZeroCount++;
+        }
+      }
+    }
+    return nonZeroCount / (double) registerCount;
+  }
+
+  @Override
+  public void clear() {
+    for (int i = 0; i < registers.length(); i++) {
+      registers.set(i, 0);
+    }
+  }
+
+  /**
+   * Returns a copy of the packed registers.
+   */
+  @Override
+  public int[] getBitmap() {
+    int[] copy = new int[registers.length()];
+    for (int i = 0; i < copy.length; i++) {
+      copy[i] = registers.get(i);
+    }
+    return copy;
+  }
+
+  /**
+   * Merges the registers into the given packed registers of another HyperLogLog of the same
+   * precision by taking the maximum of each register.
+   */
+  @Override
+  public void mergeTo(int[] otherBitmap) {
+    if (otherBitmap.length != registers.length()) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+
+    for (int i = 0; i < otherBitmap.length; i++) {
+      otherBitmap[i] = max(otherBitmap[i], registers.get(i));
+    }
+  }
+
+  /**
+   * Returns a copy of the packed registers in {@code long} words, 8 registers per word.
+   */
+  @Override
+  public long[] getLongBitmap() {
+    long[] words = new long[(registers.length() + 1) / 2];
+    for (int i = 0; i < registers.length(); i++) {
+      words[i >>> 1] |= (registers.get(i) & 0xffffffffL) << ((i & 1) * Integer.SIZE);
+    }
+    return words;
+  }
+
+  /**
+   * Merges the registers into the given packed registers (in {@code long} words) of another
+   * HyperLogLog of the same precision by taking the maximum of each register.
+   *
+   * @see #getLongBitmap()
+   */
+  @Override
+  public void mergeTo(long[] otherBitmap) {
+    if (otherBitmap.length != (registers.length() + 1) / 2) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+
+    for (int i = 0; i < registers.length(); i++) {
+      max(otherBitmap, i, registers.get(i));
+    }
+  }
+
+  /**
+   * Merges the given packed registers of another HyperLogLog of the same precision into this one.
+   * It's lock-free and can be done concurrently with counting.
+   */
+  @Override
+  public void mergeFrom(int[] otherBitmap) {
+    if (otherBitmap.length != registers.length()) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+
+    for (int i = 0; i < otherBitmap.length; i++) {
+      int oldBlock;
+      int newBlock;
+      do {
+        oldBlock = registers.get(i);
+        newBlock = max(oldBlock, otherBitmap[i]);
+      } while (oldBlock != newBlock && !registers.compareAndSet(i, oldBlock, newBlock));
+    }
+  }
+
+  /**
+   * Estimates the cardinality from the given packed registers of HyperLogLog.
+   *
+   * @param precision the precision of HyperLogLog that has filled the registers
+   * @param bitmap the packed registers
+   * @return estimated cardinality as {@code double}
+   */
+  public static double getCardinality(int precision, int[] bitmap) {
+    checkPrecision(precision);
+    int registerCount = 1 << precision;
+    if (bitmap.length != registerCount / REGISTERS_PER_BLOCK) {
+      throw new IllegalArgumentException("Bitmap length doesn't match the precision.");
+    }
+
+    double sum = 0d;
+    int zeroCount = 0;
+    for (int block : bitmap) {
+      for (int j = 0; j < REGISTERS_PER_BLOCK; j++, block >>>= REGISTER_SIZE) {
+        int register = block & REGISTER_MASK;
+        sum += Double.longBitsToDouble((1023L - register) << 52);
+        if (register == 0) {
+          zeroCount++;
+        }
+      }
+    }
+
+    return estimate(registerCount, sum, zeroCount);
+  }
+
+  /**
+   * Returns the index of the register that the hash code is mapped to.
+   */
+  static int getIndex(long hash, int precision) {
+    return (int) (hash >>> (Long.SIZE - precision));
+  }
+
+  /**
+   * Returns the rank (position of the leftmost 1) of the hash code bits that follow the register
+   * index.
+   */
+  static int getRank(long hash, int precision) {
+    // The guard bit limits the rank by 64 - precision + 1.
+    return Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+  }
+
+  /**
+   * Sets the register of the given packed registers to the rank if the latter is greater.
+   */
+  static void update(int[] bitmap, int index, int rank) {
+    int blockIndex = index / REGISTERS_PER_BLOCK;
+    int shift = (index % REGISTERS_PER_BLOCK) * REGISTER_SIZE;
+    if (((bitmap[blockIndex] >>> shift) & REGISTER_MASK) < rank) {
+      bitmap[blockIndex] = (bitmap[blockIndex] & ~(REGISTER_MASK << shift)) | (rank << shift);
+    }
+  }
+
+  /**
+   * Returns the length of the packed registers for the given precision.
+   */
+  static int getBlockCount(int precision) {
+    return (1 << precision) / REGISTERS_PER_BLOCK;
+  }
+
+  private static double estimate(int registerCount, double sum, int zeroCount) {
+    double alpha;
+    switch (registerCount) {
+      case 16:
+        alpha = 0.673d;
+        break;
+      case 32:
+        alpha = 0.697d;
+        break;
+      case 64:
+        alpha = 0.709d;
+        break;
+      default:
+        alpha = 0.7213d / (1d + 1.079d / registerCount);
+    }
+
+    double estimate = alpha * registerCount * registerCount / sum;
+    if (estimate <= 2.5d * registerCount && zeroCount > 0) {
+      // Linear counting.
+      return registerCount * Math.log(registerCount / (double) zeroCount);
+    }
+    return estimate;
+  }
+
+  /**
+   * Returns the packed registers that hold the maximum of the respective registers of the blocks.
+   */
+  private static int max(int block1, int block2) {
+    int result = 0;
+    for (int shift = 0; shift < BLOCK_SIZE; shift += REGISTER_SIZE) {
+      int register1 = (block1 >>> shift) & REGISTER_MASK;
+      int register2 = (block2 >>> shift) & REGISTER_MASK;
+      result |= Math.max(register1, register2) << shift;
+    }
+    return result;
+  }
+
+  /**
+   * Sets the registers of the block {@code i} of the given packed registers in {@code long} words
+   * to the maximum of them and the respective registers of the block.
+   */
+  static void max(long[] words, int i, int block) {
+    int shift = (i & 1) * Integer.SIZE;
+    long word = words[i >>> 1];
+    int maxBlock = max((int) (word >>> shift), block);
+    words[i >>> 1] = (word & ~(0xffffffffL << shift)) | ((maxBlock & 0xffffffffL) << shift);
+  }
+
+  private static void checkPrecision(int precision) {
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+      throw new IllegalArgumentException(
+          "Precision must be in range [" + MIN_PRECISION + ", " + MAX_PRECISION + "]");
+    }
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+/**
+ * The switch of the optional instrumentation of the counters and meters (e.g. the counts of the
+ * CAS retries and the latencies of the reading phase). It's enabled by the system property
+ * {@value #PROPERTY} set to {@code true} at startup. Since the flag is a constant, the JIT compiler
+ * removes the instrumentation code entirely when it's disabled.
+ *
+ * @author Yauheni Shahun
+ */
+public final class Instrumentation {
+
+  /**
+   * The name of the system property that enables instrumentation.
+   */
+  public static final String PROPERTY = "ys.probabilistic.instrumentation";
+
+  /**
+   * Whether instrumentation is enabled.
+   */
+  public static final boolean ENABLED = Boolean.getBoolean(PROPERTY);
+
+  private Instrumentation() {}
+}
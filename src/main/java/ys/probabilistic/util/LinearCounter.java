@@ -31,11 +31,65 @@ public interface LinearCounter<T> {
    */
   int BLOCK_SIZE = 32;
 
+  /**
+   * Size in bits of the {@code long} word that the 64-bit bitmap consists of.
+   */
+  int WORD_SIZE = 64;
+
   /**
    * Counts the given value.
    */
   void count(T value);
 
+  /**
+   * Counts the given primitive value without boxing it. The value is supposed to be of the type
+   * {@code T} (i.e. {@link Integer}) and is hashed in the same way as its wrapper. The method has a
+   * distinct name so that a literal can't be silently counted as an {@code int} by a counter of
+   * another type (e.g. {@link Long}).
+   *
+   * @throws UnsupportedOperationException if the counter's hasher doesn't implement
+   *         {@link IntHasher} (or {@link IntHasher64} if the counter uses the 64-bit hash codes)
+   */
+  void countInt(int value);
+
+  /**
+   * Counts the given primitive value without boxing it. The value is supposed to be of the type
+   * {@code T} (i.e. {@link Long}) and is hashed in the same way as its wrapper.
+   *
+   * @throws UnsupportedOperationException if the counter's hasher doesn't implement
+   *         {@link LongHasher} (or {@link LongHasher64} if the counter uses the 64-bit hash codes)
+   */
+  void countLong(long value);
+
+  /**
+   * Counts a value by its precomputed hash code. The hash code must be calculated by the same hash
+   * function that the counter uses.
+   */
+  void countHash(int hash);
+
+  /**
+   * Counts the given values. It's more efficient than counting them one by one: the values are
+   * hashed first, and the bitmap is updated once per block touched by the batch.
+   */
+  void count(T[] values);
+
+  /**
+   * Counts the given values in batches.
+   *
+   * @see #count(Object[])
+   */
+  void count(Iterable<? extends T> values);
+
+  /**
+   * Counts the values by their precomputed hash codes (see {@link #countHash(int)}). The bitmap is
+   * updated once per block touched by the batch.
+   *
+   * @param hashes the array of the hash codes
+   * @param offset the index of the first hash code to count
+   * @param length the number of the hash codes to count
+   */
+  void countHashes(int[] hashes, int offset, int length);
+
   /**
    * Gets the cardinality of the observed values.
    *
@@ -43,6 +97,14 @@ public interface LinearCounter<T> {
    */
   double getCardinality();
 
+  /**
+   * Returns the fraction of 1s bits in the bitmap. The values close to 1 mean that the counter is
+   * going to saturate. It doesn't copy the bitmap. The counters that don't use a linear counting
+   * bitmap return their own measure of fullness between 0 and 1 (see the implementations) or
+   * {@link Double#NaN}.
+   */
+  double getFillRatio();
+
   /**
    * Returns a copy of the underlying bitmap (if other isn't mentioned) represented as {@code int}
    * array. This can be used for calculating aggregate cardinalities.
@@ -55,6 +117,26 @@ public interface LinearCounter<T> {
    */
   void mergeTo(int[] otherBitmap);
 
+  /**
+   * Returns a copy of the underlying bitmap represented as {@code long} array. It has the same bit
+   * layout as {@link #getBitmap()}: the bit {@code i} is the bit {@code i % 64} of the word
+   * {@code i / 64} (see {@link CountUtil#toLongBitmap(int[])}).
+   */
+  long[] getLongBitmap();
+
+  /**
+   * Merges the internal bitmap into the given bitmap represented as {@code long} array.
+   *
+   * @see #getLongBitmap()
+   */
+  void mergeTo(long[] otherBitmap);
+
+  /**
+   * Merges the given bitmap into the internal bitmap. The bitmap must be obtained from a counter of
+   * the same type and size (see {@link #getBitmap()}). This can be used for aggregating counters.
+   */
+  void mergeFrom(int[] otherBitmap);
+
   /**
    * Clears the counter's state (bitmap).
    */
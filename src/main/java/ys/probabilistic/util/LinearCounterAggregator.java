@@ -0,0 +1,238 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Utilities for aggregating many linear counters of the same size in parallel on a
+ * {@link ForkJoinPool}. The bitmaps are merged by splitting them into ranges of blocks, so each
+ * task reads and writes its own part of the bitmaps and no intermediate bitmaps are allocated. The
+ * bitmaps of the counters can be accessed only as a whole, so the counters are split into a chunk
+ * per worker, each chunk is merged into its own accumulator bitmap, and the accumulators are then
+ * merged by ranges. So at most one bitmap per worker is allocated.
+ *
+ * @author Yauheni Shahun
+ */
+public final class LinearCounterAggregator {
+
+  /**
+   * Number of blocks merged by a single task. The range of the target bitmap (16 KB) fits into the
+   * CPU cache while the source bitmaps are streamed.
+   */
+  private static final int RANGE_BLOCKS = 4096;
+  /**
+   * Minimum number of counters merged by a single task.
+   */
+  private static final int LEAF_COUNTERS = 8;
+
+  private LinearCounterAggregator() {}
+
+  /**
+   * Merges the bitmaps in parallel.
+   *
+   * @param size the number of bits in the bitmaps
+   * @param bitmaps the bitmaps of the linear counters of the given size
+   * @param pool the pool that runs the merging tasks
+   * @return an aggregate counter that holds the union of the bitmaps
+   */
+  public static <T> AggregateLinearCounter<T> mergeBitmaps(int size, List<int[]> bitmaps,
+      ForkJoinPool pool) {
+    AggregateLinearCounter<T> aggregate = new AggregateLinearCounter<>(size);
+    int[] target = aggregate.getBitmap();
+    checkLengths(target.length, bitmaps);
+
+    pool.invoke(new MergeRangeTask(bitmaps, target, 0, target.length));
+    return aggregate;
+  }
+
+  /**
+   * Calculates the cardinality of the union of the bitmaps in parallel without materializing the
+   * union.
+   *
+   * @param size the number of bits in the bitmaps
+   * @param bitmaps the bitmaps of the linear counters of the given size
+   * @param pool the pool that runs the counting tasks
+   * @return estimated cardinality as {@code double}
+   */
+  public static double getCardinality(int size, List<int[]> bitmaps, ForkJoinPool pool) {
+    int blockCount = CountUtil.getBlockCount(size);
+    checkLengths(blockCount, bitmaps);
+
+    int[][] bitmapArray = bitmaps.toArray(new int[bitmaps.size()][]);
+    int oneBitCount = pool.invoke(new CountRangeTask(bitmapArray, 0, blockCount));
+    return CountUtil.calculateCardinality(size, oneBitCount);
+  }
+
+  /**
+   * Merges the bitmaps of the counters in parallel. The registers of {@link HyperLogLog} and
+   * {@link AdaptiveLinearCounter} are merged by maximum rather than OR, so such counters aren't
+   * accepted (merge them by {@link LinearCounter#mergeFrom(int[])} instead).
+   *
+   * @param size the number of bits in the bitmaps of the counters
+   * @param counters the linear counters of the given size
+   * @param pool the pool that runs the merging tasks
+   * @return an aggregate counter that holds the union of the bitmaps
+   * @throws IllegalArgumentException if any of the counters keeps the HyperLogLog registers
+   */
+  public static <T> AggregateLinearCounter<T> mergeCounters(int size,
+      List<? extends LinearCounter<?>> counters, ForkJoinPool pool) {
+    for (LinearCounter<?> counter : counters) {
+      if (counter instanceof HyperLogLog || counter instanceof AdaptiveLinearCounter) {
+        throw new IllegalArgumentException(
+            "Registers of " + counter.getClass().getSimpleName() + " can't be merged by OR.");
+      }
+    }
+
+    AggregateLinearCounter<T> aggregate = new AggregateLinearCounter<>(size);
+    int[] target = aggregate.getBitmap();
+
+    // The first chunk is merged right into the target bitmap.
+    int chunkCount = Math.max(1, Math.min(pool.getParallelism(), counters.size() / LEAF_COUNTERS));
+    List<int[]> accumulators = new ArrayList<>(chunkCount);
+    accumulators.add(target);
+    for (int i = 1; i < chunkCount; i++) {
+      accumulators.add(new int[target.length]);
+    }
+
+    pool.invoke(new MergeCountersTask(counters, accumulators, 0, chunkCount));
+    if (chunkCount > 1) {
+      pool.invoke(
+          new MergeRangeTask(accumulators.subList(1, chunkCount), target, 0, target.length));
+    }
+    return aggregate;
+  }
+
+  private static void checkLengths(int blockCount, List<int[]> bitmaps) {
+    for (int[] bitmap : bitmaps) {
+      if (bitmap.length != blockCount) {
+        throw new IllegalArgumentException("Bitmaps have different lengths.");
+      }
+    }
+  }
+
+  /**
+   * A task that merges the given range of the bitmaps into the target bitmap.
+   */
+  private static final class MergeRangeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final List<int[]> bitmaps;
+    private final int[] target;
+    private final int from;
+    private final int to;
+
+    MergeRangeTask(List<int[]> bitmaps, int[] target, int from, int to) {
+      this.bitmaps = bitmaps;
+      this.target = target;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > RANGE_BLOCKS) {
+        int middle = (from + to) >>> 1;
+        invokeAll(new MergeRangeTask(bitmaps, target, from, middle),
+            new MergeRangeTask(bitmaps, target, middle, to));
+        return;
+      }
+
+      for (int[] bitmap : bitmaps) {
+        for (int i = from; i < to; i++) {
+          target[i] |= bitmap[i];
+        }
+      }
+    }
+  }
+
+  /**
+   * A task that counts 1s bits in the union of the given range of the bitmaps.
+   */
+  private static final class CountRangeTask extends RecursiveTask<Integer> {
+    private static final long serialVersionUID = 1L;
+
+    private final int[][] bitmaps;
+    private final int from;
+    private final int to;
+
+    CountRangeTask(int[][] bitmaps, int from, int to) {
+      this.bitmaps = bitmaps;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Integer compute() {
+      if (to - from > RANGE_BLOCKS) {
+        int middle = (from + to) >>> 1;
+        CountRangeTask right = new CountRangeTask(bitmaps, middle, to);
+        right.fork();
+        int count = new CountRangeTask(bitmaps, from, middle).compute();
+        return count + right.join();
+      }
+
+      return BitmapUtil.unionBitCount(bitmaps, from, to);
+    }
+  }
+
+  /**
+   * A task that merges the bitmaps of the given range of the chunks of the counters into the
+   * accumulators of the chunks.
+   */
+  private static final class MergeCountersTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final List<? extends LinearCounter<?>> counters;
+    private final List<int[]> accumulators;
+    private final int fromChunk;
+    private final int toChunk;
+
+    MergeCountersTask(List<? extends LinearCounter<?>> counters, List<int[]> accumulators,
+        int fromChunk, int toChunk) {
+      this.counters = counters;
+      this.accumulators = accumulators;
+      this.fromChunk = fromChunk;
+      this.toChunk = toChunk;
+    }
+
+    @Override
+    protected void compute() {
+      if (toChunk - fromChunk > 1) {
+        int middle = (fromChunk + toChunk) >>> 1;
+        invokeAll(new MergeCountersTask(counters, accumulators, fromChunk, middle),
+            new MergeCountersTask(counters, accumulators, middle, toChunk));
+        return;
+      }
+
+      int[] target = accumulators.get(fromChunk);
+      int from = getChunkStart(fromChunk);
+      int to = getChunkStart(fromChunk + 1);
+      for (int i = from; i < to; i++) {
+        counters.get(i).mergeTo(target);
+      }
+    }
+
+    private int getChunkStart(int chunk) {
+      return (int) ((long) counters.size() * chunk / accumulators.size());
+    }
+  }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+/**
+ * A hash function of the primitive {@code long} values. It allows counting such values without
+ * boxing. An implementation that also implements {@link Hasher} for the wrapper type is supposed
+ * to return the same hash code for the primitive and the boxed value.
+ *
+ * @author Yauheni Shahun
+ */
+public interface LongHasher {
+
+  /**
+   * Returns a hash code of the given value.
+   */
+  int hash(long value);
+}
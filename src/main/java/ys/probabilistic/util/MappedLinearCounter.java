@@ -0,0 +1,379 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import sun.misc.Unsafe;
+
+/**
+ * An implementation of {@link LinearCounter} whose bitmap is stored in a memory-mapped file. It
+ * supports bitmaps larger than the heap and than {@link Integer#MAX_VALUE} bits. The pages of the
+ * file are loaded lazily on access, and the counter can be reopened from the file instantly
+ * without deserialization. Like {@link WriteConcurrentLinearCounter} it's lock-free for writers
+ * and isn't thread-safe for reading.
+ *
+ * <p>The bit index is derived from the 64-bit hash code if the hasher implements {@link Hasher64}
+ * (the primitive values are boxed in this case). Otherwise, the 32-bit hash code is treated as
+ * unsigned, so only the first 2<sup>32</sup> bits of the bitmap are used. Because of that the
+ * bitmap isn't compatible with the one of {@link WriteConcurrentLinearCounter}. Mapped counters of
+ * the same size can be aggregated by {@link #mergeTo(MappedLinearCounter)} or, if they fit into the
+ * heap, by merging them into {@link AggregateLinearCounter} with {@link #mergeTo(int[])}.
+ *
+ * <p>The file starts with a header page followed by the bitmap. The counter must be closed after
+ * use and must not be used (including by writers) afterwards.
+ *
+ * @param <T> the type of values being counted
+ *
+ * @author Yauheni Shahun
+ */
+public class MappedLinearCounter<T> extends AbstractLinearCounter<T> implements Closeable {
+
+  /**
+   * Size of the file header in bytes. It keeps the bitmap page-aligned.
+   */
+  static final int HEADER_SIZE = 4096;
+
+  private static final int MAGIC = 0x4c434d46; // "LCMF"
+  private static final int VERSION = 1;
+
+  private static final int BLOCK_BYTES = BLOCK_SIZE / Byte.SIZE;
+  /**
+   * Size of the mapped segment in bytes.
+   */
+  private static final int SEGMENT_SHIFT = 30;
+  private static final long SEGMENT_BYTES = 1L << SEGMENT_SHIFT;
+
+  private final Unsafe unsafe = UnsafeAccess.getUnsafe();
+
+  private final long size;
+  private final long blockCount;
+  private final FileChannel channel;
+  private final MappedByteBuffer[] segments;
+  private final long[] addresses;
+  private final long[] segmentSizes;
+
+  private volatile boolean closed;
+
+  private MappedLinearCounter(FileChannel channel, long size, Hasher<T> hasher) throws IOException {
+    super(hasher, true);
+    this.size = size;
+    this.blockCount = (size - 1) / BLOCK_SIZE + 1;
+    this.channel = channel;
+
+    long byteCount = getByteCount(size);
+    int segmentCount = (int) ((byteCount + SEGMENT_BYTES - 1) >>> SEGMENT_SHIFT);
+    this.segments = new MappedByteBuffer[segmentCount];
+    this.addresses = new long[segmentCount];
+    this.segmentSizes = new long[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      long position = (long) i << SEGMENT_SHIFT;
+      segmentSizes[i] = Math.min(SEGMENT_BYTES, byteCount - position);
+      segments[i] = channel.map(MapMode.READ_WRITE, HEADER_SIZE + position, segmentSizes[i]);
+      addresses[i] = UnsafeAccess.getAddress(segments[i]);
+    }
+  }
+
+  /**
+   * Creates a new counter file (or overwrites the existing one) and maps it into memory. The file
+   * is created sparse where possible, so the disk space is allocated as the bits get set.
+   *
+   * @param file the path to the counter file
+   * @param size the number of bits in the bitmap
+   * @param hasher the hash function used to map the values
+   * @throws IOException if the file can't be created or mapped
+   */
+  public static <T> MappedLinearCounter<T> create(Path file, long size, Hasher<T> hasher)
+      throws IOException {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Size must be positive");
+    }
+
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+      header.putInt(MAGIC).putInt(VERSION).putLong(size);
+      ((Buffer) header).clear();
+      while (header.hasRemaining()) {
+        channel.write(header, header.position());
+      }
+      return new MappedLinearCounter<>(channel, size, hasher);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens the existing counter file and maps it into memory. The bitmap isn't read eagerly.
+   *
+   * @param file the path to the counter file
+   * @param hasher the hash function used to map the values (the same that has filled the file)
+   * @throws IOException if the file can't be read or isn't a counter file
+   */
+  public static <T> MappedLinearCounter<T> open(Path file, Hasher<T> hasher) throws IOException {
+    FileChannel channel =
+        FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.BIG_ENDIAN);
+      while (header.hasRemaining()) {
+        if (channel.read(header, header.position()) < 0) {
+          throw new IOException("Counter file is truncated: " + file);
+        }
+      }
+      ((Buffer) header).flip();
+      if (header.getInt() != MAGIC) {
+        throw new IOException("Not a counter file: " + file);
+      }
+      int version = header.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported counter file version: " + version);
+      }
+      long size = header.getLong();
+      if (size <= 0) {
+        throw new IOException("Invalid bitmap size " + size + " in counter file: " + file);
+      }
+      // Mapping beyond the end of the file would silently extend it.
+      if (channel.size() < HEADER_SIZE + getByteCount(size)) {
+        throw new IOException("Counter file is truncated: " + file);
+      }
+      return new MappedLinearCounter<>(channel, size, hasher);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the size in bytes of the bitmap of the given number of bits in the file. It's rounded
+   * up to the whole number of longs for the word-wise scanning.
+   */
+  private static long getByteCount(long size) {
+    long blockCount = (size - 1) / BLOCK_SIZE + 1;
+    return (blockCount * BLOCK_BYTES + 7) & ~7L;
+  }
+
+  /**
+   * Returns the number of bits in the bitmap.
+   */
+  public long getLongSize() {
+    return size;
+  }
+
+  /**
+   * Counts a value by its precomputed 32-bit hash code treated as unsigned.
+   */
+  @Override
+  public void countHash(int hash) {
+    setBit((hash & 0xffffffffL) % size);
+  }
+
+  /**
+   * Counts a value by its precomputed 64-bit hash code.
+   */
+  @Override
+  public void countHash64(long hash) {
+    setBit((hash >>> 1) % size);
+  }
+
+  private void setBit(long index) {
+    checkOpen();
+
+    long offset = index / BLOCK_SIZE * BLOCK_BYTES;
+    long blockAddress =
+        addresses[(int) (offset >>> SEGMENT_SHIFT)] + (offset & (SEGMENT_BYTES - 1));
+    int mask = 1 << (index % BLOCK_SIZE);
+
+    int oldBlock;
+    int newBlock;
+    do {
+      oldBlock = unsafe.getIntVolatile(null, blockAddress);
+      newBlock = oldBlock | mask;
+    } while (oldBlock != newBlock
+        && !unsafe.compareAndSwapInt(null, blockAddress, oldBlock, newBlock));
+  }
+
+  @Override
+  public double getCardinality() {
+    return CountUtil.calculateCardinality(size, getOneBitCount());
+  }
+
+  /**
+   * Returns the fraction of 1s bits in the bitmap.
+   */
+  @Override
+  public double getFillRatio() {
+    return getOneBitCount() / (double) size;
+  }
+
+  private long getOneBitCount() {
+    checkOpen();
+
+    long oneBitCount = 0;
+    for (int i = 0; i < segments.length; i++) {
+      long address = addresses[i];
+      long end = address + segmentSizes[i];
+      for (; address < end; address += 8) {
+        oneBitCount += Long.bitCount(unsafe.getLong(address));
+      }
+    }
+    return oneBitCount;
+  }
+
+  @Override
+  public void clear() {
+    checkOpen();
+
+    for (int i = 0; i < segments.length; i++) {
+      unsafe.setMemory(addresses[i], segmentSizes[i], (byte) 0);
+    }
+  }
+
+  /**
+   * Returns an on-heap copy of the bitmap.
+   *
+   * @throws IllegalStateException if the bitmap doesn't fit into {@code int} array
+   */
+  @Override
+  public int[] getBitmap() {
+    checkOpen();
+    if (blockCount > Integer.MAX_VALUE - 8) {
+      throw new IllegalStateException("Bitmap is too large to copy to the heap");
+    }
+
+    int[] copy = new int[(int) blockCount];
+    long remaining = blockCount * BLOCK_BYTES;
+    for (int i = 0; remaining > 0; i++) {
+      long byteCount = Math.min(remaining, segmentSizes[i]);
+      long targetOffset = UnsafeAccess.INT_ARRAY_BASE_OFFSET + ((long) i << SEGMENT_SHIFT);
+      unsafe.copyMemory(null, addresses[i], copy, targetOffset, byteCount);
+      remaining -= byteCount;
+    }
+    return copy;
+  }
+
+  /**
+   * Merges the bitmap into the given bitmap reading the mapped file page by page, so the bitmap
+   * isn't copied to the heap.
+   */
+  @Override
+  public void mergeTo(int[] otherBitmap) {
+    checkOpen();
+    if (otherBitmap.length != blockCount) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+
+    for (int i = 0; i < otherBitmap.length; i++) {
+      long offset = (long) i * BLOCK_BYTES;
+      long address = addresses[(int) (offset >>> SEGMENT_SHIFT)] + (offset & (SEGMENT_BYTES - 1));
+      otherBitmap[i] |= unsafe.getInt(address);
+    }
+  }
+
+  /**
+   * Merges the given bitmap into the mapped bitmap. It's lock-free and can be done concurrently
+   * with counting.
+   */
+  @Override
+  public void mergeFrom(int[] otherBitmap) {
+    checkOpen();
+    if (otherBitmap.length != blockCount) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+
+    for (int i = 0; i < otherBitmap.length; i++) {
+      long offset = (long) i * BLOCK_BYTES;
+      long address = addresses[(int) (offset >>> SEGMENT_SHIFT)] + (offset & (SEGMENT_BYTES - 1));
+      int oldBlock;
+      int newBlock;
+      do {
+        oldBlock = unsafe.getIntVolatile(null, address);
+        newBlock = oldBlock | otherBitmap[i];
+      } while (oldBlock != newBlock
+          && !unsafe.compareAndSwapInt(null, address, oldBlock, newBlock));
+    }
+  }
+
+  /**
+   * Merges the bitmap into the bitmap of the other mapped counter segment by segment without
+   * copying them to the heap. The other counter must not be updated concurrently.
+   */
+  public void mergeTo(MappedLinearCounter<?> other) {
+    checkOpen();
+    other.checkOpen();
+    if (other.size != size) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+
+    for (int i = 0; i < segments.length; i++) {
+      long address = addresses[i];
+      long otherAddress = other.addresses[i];
+      for (long offset = 0; offset < segmentSizes[i]; offset += 8) {
+        unsafe.putLong(otherAddress + offset,
+            unsafe.getLong(otherAddress + offset) | unsafe.getLong(address + offset));
+      }
+    }
+  }
+
+  /**
+   * Flushes the changes of the bitmap to the file.
+   */
+  public void flush() {
+    checkOpen();
+
+    for (MappedByteBuffer segment : segments) {
+      segment.force();
+    }
+  }
+
+  /**
+   * Unmaps the bitmap and closes the underlying file. Subsequent calls have no effect. The changes
+   * made to the bitmap are written to the file by the operating system eventually (use
+   * {@link #flush()} to write them immediately).
+   *
+   * <p>The segments are unmapped right away rather than when they're garbage collected, so the file
+   * can be deleted or remapped at once. Hence the caller must make sure that no writer or reader is
+   * accessing the counter concurrently (e.g. the meters drain the writers by flipping the phase of
+   * their {@code WriterReaderPhaser}): an access to the unmapped memory crashes the JVM.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      for (MappedByteBuffer segment : segments) {
+        UnsafeAccess.unmap(segment);
+      }
+      channel.close();
+    }
+  }
+
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("Counter is closed");
+    }
+  }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+/**
+ * Allocation-free implementations of the {@code murmur3} hash functions (with zero seed). The
+ * results are bit-identical to {@code Hashing.murmur3_32()} and to the first 64 bits of
+ * {@code Hashing.murmur3_128()} from Guava. Character sequences are hashed as their UTF-8
+ * encoding (unpaired surrogates are encoded as {@code '?'}) without materializing the bytes.
+ *
+ * @author Yauheni Shahun
+ */
+public final class Murmur3 {
+
+  private static final int C1_32 = 0xcc9e2d51;
+  private static final int C2_32 = 0x1b873593;
+
+  private static final long C1_128 = 0x87c37b91114253d5L;
+  private static final long C2_128 = 0x4cf5ad432745937fL;
+
+  private Murmur3() {}
+
+  /**
+   * Returns the 32-bit hash of the given {@code int} (as 4 little-endian bytes).
+   */
+  public static int hash32(int value) {
+    return fmix32(mixH1(0, mixK1(value)), 4);
+  }
+
+  /**
+   * Returns the 32-bit hash of the given {@code long} (as 8 little-endian bytes).
+   */
+  public static int hash32(long value) {
+    int h1 = mixH1(0, mixK1((int) value));
+    h1 = mixH1(h1, mixK1((int) (value >>> 32)));
+    return fmix32(h1, 8);
+  }
+
+  /**
+   * Returns the 32-bit hash of the given bytes.
+   */
+  public static int hash32(byte[] data) {
+    return hash32(data, 0, data.length);
+  }
+
+  /**
+   * Returns the 32-bit hash of the given range of bytes.
+   */
+  public static int hash32(byte[] data, int offset, int length) {
+    int h1 = 0;
+    int end = offset + length;
+    int i = offset;
+    for (; i + 4 <= end; i += 4) {
+      h1 = mixH1(h1, mixK1(getIntLittleEndian(data, i)));
+    }
+
+    int k1 = 0;
+    for (int shift = 0; i < end; i++, shift += 8) {
+      k1 ^= (data[i] & 0xff) << shift;
+    }
+    h1 ^= mixK1(k1);
+
+    return fmix32(h1, length);
+  }
+
+  /**
+   * Returns the 32-bit hash of the UTF-8 encoding of the given character sequence.
+   */
+  public static int hash32(CharSequence value) {
+    int h1 = 0;
+    int k1 = 0;
+    int shift = 0;
+    int length = 0;
+
+    int charCount = value.length();
+    for (int i = 0; i < charCount; i++) {
+      char c = value.charAt(i);
+      int utf8;
+      int byteCount;
+      if (c < 0x80) {
+        utf8 = c;
+        byteCount = 1;
+      } else if (c < 0x800) {
+        utf8 = encode2(c);
+        byteCount = 2;
+      } else if (!Character.isSurrogate(c)) {
+        utf8 = encode3(c);
+        byteCount = 3;
+      } else if (Character.isHighSurrogate(c) && i + 1 < charCount
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        utf8 = encode4(Character.toCodePoint(c, value.charAt(++i)));
+        byteCount = 4;
+      } else {
+        utf8 = '?';
+        byteCount = 1;
+      }
+
+      k1 |= utf8 << shift;
+      shift += byteCount * 8;
+      if (shift >= 32) {
+        h1 = mixH1(h1, mixK1(k1));
+        shift -= 32;
+        k1 = shift == 0 ? 0 : utf8 >>> (byteCount * 8 - shift);
+      }
+      length += byteCount;
+    }
+    h1 ^= mixK1(k1);
+
+    return fmix32(h1, length);
+  }
+
+  /**
+   * Returns the first 64 bits of the 128-bit hash of the given {@code int} (as 4 little-endian
+   * bytes).
+   */
+  public static long hash64(int value) {
+    return finish128(0, 0, value & 0xffffffffL, 0, 4);
+  }
+
+  /**
+   * Returns the first 64 bits of the 128-bit hash of the given {@code long} (as 8 little-endian
+   * bytes).
+   */
+  public static long hash64(long value) {
+    return finish128(0, 0, value, 0, 8);
+  }
+
+  /**
+   * Returns the first 64 bits of the 128-bit hash of the given bytes.
+   */
+  public static long hash64(byte[] data) {
+    return hash64(data, 0, data.length);
+  }
+
+  /**
+   * Returns the first 64 bits of the 128-bit hash of the given range of bytes.
+   */
+  public static long hash64(byte[] data, int offset, int length) {
+    long h1 = 0;
+    long h2 = 0;
+    int end = offset + length;
+    int i = offset;
+    for (; i + 16 <= end; i += 16) {
+      long k1 = getLongLittleEndian(data, i);
+      long k2 = getLongLittleEndian(data, i + 8);
+
+      h1 ^= mixK1(k1);
+      h1 = Long.rotateLeft(h1, 27);
+      h1 += h2;
+      h1 = h1 * 5 + 0x52dce729;
+
+      h2 ^= mixK2(k2);
+      h2 = Long.rotateLeft(h2, 31);
+      h2 += h1;
+      h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    long k1 = 0;
+    long k2 = 0;
+    for (int shift = 0; i < end; i++, shift += 8) {
+      if (shift < 64) {
+        k1 ^= (data[i] & 0xffL) << shift;
+      } else {
+        k2 ^= (data[i] & 0xffL) << (shift - 64);
+      }
+    }
+
+    return finish128(h1, h2, k1, k2, length);
+  }
+
+  /**
+   * Returns the first 64 bits of the 128-bit hash of the UTF-8 encoding of the given character
+   * sequence.
+   */
+  public static long hash64(CharSequence value) {
+    long h1 = 0;
+    long h2 = 0;
+    long k1 = 0;
+    long k2 = 0;
+    // Number of bytes buffered in k1 and k2.
+    int position = 0;
+    int length = 0;
+
+    int charCount = value.length();
+    for (int i = 0; i < charCount; i++) {
+      char c = value.charAt(i);
+      int utf8;
+      int byteCount;
+      if (c < 0x80) {
+        utf8 = c;
+        byteCount = 1;
+      } else if (c < 0x800) {
+        utf8 = encode2(c);
+        byteCount = 2;
+      } else if (!Character.isSurrogate(c)) {
+        utf8 = encode3(c);
+        byteCount = 3;
+      } else if (Character.isHighSurrogate(c) && i + 1 < charCount
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        utf8 = encode4(Character.toCodePoint(c, value.charAt(++i)));
+        byteCount = 4;
+      } else {
+        utf8 = '?';
+        byteCount = 1;
+      }
+
+      for (int j = 0; j < byteCount; j++, utf8 >>>= 8) {
+        long b = utf8 & 0xffL;
+        if (position < 8) {
+          k1 |= b << (position * 8);
+        } else {
+          k2 |= b << ((position - 8) * 8);
+        }
+
+        if (++position == 16) {
+          h1 ^= mixK1(k1);
+          h1 = Long.rotateLeft(h1, 27);
+          h1 += h2;
+          h1 = h1 * 5 + 0x52dce729;
+
+          h2 ^= mixK2(k2);
+          h2 = Long.rotateLeft(h2, 31);
+          h2 += h1;
+          h2 = h2 * 5 + 0x38495ab5;
+
+          k1 = 0;
+          k2 = 0;
+          position = 0;
+        }
+      }
+      length += byteCount;
+    }
+
+    return finish128(h1, h2, k1, k2, length);
+  }
+
+  private static int mixK1(int k1) {
+    k1 *= C1_32;
+    k1 = Integer.rotateLeft(k1, 15);
+    k1 *= C2_32;
+    return k1;
+  }
+
+  private static int mixH1(int h1, int k1) {
+    h1 ^= k1;
+    h1 = Integer.rotateLeft(h1, 13);
+    h1 = h1 * 5 + 0xe6546b64;
+    return h1;
+  }
+
+  private static int fmix32(int h1, int length) {
+    h1 ^= length;
+    h1 ^= h1 >>> 16;
+    h1 *= 0x85ebca6b;
+    h1 ^= h1 >>> 13;
+    h1 *= 0xc2b2ae35;
+    h1 ^= h1 >>> 16;
+    return h1;
+  }
+
+  private static long mixK1(long k1) {
+    k1 *= C1_128;
+    k1 = Long.rotateLeft(k1, 31);
+    k1 *= C2_128;
+    return k1;
+  }
+
+  private static long mixK2(long k2) {
+    k2 *= C2_128;
+    k2 = Long.rotateLeft(k2, 33);
+    k2 *= C1_128;
+    return k2;
+  }
+
+  /**
+   * Mixes the trailing (partial) block into the state and returns the first 64 bits of the
+   * finalized 128-bit hash.
+   */
+  private static long finish128(long h1, long h2, long k1, long k2, int length) {
+    h1 ^= mixK1(k1);
+    h2 ^= mixK2(k2);
+
+    h1 ^= length;
+    h2 ^= length;
+
+    h1 += h2;
+    h2 += h1;
+
+    h1 = fmix64(h1);
+    h2 = fmix64(h2);
+
+    return h1 + h2;
+  }
+
+  /**
+   * Finalization mix of the 64-bit state. Also used by other hashers to spread 64-bit values.
+   */
+  static long fmix64(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+  private static int getIntLittleEndian(byte[] data, int offset) {
+    return (data[offset] & 0xff)
+        | (data[offset + 1] & 0xff) << 8
+        | (data[offset + 2] & 0xff) << 16
+        | (data[offset + 3] & 0xff) << 24;
+  }
+
+  private static long getLongLittleEndian(byte[] data, int offset) {
+    return (getIntLittleEndian(data, offset) & 0xffffffffL)
+        | (long) getIntLittleEndian(data, offset + 4) << 32;
+  }
+
+  /*
+   * The encoders return the UTF-8 bytes packed into int in the little-endian order.
+   */
+
+  private static int encode2(char c) {
+    return (0xc0 | c >>> 6) | (0x80 | c & 0x3f) << 8;
+  }
+
+  private static int encode3(char c) {
+    return (0xe0 | c >>> 12) | (0x80 | c >>> 6 & 0x3f) << 8 | (0x80 | c & 0x3f) << 16;
+  }
+
+  private static int encode4(int codePoint) {
+    return (0xf0 | codePoint >>> 18)
+        | (0x80 | codePoint >>> 12 & 0x3f) << 8
+        | (0x80 | codePoint >>> 6 & 0x3f) << 16
+        | (0x80 | codePoint & 0x3f) << 24;
+  }
+}
@@ -16,59 +16,220 @@
 
 package ys.probabilistic.util;
 
-import java.nio.charset.StandardCharsets;
-
-import com.google.common.hash.Hashing;
-import com.google.common.hash.PrimitiveSink;
-
 /**
  * A factory of the collision-resistant {@link Hasher}s that are based on the {@code murmur3}
- * algorithm.
+ * algorithm. The hashers are stateless and don't allocate memory while hashing (see
+ * {@link Murmur3}).
  *
  * @author Yauheni Shahun
  */
 public final class MurmurHashers {
 
+  private static final Hasher<String> STRING_HASHER = new Hasher<String>() {
+    @Override
+    public int hash(String value) {
+      return Murmur3.hash32(value);
+    }
+  };
+
+  private static final Hasher<CharSequence> CHAR_SEQUENCE_HASHER = new Hasher<CharSequence>() {
+    @Override
+    public int hash(CharSequence value) {
+      return Murmur3.hash32(value);
+    }
+  };
+
+  private static final Hasher<Integer> INTEGER_HASHER = new IntegerHasher();
+
+  private static final Hasher<Long> LONG_HASHER = new LongValueHasher();
+
+  private static final Hasher<byte[]> BYTE_ARRAY_HASHER = new Hasher<byte[]>() {
+    @Override
+    public int hash(byte[] value) {
+      return Murmur3.hash32(value);
+    }
+  };
+
+  private static final Hasher64<String> STRING_HASHER_64 = new AbstractMurmurHasher64<String>() {
+    @Override
+    public long hash64(String value) {
+      return Murmur3.hash64(value);
+    }
+  };
+
+  private static final Hasher64<CharSequence> CHAR_SEQUENCE_HASHER_64 =
+      new AbstractMurmurHasher64<CharSequence>() {
+        @Override
+        public long hash64(CharSequence value) {
+          return Murmur3.hash64(value);
+        }
+      };
+
+  private static final Hasher64<Integer> INTEGER_HASHER_64 = new IntegerHasher64();
+
+  private static final Hasher64<Long> LONG_HASHER_64 = new LongValueHasher64();
+
+  private static final Hasher64<byte[]> BYTE_ARRAY_HASHER_64 =
+      new AbstractMurmurHasher64<byte[]>() {
+        @Override
+        public long hash64(byte[] value) {
+          return Murmur3.hash64(value);
+        }
+      };
+
   private MurmurHashers() {}
 
   /**
-   * An abstract {@link Hasher} that uses {@code murmur3}.
+   * An abstract {@link Hasher64} that uses {@code murmur3_128} and derives the 32-bit hash code
+   * from the 64-bit one.
    */
-  private static abstract class AbstractMurmurHasher<T> implements Hasher<T> {
+  private static abstract class AbstractMurmurHasher64<T> implements Hasher64<T> {
     @Override
     public int hash(T value) {
-      com.google.common.hash.Hasher hasher = Hashing.murmur3_32().newHasher();
-      put(value, hasher);
-      return hasher.hash().asInt();
+      return (int) hash64(value);
     }
+  }
 
-    /**
-     * Puts the value into the {@link PrimitiveSink} as the underlying primitive(s).
-     */
-    protected abstract void put(T value, PrimitiveSink sink);
+  /**
+   * A hasher of the {@code int} values that uses {@code murmur3_32}.
+   */
+  private static final class IntegerHasher implements Hasher<Integer>, IntHasher {
+    @Override
+    public int hash(Integer value) {
+      return Murmur3.hash32(value.intValue());
+    }
+
+    @Override
+    public int hash(int value) {
+      return Murmur3.hash32(value);
+    }
+  }
+
+  /**
+   * A hasher of the {@code long} values that uses {@code murmur3_32}.
+   */
+  private static final class LongValueHasher implements Hasher<Long>, LongHasher {
+    @Override
+    public int hash(Long value) {
+      return Murmur3.hash32(value.longValue());
+    }
+
+    @Override
+    public int hash(long value) {
+      return Murmur3.hash32(value);
+    }
+  }
+
+  /**
+   * A hasher of the {@code int} values that uses {@code murmur3_128}.
+   */
+  private static final class IntegerHasher64 extends AbstractMurmurHasher64<Integer>
+      implements IntHasher64 {
+    @Override
+    public long hash64(Integer value) {
+      return Murmur3.hash64(value.intValue());
+    }
+
+    @Override
+    public long hash64(int value) {
+      return Murmur3.hash64(value);
+    }
+
+    @Override
+    public int hash(int value) {
+      return (int) Murmur3.hash64(value);
+    }
+  }
+
+  /**
+   * A hasher of the {@code long} values that uses {@code murmur3_128}.
+   */
+  private static final class LongValueHasher64 extends AbstractMurmurHasher64<Long>
+      implements LongHasher64 {
+    @Override
+    public long hash64(Long value) {
+      return Murmur3.hash64(value.longValue());
+    }
+
+    @Override
+    public long hash64(long value) {
+      return Murmur3.hash64(value);
+    }
+
+    @Override
+    public int hash(long value) {
+      return (int) Murmur3.hash64(value);
+    }
   }
 
   /**
    * Returns a hasher for string values.
    */
   public static Hasher<String> stringHasher() {
-    return new AbstractMurmurHasher<String>() {
-      @Override
-      protected void put(String value, PrimitiveSink sink) {
-        sink.putString(value, StandardCharsets.UTF_8);
-      }
-    };
+    return STRING_HASHER;
+  }
+
+  /**
+   * Returns a hasher for character sequences. It's compatible with {@link #stringHasher()}.
+   */
+  public static Hasher<CharSequence> charSequenceHasher() {
+    return CHAR_SEQUENCE_HASHER;
   }
 
   /**
-   * Returns a hasher for integer values.
+   * Returns a hasher for integer values. It also implements {@link IntHasher}.
    */
   public static Hasher<Integer> integerHasher() {
-    return new AbstractMurmurHasher<Integer>() {
-      @Override
-      protected void put(Integer value, PrimitiveSink sink) {
-        sink.putInt(value);
-      }
-    };
+    return INTEGER_HASHER;
+  }
+
+  /**
+   * Returns a hasher for long values. It also implements {@link LongHasher}.
+   */
+  public static Hasher<Long> longHasher() {
+    return LONG_HASHER;
+  }
+
+  /**
+   * Returns a hasher for byte arrays.
+   */
+  public static Hasher<byte[]> byteArrayHasher() {
+    return BYTE_ARRAY_HASHER;
+  }
+
+  /**
+   * Returns a 64-bit hasher for string values.
+   */
+  public static Hasher64<String> stringHasher64() {
+    return STRING_HASHER_64;
+  }
+
+  /**
+   * Returns a 64-bit hasher for character sequences. It's compatible with
+   * {@link #stringHasher64()}.
+   */
+  public static Hasher64<CharSequence> charSequenceHasher64() {
+    return CHAR_SEQUENCE_HASHER_64;
+  }
+
+  /**
+   * Returns a 64-bit hasher for integer values. It also implements {@link IntHasher64}.
+   */
+  public static Hasher64<Integer> integerHasher64() {
+    return INTEGER_HASHER_64;
+  }
+
+  /**
+   * Returns a 64-bit hasher for long values. It also implements {@link LongHasher64}.
+   */
+  public static Hasher64<Long> longHasher64() {
+    return LONG_HASHER_64;
+  }
+
+  /**
+   * Returns a 64-bit hasher for byte arrays.
+   */
+  public static Hasher64<byte[]> byteArrayHasher64() {
+    return BYTE_ARRAY_HASHER_64;
   }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A phantom reference to the owner of a native memory block, which releases the memory if the owner
+ * becomes unreachable without having released it. The unreachable owners are polled whenever a new
+ * block is allocated, so no extra thread is needed. It's only a safety net: the memory may be kept
+ * long after its owner is gone, so the owners should still be closed explicitly.
+ *
+ * @author Yauheni Shahun
+ */
+final class NativeMemoryReference extends PhantomReference<Object> {
+
+  private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+  /**
+   * The references to the owners that haven't released their memory yet. The references must be
+   * reachable themselves to be enqueued.
+   */
+  private static final Set<NativeMemoryReference> REFERENCES =
+      Collections.newSetFromMap(new ConcurrentHashMap<NativeMemoryReference, Boolean>());
+
+  private final AtomicLong address;
+
+  private NativeMemoryReference(Object owner, long address) {
+    super(owner, QUEUE);
+    this.address = new AtomicLong(address);
+  }
+
+  /**
+   * Allocates a native memory block of the given size for the owner and releases the blocks of the
+   * unreachable owners.
+   *
+   * @param owner the object whose reachability guards the block
+   * @param byteCount the size of the block in bytes
+   * @return a reference that holds the address of the allocated block
+   * @throws UnsupportedOperationException if the platform doesn't support the native memory access
+   */
+  static NativeMemoryReference allocate(Object owner, long byteCount) {
+    expunge();
+
+    NativeMemoryReference reference =
+        new NativeMemoryReference(owner, UnsafeAccess.getUnsafe().allocateMemory(byteCount));
+    REFERENCES.add(reference);
+    return reference;
+  }
+
+  /**
+   * Releases the blocks of the unreachable owners.
+   */
+  static void expunge() {
+    Reference<?> reference;
+    while ((reference = QUEUE.poll()) != null) {
+      ((NativeMemoryReference) reference).release();
+    }
+  }
+
+  /**
+   * Returns the address of the block or 0 if it has been released.
+   */
+  long getAddress() {
+    return address.get();
+  }
+
+  /**
+   * Releases the block. Subsequent calls have no effect.
+   */
+  void release() {
+    long address = this.address.getAndSet(0);
+    if (address != 0) {
+      REFERENCES.remove(this);
+      clear();
+      UnsafeAccess.getUnsafe().freeMemory(address);
+    }
+  }
+}
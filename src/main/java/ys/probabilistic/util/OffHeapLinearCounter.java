@@ -0,0 +1,227 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+import java.io.Closeable;
+
+import sun.misc.Unsafe;
+
+/**
+ * An implementation of {@link LinearCounter} that keeps the bitmap in the native (off-heap) memory.
+ * It doesn't add to the heap size and GC marking time, so it suits applications that keep many
+ * counters alive. Like {@link WriteConcurrentLinearCounter} it's lock-free for writers and isn't
+ * thread-safe for reading. The bitmaps of both counters are compatible.
+ *
+ * <p>The native memory must be released explicitly by calling {@link #close()}. The counter must
+ * not be used (including by writers) after it has been closed. As a safety net, the memory of a
+ * counter that becomes unreachable without being closed is released when another off-heap counter
+ * is allocated.
+ *
+ * @param <T> the type of values being counted
+ *
+ * @author Yauheni Shahun
+ */
+public class OffHeapLinearCounter<T> extends AbstractLinearCounter<T> implements Closeable {
+
+  private static final int BLOCK_BYTES = BLOCK_SIZE / Byte.SIZE;
+
+  private final Unsafe unsafe = UnsafeAccess.getUnsafe();
+
+  private final int size;
+  private final int blockCount;
+  private final long byteCount;
+  private final NativeMemoryReference memory;
+
+  private volatile long address;
+
+  /**
+   * Constructs a linear counter of the given size and allocates the native memory for it.
+   *
+   * @param size the number of bits in the bitmap
+   * @param hasher the hash function used to map the values
+   * @throws UnsupportedOperationException if the platform doesn't support the native memory access
+   */
+  public OffHeapLinearCounter(int size, Hasher<T> hasher) {
+    super(hasher);
+    this.size = size;
+    this.blockCount = CountUtil.getBlockCount(size);
+    this.byteCount = (long) blockCount * BLOCK_BYTES;
+
+    this.memory = NativeMemoryReference.allocate(this, byteCount);
+    long address = memory.getAddress();
+    unsafe.setMemory(address, byteCount, (byte) 0);
+    this.address = address;
+  }
+
+  @Override
+  public void countHash(int hash) {
+    int index = CountUtil.getBitIndex(hash, size);
+    setBits(getAddress(), index / BLOCK_SIZE, 1 << (index % BLOCK_SIZE));
+  }
+
+  /**
+   * Counts the hash codes updating each touched block once.
+   */
+  @Override
+  public void countHashes(int[] hashes, int offset, int length) {
+    long address = getAddress();
+    CountUtil.BatchBuffer buffer = CountUtil.getBatchBuffer();
+    int[] blockIndexes = buffer.blockIndexes;
+    int[] masks = buffer.masks;
+    for (int start = offset, end = offset + length; start < end; start += CountUtil.BATCH_SIZE) {
+      int blockCount = CountUtil.groupByBlock(hashes, start,
+          Math.min(CountUtil.BATCH_SIZE, end - start), size, blockIndexes, masks);
+      for (int i = 0; i < blockCount; i++) {
+        setBits(address, blockIndexes[i], masks[i]);
+      }
+    }
+  }
+
+  private void setBits(long address, int blockIndex, int mask) {
+    long blockAddress = address + (long) blockIndex * BLOCK_BYTES;
+    int oldBlock;
+    int newBlock;
+    do {
+      oldBlock = unsafe.getIntVolatile(null, blockAddress);
+      newBlock = oldBlock | mask;
+    } while (oldBlock != newBlock
+        && !unsafe.compareAndSwapInt(null, blockAddress, oldBlock, newBlock));
+  }
+
+  @Override
+  public double getCardinality() {
+    return CountUtil.calculateCardinality(size, getOneBitCount());
+  }
+
+  /**
+   * Returns the fraction of 1s bits in the bitmap.
+   */
+  @Override
+  public double getFillRatio() {
+    return getOneBitCount() / (double) size;
+  }
+
+  private int getOneBitCount() {
+    long address = getAddress();
+
+    int oneBitCount = 0;
+    for (int i = 0; i < blockCount; i++) {
+      oneBitCount += Integer.bitCount(unsafe.getInt(address + (long) i * BLOCK_BYTES));
+    }
+    return oneBitCount;
+  }
+
+  @Override
+  public void clear() {
+    unsafe.setMemory(getAddress(), byteCount, (byte) 0);
+  }
+
+  /**
+   * Returns an on-heap copy of the bitmap.
+   */
+  @Override
+  public int[] getBitmap() {
+    int[] copy = new int[blockCount];
+    unsafe.copyMemory(null, getAddress(), copy, UnsafeAccess.INT_ARRAY_BASE_OFFSET, byteCount);
+    return copy;
+  }
+
+  @Override
+  public void mergeTo(int[] otherBitmap) {
+    if (otherBitmap.length != blockCount) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+
+    long address = getAddress();
+    for (int i = 0; i < otherBitmap.length; i++) {
+      otherBitmap[i] |= unsafe.getInt(address + (long) i * BLOCK_BYTES);
+    }
+  }
+
+  /**
+   * Merges the given bitmap into the off-heap bitmap. It's lock-free and can be done concurrently
+   * with counting.
+   */
+  @Override
+  public void mergeFrom(int[] otherBitmap) {
+    if (otherBitmap.length != blockCount) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+
+    long address = getAddress();
+    for (int i = 0; i < otherBitmap.length; i++) {
+      setBits(address, i, otherBitmap[i]);
+    }
+  }
+
+  /**
+   * Merges the bitmap into the bitmap of the other off-heap counter without copying it to the heap.
+   * The other counter must not be updated concurrently.
+   */
+  public void mergeTo(OffHeapLinearCounter<?> other) {
+    if (other.blockCount != blockCount) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+
+    long address = getAddress();
+    long otherAddress = other.getAddress();
+    for (int i = 0; i < blockCount; i++) {
+      long offset = (long) i * BLOCK_BYTES;
+      unsafe.putInt(otherAddress + offset,
+          unsafe.getInt(otherAddress + offset) | unsafe.getInt(address + offset));
+    }
+  }
+
+  /**
+   * Copies the bitmap over the bitmap of the other off-heap counter without copying it to the
+   * heap. The other counter must not be updated concurrently.
+   */
+  public void copyTo(OffHeapLinearCounter<?> other) {
+    if (other.blockCount != blockCount) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+
+    unsafe.copyMemory(getAddress(), other.getAddress(), byteCount);
+  }
+
+  /**
+   * Releases the native memory. Subsequent calls have no effect. The caller must make sure that no
+   * writer is counting concurrently (e.g. the meters drain the writers by flipping the phase of
+   * their {@code WriterReaderPhaser}), because a writer that has already read the address would
+   * access the released memory.
+   */
+  @Override
+  public synchronized void close() {
+    address = 0;
+    memory.release();
+  }
+
+  /**
+   * Returns the reference that releases the native memory if the counter isn't closed.
+   */
+  NativeMemoryReference getMemory() {
+    return memory;
+  }
+
+  private long getAddress() {
+    long address = this.address;
+    if (address == 0) {
+      throw new IllegalStateException("Counter is closed");
+    }
+    return address;
+  }
+}
@@ -17,16 +17,28 @@
 package ys.probabilistic.util;
 
 /**
- * A {@link Hasher} that is based on the standard {@link Object#hashCode()} implementation.
+ * A {@link Hasher} that is based on the standard {@link Object#hashCode()} implementation. The
+ * primitive values are hashed the same way as their wrappers ({@link Integer#hashCode()} and
+ * {@link Long#hashCode()}).
  *
  * @param <T> the type of values whose hash codes are calculated
  *
  * @author Yauheni Shahun
  */
-public class SimpleHasher<T> implements Hasher<T> {
+public class SimpleHasher<T> implements Hasher<T>, IntHasher, LongHasher {
 
   @Override
   public int hash(T value) {
     return value.hashCode();
   }
+
+  @Override
+  public int hash(int value) {
+    return value;
+  }
+
+  @Override
+  public int hash(long value) {
+    return (int) (value ^ (value >>> 32));
+  }
 }
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An implementation of the Space-Saving algorithm that finds the most frequent values (heavy
+ * hitters) in a bounded memory. It monitors a fixed number of values: when a new value arrives and
+ * there is no room, it replaces the value with the minimum count and inherits that count as the
+ * error. So each monitored value has the count that overestimates its true frequency by at most its
+ * error, and any value whose frequency is greater than {@code totalCount / capacity} is monitored.
+ *
+ * <p>To make writing concurrent, the values are partitioned by their hash codes between the
+ * independent stripes, each guarded by its own lock and holding an equal part of the capacity.
+ * Since a value always goes to the same stripe, the guarantees hold for each stripe (with the total
+ * count and the capacity of the stripe). Within a stripe, the monitored values are kept in an
+ * indexed min-heap, so an update takes {@code O(log capacity)}.
+ *
+ * @param <T> the type of values being counted
+ *
+ * @author Yauheni Shahun
+ */
+public class SpaceSaving<T> {
+
+  private static final Comparator<Item<?>> BY_COUNT_DESCENDING = new Comparator<Item<?>>() {
+    @Override
+    public int compare(Item<?> item1, Item<?> item2) {
+      return Long.compare(item2.getCount(), item1.getCount());
+    }
+  };
+
+  private final Hasher<T> hasher;
+  private final Stripe<T>[] stripes;
+
+  /**
+   * Constructs a structure with the number of stripes equal to the number of the available
+   * processors.
+   *
+   * @param capacity the total number of the monitored values
+   * @param hasher the hash function used to distribute the values between the stripes
+   */
+  public SpaceSaving(int capacity, Hasher<T> hasher) {
+    this(capacity, Runtime.getRuntime().availableProcessors(), hasher);
+  }
+
+  /**
+   * Constructs a structure.
+   *
+   * @param capacity the total number of the monitored values
+   * @param stripeCount the number of the independently locked stripes
+   * @param hasher the hash function used to distribute the values between the stripes
+   */
+  public SpaceSaving(int capacity, int stripeCount, Hasher<T> hasher) {
+    if (capacity <= 0 || stripeCount <= 0) {
+      throw new IllegalArgumentException("Capacity and stripe count must be positive");
+    }
+
+    this.hasher = hasher;
+    this.stripes = newStripes(Math.min(stripeCount, capacity));
+    int stripeCapacity = (capacity + stripes.length - 1) / stripes.length;
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new Stripe<>(stripeCapacity);
+    }
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static <T> Stripe<T>[] newStripes(int length) {
+    return new Stripe[length];
+  }
+
+  /**
+   * Counts the value once.
+   */
+  public void count(T value) {
+    count(value, 1);
+  }
+
+  /**
+   * Counts the value the given number of times.
+   */
+  public void count(T value, long count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("Count must not be negative");
+    }
+
+    Stripe<T> stripe = stripes[CountUtil.reduce(hasher.hash(value), stripes.length)];
+    synchronized (stripe) {
+      stripe.offer(value, count);
+    }
+  }
+
+  /**
+   * Returns the most frequent values in the descending order of their counts.
+   *
+   * @param k the maximum number of values to return
+   */
+  public List<Item<T>> getTopK(int k) {
+    List<Item<T>> items = new ArrayList<>();
+    for (Stripe<T> stripe : stripes) {
+      synchronized (stripe) {
+        stripe.addItemsTo(items);
+      }
+    }
+    Collections.sort(items, BY_COUNT_DESCENDING);
+    return items.size() > k ? new ArrayList<>(items.subList(0, k)) : items;
+  }
+
+  /**
+   * Returns the total count of the values.
+   */
+  public long getTotalCount() {
+    long totalCount = 0;
+    for (Stripe<T> stripe : stripes) {
+      synchronized (stripe) {
+        totalCount += stripe.totalCount;
+      }
+    }
+    return totalCount;
+  }
+
+  /**
+   * Resets the structure.
+   */
+  public void clear() {
+    for (Stripe<T> stripe : stripes) {
+      synchronized (stripe) {
+        stripe.clear();
+      }
+    }
+  }
+
+  /**
+   * A monitored value with its estimated frequency.
+   *
+   * @param <T> the type of the value
+   */
+  public static final class Item<T> {
+    private final T value;
+    private final long count;
+    private final long error;
+
+    Item(T value, long count, long error) {
+      this.value = value;
+      this.count = count;
+      this.error = error;
+    }
+
+    /**
+     * Returns the value.
+     */
+    public T getValue() {
+      return value;
+    }
+
+    /**
+     * Returns the upper bound of the frequency of the value.
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * Returns the maximum overestimation of the frequency of the value.
+     */
+    public long getError() {
+      return error;
+    }
+
+    /**
+     * Returns the lower bound of the frequency of the value.
+     */
+    public long getLowerBound() {
+      return count - error;
+    }
+
+    @Override
+    public String toString() {
+      return value + "=" + count + " (error " + error + ")";
+    }
+  }
+
+  /**
+   * A Space-Saving summary of a part of the values. The monitored values are kept in a min-heap by
+   * their counts, and the map holds their positions in the heap.
+   */
+  private static final class Stripe<T> {
+    private final Object[] values;
+    private final long[] counts;
+    private final long[] errors;
+    private final Map<T, Integer> positions;
+    private int size;
+    private long totalCount;
+
+    Stripe(int capacity) {
+      this.values = new Object[capacity];
+      this.counts = new long[capacity];
+      this.errors = new long[capacity];
+      this.positions = new HashMap<>(capacity * 2);
+    }
+
+    void offer(T value, long count) {
+      totalCount += count;
+
+      Integer position = positions.get(value);
+      if (position != null) {
+        counts[position] += count;
+        siftDown(position);
+      } else if (size < values.length) {
+        set(size, value, count, 0);
+        siftUp(size++);
+      } else {
+        // Replaces the value with the minimum count.
+        positions.remove(values[0]);
+        long min = counts[0];
+        set(0, value, min + count, min);
+        siftDown(0);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    void addItemsTo(List<Item<T>> items) {
+      for (int i = 0; i < size; i++) {
+        items.add(new Item<>((T) values[i], counts[i], errors[i]));
+      }
+    }
+
+    void clear() {
+      for (int i = 0; i < size; i++) {
+        values[i] = null;
+      }
+      positions.clear();
+      size = 0;
+      totalCount = 0;
+    }
+
+    private void set(int position, T value, long count, long error) {
+      values[position] = value;
+      counts[position] = count;
+      errors[position] = error;
+      positions.put(value, position);
+    }
+
+    private void siftUp(int position) {
+      while (position > 0) {
+        int parent = (position - 1) >>> 1;
+        if (counts[parent] <= counts[position]) {
+          break;
+        }
+        swap(position, parent);
+        position = parent;
+      }
+    }
+
+    private void siftDown(int position) {
+      for (;;) {
+        int child = 2 * position + 1;
+        if (child >= size) {
+          break;
+        }
+        if (child + 1 < size && counts[child + 1] < counts[child]) {
+          child++;
+        }
+        if (counts[position] <= counts[child]) {
+          break;
+        }
+        swap(position, child);
+        position = child;
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void swap(int position1, int position2) {
+      Object value = values[position1];
+      long count = counts[position1];
+      long error = errors[position1];
+      values[position1] = values[position2];
+      counts[position1] = counts[position2];
+      errors[position1] = errors[position2];
+      values[position2] = value;
+      counts[position2] = count;
+      errors[position2] = error;
+      positions.put((T) values[position1], position1);
+      positions.put((T) value, position2);
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A sum that is updated by many threads without contention. Each thread adds to the cell chosen by
+ * its id, and the cells are kept on separate cache lines. It's a simplified analog of
+ * {@code LongAdder} that isn't available in Java 7.
+ *
+ * @author Yauheni Shahun
+ */
+final class StripedAdder {
+
+  /**
+   * Distance between the cells in {@code long}s (128 bytes).
+   */
+  private static final int PADDING = 16;
+
+  private final int cellMask;
+  private final AtomicLongArray cells;
+
+  /**
+   * Constructs an adder with the number of cells equal to the number of the available processors
+   * (rounded up to the power of two).
+   */
+  StripedAdder() {
+    int cellCount = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() - 1) << 1;
+    this.cellMask = Math.max(cellCount, 1) - 1;
+    this.cells = new AtomicLongArray((cellMask + 2) * PADDING);
+  }
+
+  /**
+   * Adds the given value to the sum.
+   */
+  void add(long value) {
+    cells.getAndAdd((threadHash() & cellMask) * PADDING + PADDING, value);
+  }
+
+  /**
+   * Returns the sum. It isn't an atomic snapshot if the sum is updated concurrently.
+   */
+  long sum() {
+    long sum = 0;
+    for (int i = 0; i <= cellMask; i++) {
+      sum += cells.get(i * PADDING + PADDING);
+    }
+    return sum;
+  }
+
+  /**
+   * Resets the sum to zero. It must not be called concurrently with adding.
+   */
+  void reset() {
+    for (int i = 0; i <= cellMask; i++) {
+      cells.set(i * PADDING + PADDING, 0L);
+    }
+  }
+
+  /**
+   * Returns the spread hash code of the current thread's id.
+   */
+  static int threadHash() {
+    long id = Thread.currentThread().getId();
+    int h = (int) (id ^ (id >>> 32)) * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+}
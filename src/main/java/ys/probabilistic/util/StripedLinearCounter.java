@@ -0,0 +1,211 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * An implementation of {@link LinearCounter} that is lock-free for writers and spreads them over
+ * several independent bitmaps (stripes) to reduce contention and false sharing under many writer
+ * threads. Each thread writes to the stripe chosen by its id. The stripes are OR-merged on reading,
+ * so the counter is compatible with {@link WriteConcurrentLinearCounter} of the same size and
+ * hasher. As well as the latter, it's not thread-safe for reading.
+ *
+ * <p>The counter consumes as many times more memory as there are stripes.
+ *
+ * @param <T> the type of values being counted
+ *
+ * @author Yauheni Shahun
+ */
+public class StripedLinearCounter<T> extends AbstractLinearCounter<T> {
+
+  /**
+   * Number of {@code int} blocks that pad each stripe on both sides (128 bytes) to keep stripes on
+   * separate cache lines.
+   */
+  private static final int PADDING = 32;
+
+  private final int size;
+  private final int blockCount;
+  private final int stripeMask;
+  private final AtomicIntegerArray[] stripes;
+
+  /**
+   * Constructs a striped linear counter with the number of stripes equal to the number of the
+   * available processors.
+   *
+   * @param size the number of bits in the bitmap
+   * @param hasher the hash function used to map the values
+   */
+  public StripedLinearCounter(int size, Hasher<T> hasher) {
+    this(size, Runtime.getRuntime().availableProcessors(), hasher);
+  }
+
+  /**
+   * Constructs a striped linear counter.
+   *
+   * @param size the number of bits in the bitmap
+   * @param stripeCount the number of stripes (rounded up to the power of two)
+   * @param hasher the hash function used to map the values
+   */
+  public StripedLinearCounter(int size, int stripeCount, Hasher<T> hasher) {
+    super(hasher);
+    if (stripeCount <= 0 || stripeCount > 1 << 16) {
+      throw new IllegalArgumentException("Stripe count must be in range [1, 65536]");
+    }
+
+    this.size = size;
+    this.blockCount = CountUtil.getBlockCount(size);
+
+    int roundedStripeCount = Integer.highestOneBit(stripeCount - 1) << 1;
+    if (roundedStripeCount == 0) {
+      roundedStripeCount = 1;
+    }
+    this.stripeMask = roundedStripeCount - 1;
+    this.stripes = new AtomicIntegerArray[roundedStripeCount];
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new AtomicIntegerArray(blockCount + 2 * PADDING);
+    }
+  }
+
+  /**
+   * Returns the number of stripes.
+   */
+  public int getStripeCount() {
+    return stripes.length;
+  }
+
+  @Override
+  public void countHash(int hash) {
+    int index = CountUtil.getBitIndex(hash, size);
+    setBits(stripes[currentStripe()], index / BLOCK_SIZE, 1 << (index % BLOCK_SIZE));
+  }
+
+  /**
+   * Counts the hash codes updating each touched block of the current thread's stripe once.
+   */
+  @Override
+  public void countHashes(int[] hashes, int offset, int length) {
+    AtomicIntegerArray bitmap = stripes[currentStripe()];
+    CountUtil.BatchBuffer buffer = CountUtil.getBatchBuffer();
+    int[] blockIndexes = buffer.blockIndexes;
+    int[] masks = buffer.masks;
+    for (int start = offset, end = offset + length; start < end; start += CountUtil.BATCH_SIZE) {
+      int blockCount = CountUtil.groupByBlock(hashes, start,
+          Math.min(CountUtil.BATCH_SIZE, end - start), size, blockIndexes, masks);
+      for (int i = 0; i < blockCount; i++) {
+        setBits(bitmap, blockIndexes[i], masks[i]);
+      }
+    }
+  }
+
+  private static void setBits(AtomicIntegerArray bitmap, int blockIndex, int mask) {
+    int paddedIndex = blockIndex + PADDING;
+    int oldBlock;
+    int newBlock;
+    do {
+      oldBlock = bitmap.get(paddedIndex);
+      newBlock = oldBlock | mask;
+    } while (oldBlock != newBlock && !bitmap.compareAndSet(paddedIndex, oldBlock, newBlock));
+  }
+
+  @Override
+  public double getCardinality() {
+    return CountUtil.calculateCardinality(size, getOneBitCount());
+  }
+
+  /**
+   * Returns the fraction of 1s bits in the bitmap.
+   */
+  @Override
+  public double getFillRatio() {
+    return getOneBitCount() / (double) size;
+  }
+
+  private int getOneBitCount() {
+    int oneBitCount = 0;
+    for (int i = 0; i < blockCount; i++) {
+      oneBitCount += Integer.bitCount(getBlock(i));
+    }
+    return oneBitCount;
+  }
+
+  @Override
+  public void clear() {
+    for (AtomicIntegerArray bitmap : stripes) {
+      for (int i = 0; i < blockCount; i++) {
+        bitmap.set(i + PADDING, 0);
+      }
+    }
+  }
+
+  /**
+   * Returns the union of the stripes.
+   */
+  @Override
+  public int[] getBitmap() {
+    int[] copy = new int[blockCount];
+    for (int i = 0; i < copy.length; i++) {
+      copy[i] = getBlock(i);
+    }
+    return copy;
+  }
+
+  @Override
+  public void mergeTo(int[] otherBitmap) {
+    if (otherBitmap.length != blockCount) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+
+    for (int i = 0; i < otherBitmap.length; i++) {
+      otherBitmap[i] |= getBlock(i);
+    }
+  }
+
+  /**
+   * Merges the given bitmap into the first stripe. It's lock-free and can be done concurrently with
+   * counting.
+   */
+  @Override
+  public void mergeFrom(int[] otherBitmap) {
+    if (otherBitmap.length != blockCount) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+
+    for (int i = 0; i < otherBitmap.length; i++) {
+      setBits(stripes[0], i, otherBitmap[i]);
+    }
+  }
+
+  /**
+   * Returns the union of the given block across all the stripes.
+   */
+  private int getBlock(int blockIndex) {
+    int block = 0;
+    for (AtomicIntegerArray bitmap : stripes) {
+      block |= bitmap.get(blockIndex + PADDING);
+    }
+    return block;
+  }
+
+  /**
+   * Returns the index of the stripe assigned to the current thread.
+   */
+  private int currentStripe() {
+    return StripedAdder.threadHash() & stripeMask;
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 Yauheni Shahun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ys.probabilistic.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+import sun.misc.Unsafe;
+
+/**
+ * A holder of {@link Unsafe} that is used for atomic operations on the native memory.
+ *
+ * @author Yauheni Shahun
+ */
+final class UnsafeAccess {
+
+  /**
+   * The instance of {@link Unsafe} or {@code null} if it isn't available on the platform.
+   */
+  static final Unsafe UNSAFE;
+
+  /**
+   * Offset of the first element in {@code int[]}.
+   */
+  static final long INT_ARRAY_BASE_OFFSET;
+
+  /**
+   * Offset of the {@code address} field in {@link Buffer} or {@code -1} if it isn't available.
+   */
+  private static final long BUFFER_ADDRESS_OFFSET;
+  /**
+   * {@code Unsafe.invokeCleaner(ByteBuffer)} (Java 9+) or {@code null} if it isn't available.
+   */
+  private static final Method INVOKE_CLEANER;
+
+  static {
+    Unsafe unsafe;
+    try {
+      Field field = Unsafe.class.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      unsafe = (Unsafe) field.get(null);
+    } catch (Exception | LinkageError e) {
+      unsafe = null;
+    }
+
+    UNSAFE = unsafe;
+    INT_ARRAY_BASE_OFFSET = unsafe != null ? unsafe.arrayBaseOffset(int[].class) : 0;
+
+    long bufferAddressOffset;
+    try {
+      bufferAddressOffset = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+    } catch (Exception | LinkageError e) {
+      bufferAddressOffset = -1;
+    }
+    BUFFER_ADDRESS_OFFSET = bufferAddressOffset;
+
+    Method invokeCleaner;
+    try {
+      invokeCleaner = Unsafe.class.getMethod("invokeCleaner", ByteBuffer.class);
+    } catch (Exception | LinkageError e) {
+      invokeCleaner = null;
+    }
+    INVOKE_CLEANER = invokeCleaner;
+  }
+
+  private UnsafeAccess() {}
+
+  /**
+   * Returns the instance of {@link Unsafe}.
+   *
+   * @throws UnsupportedOperationException if {@link Unsafe} isn't available
+   */
+  static Unsafe getUnsafe() {
+    if (UNSAFE == null) {
+      throw new UnsupportedOperationException("sun.misc.Unsafe isn't available");
+    }
+    return UNSAFE;
+  }
+
+  /**
+   * Returns the native address of the given direct (or mapped) buffer.
+   *
+   * @throws UnsupportedOperationException if the address isn't accessible
+   */
+  static long getAddress(Buffer buffer) {
+    if (BUFFER_ADDRESS_OFFSET < 0 || !buffer.isDirect()) {
+      throw new UnsupportedOperationException("Buffer address isn't accessible");
+    }
+    return getUnsafe().getLong(buffer, BUFFER_ADDRESS_OFFSET);
+  }
+
+  /**
+   * Unmaps the given mapped buffer right away through its cleaner instead of waiting for it to be
+   * garbage collected. The buffer must not be accessed afterwards: the access would crash the JVM.
+   * If the platform doesn't allow to unmap the buffer, it's left to the garbage collector.
+   */
+  static void unmap(MappedByteBuffer buffer) {
+    try {
+      if (INVOKE_CLEANER != null) {
+        INVOKE_CLEANER.invoke(getUnsafe(), buffer);
+        return;
+      }
+
+      // Java 7 and 8: DirectByteBuffer.cleaner().clean().
+      Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      Object cleaner = cleanerMethod.invoke(buffer);
+      if (cleaner != null) {
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+      }
+    } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+      // The buffer is unmapped by the garbage collector.
+    }
+  }
+}
@@ -23,15 +23,23 @@ import java.util.concurrent.atomic.AtomicIntegerArray;
  * It's not thread-safe for reading though. It's supposed that reading occurs exclusively when
  * writing has finished.
  *
+ * <p>Optionally, the counter tracks the number of 1s bits as they get set, so
+ * {@link #getCardinality()} takes constant time instead of scanning the bitmap. It costs an extra
+ * contention-free addition per each bit flipped from 0 to 1 (but not per counted value).
+ *
+ * <p>If {@link Instrumentation#ENABLED instrumentation} is enabled, the counter also counts the
+ * failed CAS attempts, which show the contention between the writers.
+ *
  * @param <T> the type of values being counted
  *
  * @author Yauheni Shahun
  */
-public class WriteConcurrentLinearCounter<T> implements LinearCounter<T> {
+public class WriteConcurrentLinearCounter<T> extends AbstractLinearCounter<T> {
 
   private final int size;
-  private final Hasher<T> hasher;
   private final AtomicIntegerArray bitmap;
+  private final StripedAdder oneBitCount;
+  private final StripedAdder casRetryCount;
 
   /**
    * Constructs a linear counter of the given size.
@@ -40,43 +48,106 @@ public class WriteConcurrentLinearCounter<T> implements LinearCounter<T> {
    * @param hasher the hash function used to map the values
    */
   public WriteConcurrentLinearCounter(int size, Hasher<T> hasher) {
+    this(size, hasher, false);
+  }
+
+  /**
+   * Constructs a linear counter of the given size.
+   *
+   * @param size the number of bits in the bitmap
+   * @param hasher the hash function used to map the values
+   * @param trackOneBitCount whether to track the number of 1s bits incrementally
+   */
+  public WriteConcurrentLinearCounter(int size, Hasher<T> hasher, boolean trackOneBitCount) {
+    super(hasher);
     this.size = size;
-    this.hasher = hasher;
 
-    int blockCount = (int) (((long) size + BLOCK_SIZE - 1) / BLOCK_SIZE);
-    this.bitmap = new AtomicIntegerArray(blockCount);
+    this.bitmap = new AtomicIntegerArray(CountUtil.getBlockCount(size));
+    this.oneBitCount = trackOneBitCount ? new StripedAdder() : null;
+    this.casRetryCount = Instrumentation.ENABLED ? new StripedAdder() : null;
   }
 
   @Override
-  public void count(T value) {
-    if (value == null) {
-      throw new NullPointerException("Value is null");
-    }
-
-    int index = hasher.hash(value) % size;
-    // Get the absolute value.
-    int t = index >> 31;
-    index = (index ^ t) - t;
+  public void countHash(int hash) {
+    int index = CountUtil.getBitIndex(hash, size);
+    setBits(index / BLOCK_SIZE, 1 << (index % BLOCK_SIZE));
+  }
 
-    int blockIndex = index / BLOCK_SIZE;
-    int mask = 1 << (index % BLOCK_SIZE);
+  /**
+   * Counts the hash codes updating each touched block once.
+   */
+  @Override
+  public void countHashes(int[] hashes, int offset, int length) {
+    CountUtil.BatchBuffer buffer = CountUtil.getBatchBuffer();
+    int[] blockIndexes = buffer.blockIndexes;
+    int[] masks = buffer.masks;
+    for (int start = offset, end = offset + length; start < end; start += CountUtil.BATCH_SIZE) {
+      int blockCount = CountUtil.groupByBlock(hashes, start,
+          Math.min(CountUtil.BATCH_SIZE, end - start), size, blockIndexes, masks);
+      for (int i = 0; i < blockCount; i++) {
+        setBits(blockIndexes[i], masks[i]);
+      }
+    }
+  }
 
+  private void setBits(int blockIndex, int mask) {
     int oldBlock;
     int newBlock;
-    do {
+    for (;;) {
       oldBlock = bitmap.get(blockIndex);
       newBlock = oldBlock | mask;
-    } while (oldBlock != newBlock && !bitmap.compareAndSet(blockIndex, oldBlock, newBlock));
+      if (oldBlock == newBlock) {
+        return;
+      }
+      if (bitmap.compareAndSet(blockIndex, oldBlock, newBlock)) {
+        break;
+      }
+      if (Instrumentation.ENABLED) {
+        casRetryCount.add(1);
+      }
+    }
+
+    if (oneBitCount != null) {
+      oneBitCount.add(Integer.bitCount(newBlock ^ oldBlock));
+    }
   }
 
-  @Override
-  public double getCardinality() {
-    int oneBitCount = 0;
+  /**
+   * Returns the number of 1s bits in the bitmap. It takes constant time if the counter tracks the
+   * number of 1s bits. This can be used for detecting the saturation of the bitmap.
+   */
+  public int getOneBitCount() {
+    if (oneBitCount != null) {
+      return (int) oneBitCount.sum();
+    }
+
+    int count = 0;
     for (int i = 0; i < bitmap.length(); i++) {
-      oneBitCount += Integer.bitCount(bitmap.get(i));
+      count += Integer.bitCount(bitmap.get(i));
     }
+    return count;
+  }
 
-    return CountUtil.calculateCardinality(size, oneBitCount);
+  /**
+   * Returns the number of the failed CAS attempts since the counter was created or cleared. It's
+   * always 0 if instrumentation is disabled.
+   */
+  public long getCasRetryCount() {
+    return Instrumentation.ENABLED ? casRetryCount.sum() : 0;
+  }
+
+  /**
+   * Returns the fraction of 1s bits in the bitmap. It takes constant time if the counter tracks the
+   * number of 1s bits.
+   */
+  @Override
+  public double getFillRatio() {
+    return getOneBitCount() / (double) size;
+  }
+
+  @Override
+  public double getCardinality() {
+    return CountUtil.calculateCardinality(size, getOneBitCount());
   }
 
   @Override
@@ -84,6 +155,12 @@ public class WriteConcurrentLinearCounter<T> implements LinearCounter<T> {
     for (int i = 0; i < bitmap.length(); i++) {
       bitmap.set(i, 0);
     }
+    if (oneBitCount != null) {
+      oneBitCount.reset();
+    }
+    if (Instrumentation.ENABLED) {
+      casRetryCount.reset();
+    }
   }
 
   @Override
@@ -105,4 +182,19 @@ public class WriteConcurrentLinearCounter<T> implements LinearCounter<T> {
       otherBitmap[i] |= bitmap.get(i);
     }
   }
+
+  /**
+   * Merges the given bitmap into the internal bitmap. It's lock-free and can be done concurrently
+   * with counting.
+   */
+  @Override
+  public void mergeFrom(int[] otherBitmap) {
+    if (otherBitmap.length != bitmap.length()) {
+      throw new IllegalArgumentException("Bitmaps have different lengths.");
+    }
+
+    for (int i = 0; i < otherBitmap.length; i++) {
+      setBits(i, otherBitmap[i]);
+    }
+  }
 }
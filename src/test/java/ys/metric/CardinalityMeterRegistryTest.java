@@ -0,0 +1,139 @@
+package ys.metric;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ys.probabilistic.util.MurmurHashers;
+
+/**
+ * Tests for {@link CardinalityMeterRegistry}.
+ *
+ * @author Yauheni Shahun
+ */
+public class CardinalityMeterRegistryTest {
+  /*
+   * Number of bits for counting.
+   */
+  private static final int M = 8 * 1024 * 4;
+  /*
+   * Error of estimation as fraction of the count of distinct values.
+   */
+  private static final double ERROR = 0.07d;
+
+  private CardinalityMeterRegistry<String, String> registry;
+
+  @Before
+  public void setUp() {
+    registry = new CardinalityMeterRegistry<>(
+        new StringLinearCounterFactory(M, MurmurHashers.stringHasher()), 100, 2);
+  }
+
+  @Test
+  public void testGetCardinalities() {
+    observe("a", 100);
+    observe("b", 300);
+    assertEquals(2, registry.size());
+
+    Map<String, Double> cardinalities = registry.getCardinalities();
+    assertEquals(2, cardinalities.size());
+    assertEquals(100d, cardinalities.get("a"), 100 * ERROR);
+    assertEquals(300d, cardinalities.get("b"), 300 * ERROR);
+
+    observe("a", 50);
+    cardinalities = registry.getCardinalities();
+    assertEquals(50d, cardinalities.get("a"), 50 * ERROR);
+    assertEquals(0d, cardinalities.get("b"), 0d);
+  }
+
+  @Test
+  public void testGetCardinalities_idleKeys() {
+    observe("a", 100);
+    observe("b", 100);
+    registry.getCardinalities();
+
+    observe("a", 100);
+    registry.getCardinalities();
+    assertEquals(2, registry.size());
+
+    observe("a", 100);
+    Map<String, Double> cardinalities = registry.getCardinalities();
+    assertEquals(0d, cardinalities.get("b"), 0d);
+    assertEquals(1, registry.size());
+    assertFalse(registry.getCardinalities().containsKey("b"));
+  }
+
+  @Test
+  public void testCount_maxKeyCount() {
+    for (int i = 0; i < 50; i++) {
+      observe("old" + i, 10);
+    }
+    registry.getCardinalities();
+
+    for (int i = 0; i < 60; i++) {
+      observe("new" + i, 10);
+    }
+    assertTrue(registry.size() <= 100);
+
+    // The least recently used keys are evicted first.
+    Map<String, Double> cardinalities = registry.getCardinalities();
+    for (int i = 0; i < 60; i++) {
+      assertEquals(10d, cardinalities.get("new" + i), 10 * ERROR);
+    }
+  }
+
+  @Test
+  public void testCount_withMultipleWriters() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      futures.add(executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 1000; j++) {
+            registry.count("key" + j % 10, String.valueOf(j));
+          }
+        }
+      }));
+    }
+    executor.shutdown();
+
+    for (Future<?> future : futures) {
+      future.get();
+    }
+
+    Map<String, Double> cardinalities = registry.getCardinalities();
+    assertEquals(10, cardinalities.size());
+    for (double cardinality : cardinalities.values()) {
+      assertEquals(100d, cardinality, 100 * ERROR);
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testClose() throws Exception {
+    CardinalityMeterRegistry<String, String> offHeapRegistry = new CardinalityMeterRegistry<>(
+        new OffHeapLinearCounterFactory<>(M, MurmurHashers.stringHasher()), 100, 2);
+    offHeapRegistry.count("a", "foo");
+    offHeapRegistry.close();
+    assertEquals(0, offHeapRegistry.size());
+
+    offHeapRegistry.count("a", "bar");
+  }
+
+  private void observe(String key, int count) {
+    for (int i = 0; i < count; i++) {
+      registry.count(key, String.valueOf(i));
+      registry.count(key, String.valueOf(i));
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package ys.metric;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import ys.probabilistic.util.Instrumentation;
+import ys.probabilistic.util.MurmurHashers;
+
+/**
+ * Tests for {@link CardinalityMeterStats}.
+ *
+ * @author Yauheni Shahun
+ */
+public class CardinalityMeterStatsTest {
+  /*
+   * Number of bits for counting.
+   */
+  private static final int M = 8 * 1024 * 4;
+
+  private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+  private CardinalityMeter<String> meter;
+  private ObjectName name;
+
+  @Before
+  public void setUp() throws JMException {
+    meter = new CardinalityMeter<>(new StringLinearCounterFactory(M, MurmurHashers.stringHasher()));
+    name = CardinalityMeterStats.register("test", meter);
+  }
+
+  @After
+  public void tearDown() throws JMException {
+    server.unregisterMBean(name);
+  }
+
+  @Test
+  public void testAttributes() throws JMException {
+    for (int i = 0; i < 1000; i++) {
+      meter.count(String.valueOf(i));
+    }
+    double fillRatio = (Double) server.getAttribute(name, "FillRatio");
+    assertEquals(1000d / M, fillRatio, 1000d / M * 0.05);
+    assertEquals(0L, server.getAttribute(name, "CasRetryCount"));
+
+    meter.getCardinality();
+    meter.getSnapshot().close();
+    meter.getCardinality();
+    assertEquals(0, server.getAttribute(name, "OpenSnapshotCount"));
+    assertEquals(3, server.getAttribute(name, "CreatedCounterCount"));
+  }
+
+  @Test
+  public void testLatencyAttributes() throws JMException {
+    // The latencies are recorded only if the instrumentation is enabled (see the build).
+    Assume.assumeTrue(Instrumentation.ENABLED);
+
+    meter.getCardinality();
+    meter.getSnapshot().close();
+    assertEquals(2L, server.getAttribute(name, "ReadCount"));
+    assertTrue((Long) server.getAttribute(name, "ReadLatencyMax") > 0);
+    assertTrue((Long) server.getAttribute(name, "ClearLatencyMax") > 0);
+
+    // The recycled interval histograms don't lose or repeat the latencies.
+    meter.getCardinality();
+    assertEquals(3L, server.getAttribute(name, "ReadCount"));
+    meter.getCardinality();
+    assertEquals(4L, server.getAttribute(name, "ReadCount"));
+  }
+
+  @Test
+  public void testLatencyAttributes_instrumentationDisabled() throws JMException {
+    // The stats don't poll the meter for the latencies that it doesn't record.
+    Assume.assumeFalse(Instrumentation.ENABLED);
+
+    meter.getCardinality();
+    meter.getSnapshot().close();
+    assertEquals(0L, server.getAttribute(name, "ReadCount"));
+    assertEquals(0L, server.getAttribute(name, "ReadLatencyMax"));
+    assertEquals(0L, server.getAttribute(name, "ClearLatencyMax"));
+    assertEquals(0L, server.getAttribute(name, "CasRetryCount"));
+  }
+}
@@ -1,15 +1,22 @@
 package ys.metric;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
+import ys.probabilistic.util.Instrumentation;
+import ys.probabilistic.util.LinearCounter;
 import ys.probabilistic.util.MurmurHashers;
+import ys.probabilistic.util.WriteConcurrentLinearCounter;
 
 /**
  * Tests for {@link CardinalityMeter}.
@@ -56,6 +63,149 @@ public class CardinalityMeterTest {
     assertEquals(450d, meter.getCounter().getCardinality(), 450 * ERROR);
   }
 
+  @Test
+  public void testCount_int() {
+    CardinalityMeter<Integer> intMeter =
+        new CardinalityMeter<>(new LinearCounterFactory<Integer>() {
+          @Override
+          public LinearCounter<Integer> create() {
+            return new WriteConcurrentLinearCounter<>(M, MurmurHashers.integerHasher());
+          }
+        });
+
+    for (int i = 0; i < 1000; i++) {
+      intMeter.countInt(i % 250);
+    }
+    assertEquals(250d, intMeter.getCardinality(), 250 * ERROR);
+  }
+
+  @Test
+  public void testGetCardinality_hyperLogLog() {
+    meter = new CardinalityMeter<>(new HyperLogLogFactory<>(12, MurmurHashers.stringHasher64()));
+
+    observe(100000, 20000);
+    assertEquals(20000d, meter.getCardinality(), 20000 * ERROR);
+    assertEquals(0d, meter.getCardinality(), 0d);
+  }
+
+  @Test
+  public void testCount_batch() {
+    meter.count(generateData(5000, 1000));
+    meter.count(generateData(1000, 500).toArray(new String[0]));
+    assertEquals(1500d, meter.getCardinality(), 1500 * ERROR);
+  }
+
+  @Test
+  public void testGetCardinality_clearExecutor() {
+    final List<Runnable> tasks = new ArrayList<>();
+    meter = new CardinalityMeter<>(new StringLinearCounterFactory(M, MurmurHashers.stringHasher()),
+        CardinalityMeter.DEFAULT_POOL_SIZE, new Executor() {
+          @Override
+          public void execute(Runnable command) {
+            tasks.add(command);
+          }
+        });
+
+    observe(5000, 1000);
+    assertEquals(1000d, meter.getCardinality(), 1000 * ERROR);
+    assertEquals(1, tasks.size());
+
+    tasks.remove(0).run();
+    observe(3000, 2000);
+    assertEquals(2000d, meter.getCardinality(), 2000 * ERROR);
+    tasks.remove(0).run();
+    assertEquals(0d, meter.getCardinality(), 0d);
+  }
+
+  @Test
+  public void testLatencyHistograms_instrumentationDisabled() {
+    // The latencies are recorded only if the instrumentation is enabled (see the build).
+    Assume.assumeFalse(Instrumentation.ENABLED);
+
+    observe(5000, 1000);
+    meter.getCardinality();
+    meter.getSnapshot().close();
+
+    assertNull(meter.getReadLatencyHistogram());
+    assertNull(meter.getClearLatencyHistogram());
+    assertNull(meter.getReadLatencyHistogram(null));
+    assertNull(meter.getClearLatencyHistogram(null));
+    assertEquals(0, meter.getCasRetryCount());
+  }
+
+  @Test
+  public void testGetSnapshot() {
+    observe(5000, 1000);
+    LinearCounter<String> counter;
+    try (CardinalityMeter<String>.Snapshot snapshot = meter.getSnapshot()) {
+      counter = snapshot.getCounter();
+      assertEquals(1000d, snapshot.getCardinality(), 1000 * ERROR);
+      assertEquals(1, meter.getOpenSnapshotCount());
+    }
+    assertEquals(0, meter.getOpenSnapshotCount());
+    assertEquals(1, meter.getPooledCounterCount());
+    assertEquals(0d, counter.getCardinality(), 0d);
+
+    // The released counter waits in the pool, then in the inactive slot before it's active again.
+    meter.getSnapshot().close();
+    meter.getSnapshot().close();
+    observe(3000, 2000);
+    try (CardinalityMeter<String>.Snapshot snapshot = meter.getSnapshot()) {
+      assertSame(counter, snapshot.getCounter());
+      assertEquals(2000d, snapshot.getCardinality(), 2000 * ERROR);
+    }
+    assertEquals(3, meter.getCreatedCounterCount());
+  }
+
+  @Test
+  public void testGetSnapshot_poolIsBounded() {
+    List<CardinalityMeter<String>.Snapshot> snapshots = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      snapshots.add(meter.getSnapshot());
+    }
+    assertEquals(5, meter.getOpenSnapshotCount());
+
+    for (CardinalityMeter<String>.Snapshot snapshot : snapshots) {
+      snapshot.close();
+      snapshot.close();
+    }
+    assertEquals(0, meter.getOpenSnapshotCount());
+    assertEquals(CardinalityMeter.DEFAULT_POOL_SIZE, meter.getPooledCounterCount());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testGetSnapshot_closed() {
+    CardinalityMeter<String>.Snapshot snapshot = meter.getSnapshot();
+    snapshot.close();
+    snapshot.getCounter();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testClose() throws Exception {
+    CardinalityMeter<String> offHeapMeter = new CardinalityMeter<>(
+        new OffHeapLinearCounterFactory<>(M, MurmurHashers.stringHasher()));
+    offHeapMeter.count("foo");
+    offHeapMeter.close();
+    offHeapMeter.close();
+
+    offHeapMeter.count("bar");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testClose_openSnapshot() throws Exception {
+    CardinalityMeter<String> offHeapMeter = new CardinalityMeter<>(
+        new OffHeapLinearCounterFactory<>(M, MurmurHashers.stringHasher()));
+    CardinalityMeter<String>.Snapshot snapshot = offHeapMeter.getSnapshot();
+    LinearCounter<String> counter = snapshot.getCounter();
+    offHeapMeter.close();
+    snapshot.close();
+
+    assertEquals(0, offHeapMeter.getPooledCounterCount());
+
+    // The counter of the snapshot has been released.
+    counter.getCardinality();
+  }
+
   private void observe(int count, int uniqueCount) {
     for (String value : generateData(count, uniqueCount)) {
       meter.count(value);
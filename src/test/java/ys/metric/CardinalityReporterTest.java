@@ -0,0 +1,165 @@
+package ys.metric;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ys.probabilistic.util.MurmurHashers;
+
+/**
+ * Tests for {@link CardinalityReporter}.
+ *
+ * @author Yauheni Shahun
+ */
+public class CardinalityReporterTest {
+  /*
+   * Number of bits for counting.
+   */
+  private static final int M = 8 * 1024 * 4;
+  /*
+   * Error of estimation as fraction of the count of distinct values.
+   */
+  private static final double ERROR = 0.07d;
+
+  private final BlockingQueue<List<CardinalityReport>> batches = new LinkedBlockingQueue<>();
+
+  private CardinalityReporter reporter;
+  private CardinalityMeter<String> meter1;
+  private CardinalityMeter<String> meter2;
+
+  @Before
+  public void setUp() {
+    LinearCounterFactory<String> factory =
+        new StringLinearCounterFactory(M, MurmurHashers.stringHasher());
+    meter1 = new CardinalityMeter<>(factory);
+    meter2 = new CardinalityMeter<>(factory);
+
+    reporter = new CardinalityReporter(10, TimeUnit.MILLISECONDS);
+    reporter.register("b", meter2);
+    reporter.register("a", meter1);
+    reporter.addListener(new CardinalityListener() {
+      @Override
+      public void onReport(List<CardinalityReport> reports) {
+        batches.add(reports);
+      }
+    });
+  }
+
+  @After
+  public void tearDown() {
+    reporter.close();
+  }
+
+  @Test
+  public void testReport() {
+    observe(meter1, 1000);
+    observe(meter2, 3000);
+
+    List<CardinalityReport> reports = reporter.report();
+    assertEquals(1, batches.size());
+    assertEquals(reports, batches.poll());
+
+    assertEquals(2, reports.size());
+    assertEquals("a", reports.get(0).getName());
+    assertEquals(1, reports.get(0).getInterval());
+    assertEquals(1000d, reports.get(0).getCardinality(), 1000 * ERROR);
+    assertEquals("b", reports.get(1).getName());
+    assertEquals(3000d, reports.get(1).getCardinality(), 3000 * ERROR);
+    assertTrue(reports.get(1).getFillRatio() > reports.get(0).getFillRatio());
+
+    reports = reporter.report();
+    assertEquals(2, reports.get(0).getInterval());
+    assertEquals(0d, reports.get(0).getCardinality(), 0d);
+    assertEquals(0d, reports.get(0).getFillRatio(), 0d);
+    assertEquals(0, meter1.getOpenSnapshotCount());
+  }
+
+  @Test
+  public void testReport_failingListener() {
+    reporter.addListener(new CardinalityListener() {
+      @Override
+      public void onReport(List<CardinalityReport> reports) {
+        throw new IllegalStateException();
+      }
+    });
+    reporter.addListener(new CardinalityListener() {
+      @Override
+      public void onReport(List<CardinalityReport> reports) {
+        batches.add(reports);
+      }
+    });
+
+    Thread thread = Thread.currentThread();
+    Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+    thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+      @Override
+      public void uncaughtException(Thread t, Throwable e) {}
+    });
+    try {
+      reporter.report();
+    } finally {
+      thread.setUncaughtExceptionHandler(handler);
+    }
+    assertEquals(2, batches.size());
+  }
+
+  @Test
+  public void testReport_failingMeter() throws IOException {
+    observe(meter2, 1000);
+    meter1.close();
+
+    final List<Throwable> exceptions = new ArrayList<>();
+    Thread thread = Thread.currentThread();
+    Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+    thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+      @Override
+      public void uncaughtException(Thread t, Throwable e) {
+        exceptions.add(e);
+      }
+    });
+    List<CardinalityReport> reports;
+    try {
+      reports = reporter.report();
+    } finally {
+      thread.setUncaughtExceptionHandler(handler);
+    }
+
+    assertEquals(1, exceptions.size());
+    assertTrue(exceptions.get(0) instanceof IllegalStateException);
+    assertEquals(1, reports.size());
+    assertEquals("b", reports.get(0).getName());
+    assertEquals(1, batches.size());
+  }
+
+  @Test
+  public void testStart() throws InterruptedException {
+    observe(meter1, 1000);
+    reporter.start();
+
+    List<CardinalityReport> reports = batches.poll(10, TimeUnit.SECONDS);
+    assertEquals(1000d, reports.get(0).getCardinality(), 1000 * ERROR);
+    reports = batches.poll(10, TimeUnit.SECONDS);
+    assertEquals(2, reports.get(0).getInterval());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRegister_duplicate() {
+    reporter.register("a", meter2);
+  }
+
+  private static void observe(CardinalityMeter<String> meter, int count) {
+    for (int i = 0; i < count; i++) {
+      meter.count(String.valueOf(i));
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package ys.metric;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ys.probabilistic.util.MurmurHashers;
+
+/**
+ * Tests for {@link FrequencyMeter}.
+ *
+ * @author Yauheni Shahun
+ */
+public class FrequencyMeterTest {
+
+  private FrequencyMeter<String> meter;
+
+  @Before
+  public void setUp() {
+    meter = new FrequencyMeter<>(1024, 4, MurmurHashers.stringHasher64());
+  }
+
+  @Test
+  public void testGetFrequencies() {
+    for (int i = 0; i < 100; i++) {
+      meter.add("hot");
+      meter.add("value" + i);
+    }
+    meter.add("warm", 10);
+
+    Map<String, Long> frequencies = meter.getFrequencies(Arrays.asList("hot", "warm", "cold"));
+    assertEquals(100, frequencies.get("hot"), 2);
+    assertEquals(10, frequencies.get("warm"), 2);
+    assertEquals(0, frequencies.get("cold"), 2);
+
+    // The meter is reset.
+    assertEquals(0L, meter.getSketch().getTotalCount());
+
+    meter.add("hot", 5);
+    assertEquals(5L, meter.getSketch().estimate("hot"));
+  }
+}
@@ -0,0 +1,46 @@
+package ys.metric;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ys.probabilistic.util.MurmurHashers;
+import ys.probabilistic.util.SpaceSaving;
+
+/**
+ * Tests for {@link HeavyHitterMeter}.
+ *
+ * @author Yauheni Shahun
+ */
+public class HeavyHitterMeterTest {
+
+  private HeavyHitterMeter<String> meter;
+
+  @Before
+  public void setUp() {
+    meter = new HeavyHitterMeter<>(2, 20, MurmurHashers.stringHasher());
+  }
+
+  @Test
+  public void testGetTopK() {
+    for (int i = 0; i < 1000; i++) {
+      meter.count("value" + i);
+    }
+    meter.count("first", 100);
+    meter.count("second", 50);
+
+    List<SpaceSaving.Item<String>> top = meter.getTopK();
+    assertEquals(2, top.size());
+    assertEquals("first", top.get(0).getValue());
+    assertEquals("second", top.get(1).getValue());
+
+    // The meter is reset.
+    assertEquals(0, meter.getTopK().size());
+
+    meter.count("third");
+    assertEquals("third", meter.getTopK().get(0).getValue());
+  }
+}
@@ -0,0 +1,116 @@
+package ys.metric;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+
+import ys.probabilistic.util.MurmurHashers;
+
+/**
+ * Tests for {@link SlidingWindowCardinalityMeter}.
+ *
+ * @author Yauheni Shahun
+ */
+public class SlidingWindowCardinalityMeterTest {
+  /*
+   * Number of bits for counting.
+   */
+  private static final int M = 8 * 1024 * 4;
+  /*
+   * Error of estimation as fraction of the count of distinct values.
+   */
+  private static final double ERROR = 0.07d;
+
+  private ManualTicker ticker;
+  private SlidingWindowCardinalityMeter<String> meter;
+
+  @Before
+  public void setUp() {
+    ticker = new ManualTicker();
+    meter = new SlidingWindowCardinalityMeter<>(
+        new StringLinearCounterFactory(M, MurmurHashers.stringHasher()), 3, 1, TimeUnit.MINUTES,
+        ticker);
+  }
+
+  @Test
+  public void testGetCardinality() {
+    observe(0, 100);
+    assertEquals(100d, meter.getCardinality(), 100 * ERROR);
+    // Reading doesn't reset the meter.
+    assertEquals(100d, meter.getCardinality(), 100 * ERROR);
+
+    ticker.advance(1, TimeUnit.MINUTES);
+    observe(50, 250);
+    assertEquals(250d, meter.getCardinality(), 250 * ERROR);
+    assertEquals(200d, meter.getCardinality(1), 200 * ERROR);
+
+    ticker.advance(1, TimeUnit.MINUTES);
+    observe(1000, 1100);
+    assertEquals(350d, meter.getCardinality(), 350 * ERROR);
+    assertEquals(300d, meter.getCardinality(2), 300 * ERROR);
+
+    // The first slice leaves the window.
+    ticker.advance(1, TimeUnit.MINUTES);
+    assertEquals(300d, meter.getCardinality(), 300 * ERROR);
+    assertEquals(0d, meter.getCardinality(1), 0d);
+  }
+
+  @Test
+  public void testGetCardinality_idleWindow() {
+    observe(0, 100);
+    ticker.advance(90, TimeUnit.SECONDS);
+    observe(100, 200);
+    assertEquals(200d, meter.getCardinality(), 200 * ERROR);
+
+    ticker.advance(10, TimeUnit.MINUTES);
+    assertEquals(0d, meter.getCardinality(), 0d);
+
+    observe(0, 50);
+    assertEquals(50d, meter.getCardinality(), 50 * ERROR);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGetCardinality_invalidSliceCount() {
+    meter.getCardinality(4);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testClose() throws Exception {
+    SlidingWindowCardinalityMeter<String> offHeapMeter = new SlidingWindowCardinalityMeter<>(
+        new OffHeapLinearCounterFactory<>(M, MurmurHashers.stringHasher()), 3, 1, TimeUnit.MINUTES,
+        ticker);
+    offHeapMeter.count("foo");
+    offHeapMeter.close();
+    offHeapMeter.close();
+
+    offHeapMeter.count("bar");
+  }
+
+  private void observe(int from, int to) {
+    for (int i = from; i < to; i++) {
+      meter.count(String.valueOf(i));
+      meter.count(String.valueOf(i));
+    }
+  }
+
+  /**
+   * A ticker that is advanced manually.
+   */
+  private static class ManualTicker extends Ticker {
+    private volatile long nanos;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+
+    void advance(long duration, TimeUnit unit) {
+      nanos += unit.toNanos(duration);
+    }
+  }
+}
@@ -0,0 +1,199 @@
+package ys.probabilistic.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ys.probabilistic.util.AdaptiveLinearCounter.Level;
+
+/**
+ * Tests for {@link AdaptiveLinearCounter}.
+ *
+ * @author Yauheni Shahun
+ */
+public class AdaptiveLinearCounterTest {
+  /*
+   * Precision of the final HyperLogLog.
+   */
+  private static final int P = 12;
+  /*
+   * Error of estimation as fraction of the count of distinct values (about 4 standard errors).
+   */
+  private static final double ERROR = 4 * 1.04 / Math.sqrt(1 << P);
+
+  private AdaptiveLinearCounter<Long> counter;
+
+  @Before
+  public void setUp() {
+    counter = new AdaptiveLinearCounter<>(P, MurmurHashers.longHasher64());
+  }
+
+  @Test
+  public void testCardinality_sparse() {
+    for (long i = 0; i < 100; i++) {
+      counter.countLong(i);
+      counter.countLong(i);
+    }
+    assertEquals(Level.SPARSE, counter.getLevel());
+    assertEquals(100d, counter.getCardinality(), 0d);
+  }
+
+  @Test
+  public void testCardinality_linear() {
+    for (long i = 0; i < 2000; i++) {
+      counter.countLong(i);
+    }
+    assertEquals(Level.LINEAR, counter.getLevel());
+    assertEquals(2000, counter.getCardinality(), 2000 * 0.05);
+  }
+
+  @Test
+  public void testCardinality_hyperLogLog() {
+    for (int n : new int[] {20000, 100000, 1000000}) {
+      counter.clear();
+      for (long i = 0; i < n; i++) {
+        counter.countLong(i * 1000003);
+      }
+      assertEquals(Level.HYPER_LOG_LOG, counter.getLevel());
+      assertEquals(n, counter.getCardinality(), n * ERROR);
+    }
+  }
+
+  @Test
+  public void testFillRatio() {
+    assertEquals(0d, counter.getFillRatio(), 0d);
+
+    for (long i = 0; i < 100; i++) {
+      counter.countLong(i);
+    }
+    assertEquals(Level.SPARSE, counter.getLevel());
+    assertEquals(100d / ((1 << P) >>> 4), counter.getFillRatio(), 0d);
+
+    for (long i = 0; i < 2000; i++) {
+      counter.countLong(i);
+    }
+    assertEquals(Level.LINEAR, counter.getLevel());
+    assertTrue(counter.getFillRatio() > 0d && counter.getFillRatio() < 1d);
+
+    for (long i = 0; i < 100000; i++) {
+      counter.countLong(i);
+    }
+    assertEquals(Level.HYPER_LOG_LOG, counter.getLevel());
+    assertEquals(1d, counter.getFillRatio(), 0d);
+  }
+
+  @Test
+  public void testCardinality_withMultipleWriters() throws Exception {
+    final int n = 200000;
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      futures.add(executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          for (long j = 0; j < n; j++) {
+            counter.countLong(j);
+          }
+        }
+      }));
+    }
+    executor.shutdown();
+
+    for (Future<?> future : futures) {
+      future.get();
+    }
+
+    assertEquals(n, counter.getCardinality(), n * ERROR);
+  }
+
+  @Test
+  public void testGetBitmap() {
+    HyperLogLog<Long> hyperLogLog = new HyperLogLog<>(P, MurmurHashers.longHasher64());
+    for (long i = 0; i < 100; i++) {
+      counter.countLong(i);
+      hyperLogLog.countLong(i);
+    }
+    // The sparse representation is exact.
+    assertArrayEquals(hyperLogLog.getBitmap(), counter.getBitmap());
+
+    for (long i = 100; i < 50000; i++) {
+      counter.countLong(i);
+      hyperLogLog.countLong(i);
+    }
+    assertEquals(hyperLogLog.getCardinality(),
+        HyperLogLog.getCardinality(P, counter.getBitmap()), 50000 * ERROR);
+  }
+
+  @Test
+  public void testMergeTo_longBitmap() {
+    HyperLogLog<Long> hyperLogLog = new HyperLogLog<>(P, MurmurHashers.longHasher64());
+    AdaptiveLinearCounter<Long> other =
+        new AdaptiveLinearCounter<>(P, MurmurHashers.longHasher64());
+    for (long i = 0; i < 30000; i++) {
+      hyperLogLog.countLong(i);
+    }
+    for (long i = 0; i < 1000; i++) {
+      counter.countLong(i + 25000);
+    }
+    for (long i = 0; i < 50000; i++) {
+      other.countLong(i + 20000);
+    }
+
+    long[] words = hyperLogLog.getLongBitmap();
+    counter.mergeTo(words);
+    other.mergeTo(words);
+    int[] bitmap = CountUtil.toIntBitmap(words, HyperLogLog.getBlockCount(P));
+    assertEquals(70000, HyperLogLog.getCardinality(P, bitmap), 70000 * ERROR);
+    assertArrayEquals(counter.getBitmap(), CountUtil.toIntBitmap(counter.getLongBitmap(),
+        HyperLogLog.getBlockCount(P)));
+  }
+
+  @Test
+  public void testMergeFrom() {
+    int[][] sizes = {{50, 60}, {50, 3000}, {3000, 50}, {3000, 50000}, {50000, 50}};
+    for (int[] size : sizes) {
+      counter.clear();
+      AdaptiveLinearCounter<Long> other =
+          new AdaptiveLinearCounter<>(P, MurmurHashers.longHasher64());
+      for (long i = 0; i < size[0]; i++) {
+        counter.countLong(i);
+      }
+      for (long i = 0; i < size[1]; i++) {
+        other.countLong(i + size[0] / 2);
+      }
+
+      counter.mergeFrom(other);
+      int n = Math.max(size[0], size[1] + size[0] / 2);
+      assertEquals(n, counter.getCardinality(), n * ERROR);
+    }
+  }
+
+  @Test
+  public void testClear() {
+    for (long i = 0; i < 50000; i++) {
+      counter.countLong(i);
+    }
+    counter.clear();
+    assertEquals(Level.SPARSE, counter.getLevel());
+    assertEquals(0d, counter.getCardinality(), 0d);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPrecision_invalid() {
+    new AdaptiveLinearCounter<>(HyperLogLog.MIN_PRECISION - 1, MurmurHashers.longHasher64());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeFrom_differentPrecision() {
+    counter.mergeFrom(new AdaptiveLinearCounter<>(P + 1, MurmurHashers.longHasher64()));
+  }
+}
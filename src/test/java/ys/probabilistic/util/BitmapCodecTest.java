@@ -0,0 +1,124 @@
+package ys.probabilistic.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link BitmapCodec}.
+ *
+ * @author Yauheni Shahun
+ */
+public class BitmapCodecTest {
+  /*
+   * Number of bits for counting (several chunks with the partial last one).
+   */
+  private static final int M = 5 * BitmapCodec.CHUNK_BITS + 1000;
+
+  private final Random random = new Random(7);
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    int[] bitmap = new int[CountUtil.getBlockCount(M)];
+    // Chunks: sparse, dense, full, empty, random and partial.
+    fillRandom(bitmap, 0, 0.001);
+    fillRandom(bitmap, 1, 0.999);
+    fillRandom(bitmap, 2, 1);
+    fillRandom(bitmap, 4, 0.5);
+    fillRandom(bitmap, 5, 0.01);
+
+    BitmapCodec.Header header = new BitmapCodec.Header(M, 3, 42);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BitmapCodec.encode(header, bitmap, out);
+    assertEquals(BitmapCodec.getEncodedLength(bitmap), out.size());
+
+    AggregateLinearCounter<String> decoded =
+        BitmapCodec.decode(new ByteArrayInputStream(out.toByteArray()));
+    assertArrayEquals(bitmap, decoded.getBitmap());
+
+    ByteBuffer buffer = ByteBuffer.allocate(BitmapCodec.getEncodedLength(bitmap));
+    BitmapCodec.encode(header, bitmap, buffer);
+    assertEquals(0, buffer.remaining());
+    assertArrayEquals(out.toByteArray(), buffer.array());
+
+    buffer.rewind();
+    int[] target = new int[bitmap.length];
+    BitmapCodec.Header decodedHeader = BitmapCodec.decodeTo(buffer, target);
+    assertArrayEquals(bitmap, target);
+    assertEquals(M, decodedHeader.getSize());
+    assertEquals(3, decodedHeader.getHasherId());
+    assertEquals(42, decodedHeader.getSeed());
+  }
+
+  @Test
+  public void testDecodeTo_merges() throws IOException {
+    LinearCounter<String> c1 = new WriteConcurrentLinearCounter<>(M, MurmurHashers.stringHasher());
+    LinearCounter<String> c2 = new WriteConcurrentLinearCounter<>(M, MurmurHashers.stringHasher());
+    CountTestUtil.observeUnique(c1, 1000);
+    CountTestUtil.observeUnique(c2, 2000);
+
+    AggregateLinearCounter<String> aggregate = new AggregateLinearCounter<>(M);
+    BitmapCodec.decodeTo(new ByteArrayInputStream(encode(c1.getBitmap())), aggregate.getBitmap());
+    BitmapCodec.decodeTo(new ByteArrayInputStream(encode(c2.getBitmap())), aggregate.getBitmap());
+
+    int[] expected = c1.getBitmap();
+    c2.mergeTo(expected);
+    assertArrayEquals(expected, aggregate.getBitmap());
+  }
+
+  @Test
+  public void testEncodedLength_lowFill() {
+    LinearCounter<String> counter =
+        new WriteConcurrentLinearCounter<>(M, MurmurHashers.stringHasher());
+    CountTestUtil.observeUnique(counter, 100);
+
+    int[] bitmap = counter.getBitmap();
+    assertTrue(BitmapCodec.getEncodedLength(bitmap) * 10 < bitmap.length * 4);
+    assertTrue(BitmapCodec.getEncodedLength(new int[bitmap.length]) < 32);
+  }
+
+  @Test(expected = IOException.class)
+  public void testDecode_notEncodedBitmap() throws IOException {
+    BitmapCodec.decode(ByteBuffer.wrap(new byte[100]));
+  }
+
+  @Test(expected = IOException.class)
+  public void testDecode_truncated() throws IOException {
+    int[] bitmap = new int[CountUtil.getBlockCount(M)];
+    fillRandom(bitmap, 0, 0.5);
+    byte[] bytes = encode(bitmap);
+    BitmapCodec.decode(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length / 2)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDecodeTo_bitmapWithDifferentLength() throws IOException {
+    byte[] bytes = encode(new int[CountUtil.getBlockCount(M)]);
+    BitmapCodec.decodeTo(ByteBuffer.wrap(bytes), new int[10]);
+  }
+
+  private static byte[] encode(int[] bitmap) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BitmapCodec.encode(new BitmapCodec.Header(M, 0, 0), bitmap, out);
+    return out.toByteArray();
+  }
+
+  private void fillRandom(int[] bitmap, int chunk, double fillRatio) {
+    int from = chunk * BitmapCodec.CHUNK_BITS;
+    int to = Math.min(from + BitmapCodec.CHUNK_BITS, M);
+    for (int i = from; i < to; i++) {
+      if (random.nextDouble() < fillRatio) {
+        bitmap[i / LinearCounter.BLOCK_SIZE] |= 1 << i;
+      }
+    }
+  }
+}
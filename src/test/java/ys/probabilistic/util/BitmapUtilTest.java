@@ -0,0 +1,132 @@
+package ys.probabilistic.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link BitmapUtil}.
+ *
+ * @author Yauheni Shahun
+ */
+public class BitmapUtilTest {
+  /*
+   * Lengths of the bitmaps covering the unrolled loops and their tails.
+   */
+  private static final int[] LENGTHS = {0, 1, 2, 3, 4, 5, 7, 8, 9, 1000, 1003};
+
+  private final Random random = new Random(42);
+
+  @Test
+  public void testIntBitmaps() {
+    for (int length : LENGTHS) {
+      int[] bitmap1 = randomInts(length);
+      int[] bitmap2 = randomInts(length);
+
+      int[] union = new int[length];
+      int[] intersection = new int[length];
+      int bitCount = 0;
+      int unionBitCount = 0;
+      for (int i = 0; i < length; i++) {
+        union[i] = bitmap1[i] | bitmap2[i];
+        intersection[i] = bitmap1[i] & bitmap2[i];
+        bitCount += Integer.bitCount(bitmap1[i]);
+        unionBitCount += Integer.bitCount(union[i]);
+      }
+
+      assertEquals(bitCount, BitmapUtil.bitCount(bitmap1));
+      assertEquals(unionBitCount, BitmapUtil.unionBitCount(bitmap1, bitmap2));
+      int[][] bitmaps = {bitmap1, bitmap2, new int[length]};
+      assertEquals(unionBitCount, BitmapUtil.unionBitCount(bitmaps, 0, length));
+      if (length > 0) {
+        assertEquals(unionBitCount - Integer.bitCount(union[0]),
+            BitmapUtil.unionBitCount(bitmaps, 1, length));
+      }
+
+      int[] target = bitmap1.clone();
+      BitmapUtil.or(target, bitmap2);
+      assertArrayEquals(union, target);
+
+      target = bitmap1.clone();
+      BitmapUtil.and(target, bitmap2);
+      assertArrayEquals(intersection, target);
+
+      target = bitmap1.clone();
+      assertEquals(unionBitCount, BitmapUtil.orAndBitCount(target, bitmap2));
+      assertArrayEquals(union, target);
+    }
+  }
+
+  @Test
+  public void testLongBitmaps() {
+    for (int length : LENGTHS) {
+      long[] bitmap1 = randomLongs(length);
+      long[] bitmap2 = randomLongs(length);
+
+      long[] union = new long[length];
+      long[] intersection = new long[length];
+      int bitCount = 0;
+      int unionBitCount = 0;
+      for (int i = 0; i < length; i++) {
+        union[i] = bitmap1[i] | bitmap2[i];
+        intersection[i] = bitmap1[i] & bitmap2[i];
+        bitCount += Long.bitCount(bitmap1[i]);
+        unionBitCount += Long.bitCount(union[i]);
+      }
+
+      assertEquals(bitCount, BitmapUtil.bitCount(bitmap1));
+      assertEquals(unionBitCount, BitmapUtil.unionBitCount(bitmap1, bitmap2));
+
+      long[] target = bitmap1.clone();
+      BitmapUtil.or(target, bitmap2);
+      assertArrayEquals(union, target);
+
+      target = bitmap1.clone();
+      BitmapUtil.and(target, bitmap2);
+      assertArrayEquals(intersection, target);
+
+      target = bitmap1.clone();
+      assertEquals(unionBitCount, BitmapUtil.orAndBitCount(target, bitmap2));
+      assertArrayEquals(union, target);
+    }
+  }
+
+  @Test
+  public void testMergeFromAndGetCardinality() {
+    AggregateLinearCounter<String> counter = new AggregateLinearCounter<>(1 << 16);
+    LinearCounter<String> c1 = new WriteConcurrentLinearCounter<>(1 << 16,
+        MurmurHashers.stringHasher());
+    LinearCounter<String> c2 = new WriteConcurrentLinearCounter<>(1 << 16,
+        MurmurHashers.stringHasher());
+    CountTestUtil.observe(c1, 2000, 1000);
+    CountTestUtil.observe(c2, 3000, 1500);
+
+    counter.mergeFrom(c1.getBitmap());
+    double cardinality = counter.mergeFromAndGetCardinality(c2.getBitmap());
+    assertEquals(counter.getCardinality(), cardinality, 0d);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOr_differentLengths() {
+    BitmapUtil.or(new int[2], new int[3]);
+  }
+
+  private int[] randomInts(int length) {
+    int[] bitmap = new int[length];
+    for (int i = 0; i < length; i++) {
+      bitmap[i] = random.nextInt();
+    }
+    return bitmap;
+  }
+
+  private long[] randomLongs(int length) {
+    long[] bitmap = new long[length];
+    for (int i = 0; i < length; i++) {
+      bitmap[i] = random.nextLong();
+    }
+    return bitmap;
+  }
+}
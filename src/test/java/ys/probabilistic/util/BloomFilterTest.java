@@ -0,0 +1,135 @@
+package ys.probabilistic.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link BloomFilter}.
+ *
+ * @author Yauheni Shahun
+ */
+public class BloomFilterTest {
+  /*
+   * Expected number of values.
+   */
+  private static final int N = 10000;
+  /*
+   * Desired false positive probability.
+   */
+  private static final double FPP = 0.01;
+
+  private BloomFilter<String> filter;
+
+  @Before
+  public void setUp() {
+    filter = BloomFilter.create(N, FPP, MurmurHashers.stringHasher64());
+  }
+
+  @Test
+  public void testCreate() {
+    // m = -n ln(p) / ln(2)^2, k = m / n ln(2).
+    assertEquals(95851, filter.getSize());
+    assertEquals(7, filter.getHashCount());
+  }
+
+  @Test
+  public void testPutIfAbsent() {
+    int newCount = 0;
+    for (int i = 0; i < N; i++) {
+      if (filter.putIfAbsent("a" + i)) {
+        newCount++;
+      }
+    }
+    // A new value is reported as seen only if it's a false positive.
+    assertTrue(newCount > N * (1 - FPP));
+    for (int i = 0; i < N; i++) {
+      assertTrue(filter.mightContain("a" + i));
+      assertFalse(filter.putIfAbsent("a" + i));
+    }
+
+    int falsePositiveCount = 0;
+    for (int i = 0; i < N; i++) {
+      if (filter.mightContain("b" + i)) {
+        falsePositiveCount++;
+      }
+    }
+    assertEquals(FPP, falsePositiveCount / (double) N, FPP * 0.5);
+    assertEquals(FPP, filter.getFalsePositiveProbability(), FPP * 0.2);
+    assertEquals(0.5, filter.getFillRatio(), 0.05);
+  }
+
+  @Test
+  public void testCardinality() {
+    for (int i = 0; i < N / 2; i++) {
+      filter.putIfAbsent("a" + i);
+      filter.putIfAbsent("a" + i);
+    }
+    assertEquals(N / 2, filter.getCardinality(), N / 2 * 0.02);
+
+    filter.clear();
+    assertEquals(0d, filter.getCardinality(), 0d);
+    assertFalse(filter.mightContain("a0"));
+  }
+
+  @Test
+  public void testMerge() {
+    BloomFilter<String> other = BloomFilter.create(N, FPP, MurmurHashers.stringHasher64());
+    for (int i = 0; i < 1000; i++) {
+      filter.putIfAbsent("a" + i);
+      other.putIfAbsent("b" + i);
+    }
+
+    int[] union = filter.getBitmap();
+    other.mergeTo(union);
+    filter.mergeFrom(other);
+    assertArrayEquals(union, filter.getBitmap());
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(filter.mightContain("a" + i));
+      assertTrue(filter.mightContain("b" + i));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMerge_incompatible() {
+    filter.mergeFrom(new BloomFilter<>(filter.getSize(), filter.getHashCount() + 1,
+        MurmurHashers.stringHasher64()));
+  }
+
+  @Test
+  public void testPutIfAbsent_concurrent() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Void>> futures = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      final int thread = t;
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          for (int i = thread; i < N; i += 4) {
+            filter.putIfAbsent("a" + i);
+          }
+          return null;
+        }
+      }));
+    }
+    for (Future<Void> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    for (int i = 0; i < N; i++) {
+      assertTrue(filter.mightContain("a" + i));
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package ys.probabilistic.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link CountMinSketch}.
+ *
+ * @author Yauheni Shahun
+ */
+public class CountMinSketchTest {
+  /*
+   * Number of distinct values.
+   */
+  private static final int N = 1000;
+  /*
+   * Relative error of the estimates in terms of the total count.
+   */
+  private static final double EPSILON = 0.001;
+
+  @Test
+  public void testCreate() {
+    CountMinSketch<Integer> sketch =
+        CountMinSketch.create(EPSILON, 0.01, MurmurHashers.integerHasher64());
+    assertEquals(2719, sketch.getWidth());
+    assertEquals(5, sketch.getDepth());
+  }
+
+  @Test
+  public void testEstimate() {
+    testEstimate(true);
+    testEstimate(false);
+  }
+
+  private void testEstimate(boolean conservative) {
+    CountMinSketch<Integer> sketch =
+        new CountMinSketch<>(2719, 5, conservative, MurmurHashers.integerHasher64());
+    long[] counts = observe(sketch);
+
+    long total = sketch.getTotalCount();
+    for (int i = 0; i < N; i++) {
+      long estimate = sketch.estimate(i);
+      assertTrue(estimate >= counts[i]);
+      assertTrue(estimate <= counts[i] + EPSILON * total);
+    }
+    assertEquals(0, sketch.estimate(-1), EPSILON * total);
+  }
+
+  @Test
+  public void testEstimate_conservativeIsTighter() {
+    CountMinSketch<Integer> conservative = new CountMinSketch<>(100, 4, true,
+        MurmurHashers.integerHasher64());
+    CountMinSketch<Integer> plain = new CountMinSketch<>(100, 4, false,
+        MurmurHashers.integerHasher64());
+    long[] counts = observe(conservative);
+    observe(plain);
+
+    long conservativeError = 0;
+    long plainError = 0;
+    for (int i = 0; i < N; i++) {
+      conservativeError += conservative.estimate(i) - counts[i];
+      plainError += plain.estimate(i) - counts[i];
+    }
+    assertTrue(conservativeError < plainError);
+  }
+
+  @Test
+  public void testMergeFrom() {
+    CountMinSketch<Integer> sketch1 = new CountMinSketch<>(512, 4, MurmurHashers.integerHasher64());
+    CountMinSketch<Integer> sketch2 = new CountMinSketch<>(512, 4, MurmurHashers.integerHasher64());
+    for (int i = 0; i < N; i++) {
+      sketch1.add(i, 2);
+      sketch2.add(i);
+    }
+
+    sketch1.mergeFrom(sketch2);
+    assertEquals(3L * N, sketch1.getTotalCount());
+    for (int i = 0; i < N; i++) {
+      assertTrue(sketch1.estimate(i) >= 3);
+    }
+
+    sketch1.clear();
+    assertEquals(0, sketch1.getTotalCount());
+    assertArrayEquals(new long[512 * 4], sketch1.getCounters());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeFrom_differentDimensions() {
+    new CountMinSketch<>(512, 4, MurmurHashers.integerHasher64()).mergeFrom(
+        new CountMinSketch<>(512, 5, MurmurHashers.integerHasher64()));
+  }
+
+  /**
+   * Counts the values with the Zipf-like frequencies ({@code N / (i + 1)}) in a random order.
+   */
+  private static long[] observe(CountMinSketch<Integer> sketch) {
+    long[] counts = new long[N];
+    for (int i = 0; i < N; i++) {
+      counts[i] = N / (i + 1);
+    }
+    int total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    int[] values = new int[total];
+    int index = 0;
+    for (int i = 0; i < N; i++) {
+      for (int j = 0; j < counts[i]; j++) {
+        values[index++] = i;
+      }
+    }
+
+    Random random = new Random(42);
+    for (int i = values.length - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int temp = values[i];
+      values[i] = values[j];
+      values[j] = temp;
+    }
+    for (int value : values) {
+      sketch.add(value);
+    }
+    return counts;
+  }
+}
@@ -0,0 +1,175 @@
+package ys.probabilistic.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link HyperLogLog}.
+ *
+ * @author Yauheni Shahun
+ */
+public class HyperLogLogTest {
+  /*
+   * Precision of the estimator.
+   */
+  private static final int P = 12;
+  /*
+   * Error of estimation as fraction of the count of distinct values (about 4 standard errors).
+   */
+  private static final double ERROR = 4 * 1.04 / Math.sqrt(1 << P);
+
+  private HyperLogLog<Long> counter;
+
+  @Before
+  public void setUp() {
+    counter = new HyperLogLog<>(P, MurmurHashers.longHasher64());
+  }
+
+  @Test
+  public void testCardinality() {
+    for (int n : new int[] {10, 100, 1000, 10000, 100000, 1000000}) {
+      counter.clear();
+      for (long i = 0; i < n; i++) {
+        counter.countLong(i * 1000003);
+        counter.countLong(i * 1000003);
+      }
+      assertEquals(n, counter.getCardinality(), n * ERROR);
+    }
+  }
+
+  @Test
+  public void testCardinality_32bitHash() {
+    HyperLogLog<String> counter = new HyperLogLog<>(P, MurmurHashers.stringHasher());
+    CountTestUtil.observe(counter, 100000, 50000);
+    assertEquals(50000, counter.getCardinality(), 50000 * ERROR);
+  }
+
+  @Test
+  public void testCount_primitives() {
+    HyperLogLog<Long> boxedCounter = new HyperLogLog<>(P, MurmurHashers.longHasher64());
+    HyperLogLog<Integer> intCounter = new HyperLogLog<>(P, MurmurHashers.integerHasher64());
+    HyperLogLog<Integer> boxedIntCounter = new HyperLogLog<>(P, MurmurHashers.integerHasher64());
+    for (int i = 0; i < 10000; i++) {
+      counter.countLong(i * 31L << 20);
+      boxedCounter.count(Long.valueOf(i * 31L << 20));
+      intCounter.countInt(i);
+      boxedIntCounter.count(Integer.valueOf(i));
+    }
+
+    assertArrayEquals(boxedCounter.getBitmap(), counter.getBitmap());
+    assertArrayEquals(boxedIntCounter.getBitmap(), intCounter.getBitmap());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testCountInt_unsupportedHasher() {
+    counter.countInt(5);
+  }
+
+  @Test
+  public void testCardinality_withMultipleWriters() throws Exception {
+    final int n = 200000;
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      futures.add(executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          for (long j = 0; j < n; j++) {
+            counter.countLong(j);
+          }
+        }
+      }));
+    }
+    executor.shutdown();
+
+    for (Future<?> future : futures) {
+      future.get();
+    }
+
+    assertEquals(n, counter.getCardinality(), n * ERROR);
+  }
+
+  @Test
+  public void testMerge() {
+    HyperLogLog<Long> other = new HyperLogLog<>(P, MurmurHashers.longHasher64());
+    for (long i = 0; i < 30000; i++) {
+      counter.countLong(i);
+      other.countLong(i + 20000);
+    }
+
+    int[] bitmap = counter.getBitmap();
+    other.mergeTo(bitmap);
+    assertEquals(50000, HyperLogLog.getCardinality(P, bitmap), 50000 * ERROR);
+
+    counter.mergeFrom(other.getBitmap());
+    assertArrayEquals(bitmap, counter.getBitmap());
+    assertEquals(HyperLogLog.getCardinality(P, bitmap), counter.getCardinality(), 0d);
+  }
+
+  @Test
+  public void testMerge_longBitmap() {
+    HyperLogLog<Long> other = new HyperLogLog<>(P, MurmurHashers.longHasher64());
+    for (long i = 0; i < 30000; i++) {
+      counter.countLong(i);
+      other.countLong(i + 20000);
+    }
+
+    long[] words = counter.getLongBitmap();
+    assertArrayEquals(counter.getBitmap(), CountUtil.toIntBitmap(words, words.length * 2));
+    other.mergeTo(words);
+
+    int[] bitmap = counter.getBitmap();
+    other.mergeTo(bitmap);
+    assertArrayEquals(bitmap, CountUtil.toIntBitmap(words, bitmap.length));
+    assertEquals(50000, HyperLogLog.getCardinality(P, bitmap), 50000 * ERROR);
+  }
+
+  @Test
+  public void testFillRatio() {
+    assertEquals(0d, counter.getFillRatio(), 0d);
+
+    counter.countLong(1L);
+    assertEquals(1d / (1 << P), counter.getFillRatio(), 0d);
+
+    for (long i = 0; i < 100000; i++) {
+      counter.countLong(i);
+    }
+    assertEquals(1d, counter.getFillRatio(), 0d);
+  }
+
+  @Test
+  public void testClear() {
+    assertEquals(0d, counter.getCardinality(), 0d);
+
+    counter.countLong(1L);
+    assertTrue(counter.getCardinality() > 0);
+
+    counter.clear();
+    assertEquals(0d, counter.getCardinality(), 0d);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPrecision_invalid() {
+    new HyperLogLog<>(HyperLogLog.MAX_PRECISION + 1, MurmurHashers.longHasher64());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeTo_bitmapWithDifferentLength() {
+    counter.mergeTo(new int[1]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeTo_longBitmapWithDifferentLength() {
+    counter.mergeTo(new long[1]);
+  }
+}
@@ -0,0 +1,100 @@
+package ys.probabilistic.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link LinearCounterAggregator}.
+ *
+ * @author Yauheni Shahun
+ */
+public class LinearCounterAggregatorTest {
+  /*
+   * Number of bits for counting (spans several ranges of blocks).
+   */
+  private static final int M = 1 << 20;
+  /*
+   * Number of counters to aggregate.
+   */
+  private static final int K = 50;
+
+  private ForkJoinPool pool;
+  private List<LinearCounter<Integer>> counters;
+  private AggregateLinearCounter<Integer> expected;
+
+  @Before
+  public void setUp() {
+    pool = new ForkJoinPool(4);
+
+    counters = new ArrayList<>();
+    expected = new AggregateLinearCounter<>(M);
+    for (int i = 0; i < K; i++) {
+      LinearCounter<Integer> counter =
+          new WriteConcurrentLinearCounter<>(M, MurmurHashers.integerHasher());
+      for (int j = 0; j < 2000; j++) {
+        counter.countInt(i * 1000 + j);
+      }
+      counters.add(counter);
+      counter.mergeTo(expected.getBitmap());
+    }
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Test
+  public void testMergeBitmaps() {
+    List<int[]> bitmaps = new ArrayList<>();
+    for (LinearCounter<Integer> counter : counters) {
+      bitmaps.add(counter.getBitmap());
+    }
+
+    AggregateLinearCounter<Integer> aggregate =
+        LinearCounterAggregator.mergeBitmaps(M, bitmaps, pool);
+    assertArrayEquals(expected.getBitmap(), aggregate.getBitmap());
+
+    assertEquals(expected.getCardinality(),
+        LinearCounterAggregator.getCardinality(M, bitmaps, pool), 0d);
+    assertEquals(51000, aggregate.getCardinality(), 51000 * 0.01);
+  }
+
+  @Test
+  public void testMergeCounters() {
+    AggregateLinearCounter<Integer> aggregate =
+        LinearCounterAggregator.mergeCounters(M, counters, pool);
+    assertArrayEquals(expected.getBitmap(), aggregate.getBitmap());
+  }
+
+  @Test
+  public void testMergeCounters_empty() {
+    AggregateLinearCounter<Integer> aggregate =
+        LinearCounterAggregator.mergeCounters(M, new ArrayList<LinearCounter<Integer>>(), pool);
+    assertEquals(0d, aggregate.getCardinality(), 0d);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeCounters_hyperLogLog() {
+    List<LinearCounter<Long>> hyperLogLogs = new ArrayList<>();
+    for (int i = 0; i < K; i++) {
+      hyperLogLogs.add(new HyperLogLog<>(12, MurmurHashers.longHasher64()));
+    }
+    LinearCounterAggregator.mergeCounters(1 << 14, hyperLogLogs, pool);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeBitmaps_differentLengths() {
+    List<int[]> bitmaps = new ArrayList<>();
+    bitmaps.add(new int[1]);
+    LinearCounterAggregator.mergeBitmaps(M, bitmaps, pool);
+  }
+}
@@ -0,0 +1,186 @@
+package ys.probabilistic.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link MappedLinearCounter}.
+ *
+ * @author Yauheni Shahun
+ */
+public class MappedLinearCounterTest {
+  /*
+   * Number of unique values.
+   */
+  private static final int N = 8000;
+  /*
+   * Number of bits for counting.
+   */
+  private static final int M = 8 * 1024 * 8;
+  /*
+   * Confidence interval 99.99% (see WriteConcurrentLinearCounterTest).
+   */
+  private static final double CONFIDENCE_9999 = 3.9 * 22.5;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testCardinality() throws IOException {
+    try (MappedLinearCounter<String> counter = createCounter(M, MurmurHashers.stringHasher64())) {
+      CountTestUtil.observe(counter, N * 2, N);
+      assertEquals(N, counter.getCardinality(), CONFIDENCE_9999);
+    }
+  }
+
+  @Test
+  public void testCardinality_32bitHash() throws IOException {
+    try (MappedLinearCounter<String> counter = createCounter(M, MurmurHashers.stringHasher())) {
+      CountTestUtil.observe(counter, N * 2, N);
+      assertEquals(N, counter.getCardinality(), CONFIDENCE_9999);
+    }
+  }
+
+  @Test
+  public void testCardinality_largeBitmap() throws IOException {
+    long size = (1L << 32) + 100;
+    try (MappedLinearCounter<Long> counter = createCounter(size, MurmurHashers.longHasher64())) {
+      for (long i = 0; i < 1000; i++) {
+        counter.countLong(i);
+        counter.countLong(i);
+      }
+      assertEquals(size, counter.getLongSize());
+      assertEquals(1000d, counter.getCardinality(), 0.5d);
+    }
+  }
+
+  @Test
+  public void testReopen() throws IOException {
+    Path file = folder.newFile().toPath();
+    double cardinality;
+    int[] bitmap;
+    try (MappedLinearCounter<String> counter =
+        MappedLinearCounter.create(file, M, MurmurHashers.stringHasher64())) {
+      CountTestUtil.observeUnique(counter, 500);
+      cardinality = counter.getCardinality();
+      bitmap = counter.getBitmap();
+      counter.flush();
+    }
+
+    try (MappedLinearCounter<String> counter =
+        MappedLinearCounter.open(file, MurmurHashers.stringHasher64())) {
+      assertEquals(M, counter.getLongSize());
+      assertEquals(cardinality, counter.getCardinality(), 0d);
+      assertArrayEquals(bitmap, counter.getBitmap());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testOpen_notCounterFile() throws IOException {
+    Path file = folder.newFile().toPath();
+    Files.write(file, new byte[100]);
+    MappedLinearCounter.open(file, MurmurHashers.stringHasher64());
+  }
+
+  @Test(expected = IOException.class)
+  public void testOpen_truncatedFile() throws IOException {
+    Path file = folder.newFile().toPath();
+    MappedLinearCounter.create(file, M, MurmurHashers.stringHasher64()).close();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(MappedLinearCounter.HEADER_SIZE + M / Byte.SIZE / 2);
+    }
+    MappedLinearCounter.open(file, MurmurHashers.stringHasher64());
+  }
+
+  @Test(expected = IOException.class)
+  public void testOpen_invalidSize() throws IOException {
+    Path file = folder.newFile().toPath();
+    MappedLinearCounter.create(file, M, MurmurHashers.stringHasher64()).close();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(8).putLong(0, -1L), 8);
+    }
+    MappedLinearCounter.open(file, MurmurHashers.stringHasher64());
+  }
+
+  @Test
+  public void testMergeTo() throws IOException {
+    try (MappedLinearCounter<String> c1 = createCounter(M, MurmurHashers.stringHasher64());
+        MappedLinearCounter<String> c2 = createCounter(M, MurmurHashers.stringHasher64())) {
+      CountTestUtil.observeUnique(c1, 300);
+      CountTestUtil.observeUnique(c2, 400);
+
+      AggregateLinearCounter<String> aggregate = new AggregateLinearCounter<>(M);
+      c1.mergeTo(aggregate.getBitmap());
+      c2.mergeTo(aggregate.getBitmap());
+      assertEquals(700d, aggregate.getCardinality(), 700 * 0.07);
+
+      c1.mergeTo(c2);
+      assertArrayEquals(aggregate.getBitmap(), c2.getBitmap());
+    }
+  }
+
+  @Test
+  public void testClear() throws IOException {
+    try (MappedLinearCounter<String> counter = createCounter(M, MurmurHashers.stringHasher64())) {
+      CountTestUtil.observeUnique(counter, 100);
+      assertTrue(counter.getCardinality() > 0);
+
+      counter.clear();
+      assertEquals(0d, counter.getCardinality(), 0d);
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testClose() throws IOException {
+    MappedLinearCounter<String> counter = createCounter(M, MurmurHashers.stringHasher64());
+    counter.close();
+    counter.count("foo");
+  }
+
+  @Test
+  public void testClose_unmapsFile() throws IOException {
+    // The mappings of the process are listed only on Linux.
+    Path maps = Paths.get("/proc/self/maps");
+    assumeTrue(Files.isReadable(maps));
+
+    Path file = folder.newFile().toPath();
+    MappedLinearCounter<String> counter =
+        MappedLinearCounter.create(file, M, MurmurHashers.stringHasher64());
+    assertTrue(isMapped(maps, file));
+
+    counter.close();
+    counter.close();
+    assertFalse(isMapped(maps, file));
+  }
+
+  private static boolean isMapped(Path maps, Path file) throws IOException {
+    String path = file.toRealPath().toString();
+    for (String line : Files.readAllLines(maps, StandardCharsets.UTF_8)) {
+      if (line.endsWith(path)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private <T> MappedLinearCounter<T> createCounter(long size, Hasher<T> hasher)
+      throws IOException {
+    return MappedLinearCounter.create(folder.newFile().toPath(), size, hasher);
+  }
+}
@@ -0,0 +1,120 @@
+package ys.probabilistic.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Tests for {@link MurmurHashers} that check compatibility with the Guava's {@code murmur3}.
+ *
+ * @author Yauheni Shahun
+ */
+public class MurmurHashersTest {
+
+  private static final HashFunction MURMUR3_32 = Hashing.murmur3_32();
+  private static final HashFunction MURMUR3_128 = Hashing.murmur3_128();
+
+  private static final String[] STRINGS = {
+    "", "a", "ab", "abc", "abcd", "abcde", "abcdefghijklmnopq", "été", "€100",
+    "😀 smile", "unpaired \uD800 high", "unpaired \uDC00 low", "tail \uD800",
+    "фубар 中文 😀😁😂"
+  };
+
+  private final Random random = new Random(42);
+
+  @Test
+  public void testStringHasher() {
+    for (String value : STRINGS) {
+      assertStringHash(value);
+    }
+    for (int i = 0; i < 1000; i++) {
+      assertStringHash(UUID.randomUUID().toString());
+      assertStringHash(randomString(random.nextInt(40)));
+    }
+  }
+
+  @Test
+  public void testCharSequenceHasher() {
+    for (String value : STRINGS) {
+      assertEquals(MurmurHashers.stringHasher().hash(value),
+          MurmurHashers.charSequenceHasher().hash(new StringBuilder(value)));
+      assertEquals(MurmurHashers.stringHasher64().hash64(value),
+          MurmurHashers.charSequenceHasher64().hash64(new StringBuilder(value)));
+    }
+  }
+
+  @Test
+  public void testIntegerHasher() {
+    for (int i = 0; i < 1000; i++) {
+      int value = random.nextInt();
+      assertEquals(MURMUR3_32.newHasher().putInt(value).hash().asInt(),
+          MurmurHashers.integerHasher().hash(value));
+      assertEquals(MURMUR3_128.newHasher().putInt(value).hash().asLong(),
+          MurmurHashers.integerHasher64().hash64(value));
+      assertEquals(MURMUR3_128.newHasher().putInt(value).hash().asInt(),
+          MurmurHashers.integerHasher64().hash(value));
+      assertEquals(MURMUR3_128.newHasher().putInt(value).hash().asLong(),
+          ((IntHasher64) MurmurHashers.integerHasher64()).hash64(value));
+    }
+  }
+
+  @Test
+  public void testLongHasher() {
+    for (int i = 0; i < 1000; i++) {
+      long value = random.nextLong();
+      assertEquals(MURMUR3_32.newHasher().putLong(value).hash().asInt(),
+          MurmurHashers.longHasher().hash(value));
+      assertEquals(MURMUR3_128.newHasher().putLong(value).hash().asLong(),
+          MurmurHashers.longHasher64().hash64(value));
+      assertEquals(MURMUR3_128.newHasher().putLong(value).hash().asLong(),
+          ((LongHasher64) MurmurHashers.longHasher64()).hash64(value));
+    }
+  }
+
+  @Test
+  public void testByteArrayHasher() {
+    for (int length = 0; length < 70; length++) {
+      byte[] value = new byte[length];
+      random.nextBytes(value);
+      assertEquals(MURMUR3_32.hashBytes(value).asInt(), MurmurHashers.byteArrayHasher().hash(value));
+      assertEquals(MURMUR3_128.hashBytes(value).asLong(),
+          MurmurHashers.byteArrayHasher64().hash64(value));
+    }
+  }
+
+  private static void assertStringHash(String value) {
+    assertEquals(value, MURMUR3_32.newHasher().putString(value, StandardCharsets.UTF_8).hash().asInt(),
+        MurmurHashers.stringHasher().hash(value));
+    assertEquals(value, MURMUR3_32.hashBytes(value.getBytes(StandardCharsets.UTF_8)).asInt(),
+        MurmurHashers.stringHasher().hash(value));
+    assertEquals(value, MURMUR3_128.hashBytes(value.getBytes(StandardCharsets.UTF_8)).asLong(),
+        MurmurHashers.stringHasher64().hash64(value));
+  }
+
+  private String randomString(int length) {
+    StringBuilder builder = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      switch (random.nextInt(4)) {
+        case 0:
+          builder.append((char) random.nextInt(0x80));
+          break;
+        case 1:
+          builder.append((char) (0x80 + random.nextInt(0x780)));
+          break;
+        case 2:
+          builder.append((char) random.nextInt(0x10000));
+          break;
+        default:
+          builder.appendCodePoint(0x10000 + random.nextInt(0x100000));
+      }
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,157 @@
+package ys.probabilistic.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link OffHeapLinearCounter}.
+ *
+ * @author Yauheni Shahun
+ */
+public class OffHeapLinearCounterTest {
+  /*
+   * Number of unique values.
+   */
+  private static final int N = 8000;
+  /*
+   * Number of bits for counting (not multiple of the block size).
+   */
+  private static final int M = 8 * 1024 * 8 + 17;
+  /*
+   * Confidence interval 99.99% (see WriteConcurrentLinearCounterTest).
+   */
+  private static final double CONFIDENCE_9999 = 3.9 * 22.5;
+
+  private OffHeapLinearCounter<String> counter;
+
+  @Before
+  public void setUp() {
+    counter = new OffHeapLinearCounter<>(M, MurmurHashers.stringHasher());
+  }
+
+  @After
+  public void tearDown() {
+    counter.close();
+  }
+
+  @Test
+  public void testCardinality_withMultipleWriters() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      final int offset = i * N / 4;
+      futures.add(executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          for (int j = 0; j < N / 2; j++) {
+            counter.count(String.valueOf(offset + j % (N / 4)));
+          }
+        }
+      }));
+    }
+    executor.shutdown();
+
+    for (Future<?> future : futures) {
+      future.get();
+    }
+
+    assertEquals(N, counter.getCardinality(), CONFIDENCE_9999);
+  }
+
+  @Test
+  public void testCompatibility() {
+    LinearCounter<String> other =
+        new WriteConcurrentLinearCounter<>(M, MurmurHashers.stringHasher());
+    for (int i = 0; i < 1000; i++) {
+      counter.count(String.valueOf(i));
+      other.count(String.valueOf(i));
+    }
+
+    assertArrayEquals(other.getBitmap(), counter.getBitmap());
+    assertEquals(other.getCardinality(), counter.getCardinality(), 0d);
+    assertEquals(other.getFillRatio(), counter.getFillRatio(), 0d);
+
+    int[] bitmap = new int[CountUtil.getBlockCount(M)];
+    counter.mergeTo(bitmap);
+    assertArrayEquals(other.getBitmap(), bitmap);
+  }
+
+  @Test
+  public void testCountHashes() {
+    LinearCounter<String> other =
+        new WriteConcurrentLinearCounter<>(M, MurmurHashers.stringHasher());
+    int[] hashes = new int[3000];
+    for (int i = 0; i < hashes.length; i++) {
+      hashes[i] = Murmur3.hash32(String.valueOf(i % 1000));
+      other.countHash(hashes[i]);
+    }
+    counter.countHashes(hashes, 0, hashes.length);
+
+    assertArrayEquals(other.getBitmap(), counter.getBitmap());
+  }
+
+  @Test
+  public void testClear() {
+    CountTestUtil.observeUnique(counter, 100);
+    assertTrue(counter.getCardinality() > 0);
+
+    counter.clear();
+    assertEquals(0d, counter.getCardinality(), 0d);
+  }
+
+  @Test
+  public void testMergeTo_offHeap() {
+    try (OffHeapLinearCounter<String> other =
+        new OffHeapLinearCounter<>(M, MurmurHashers.stringHasher())) {
+      CountTestUtil.observeUnique(counter, 100);
+      CountTestUtil.observeUnique(other, 200);
+
+      int[] expected = counter.getBitmap();
+      other.mergeTo(expected);
+
+      counter.mergeTo(other);
+      assertArrayEquals(expected, other.getBitmap());
+
+      counter.clear();
+      other.copyTo(counter);
+      assertArrayEquals(expected, counter.getBitmap());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeTo_bitmapWithDifferentLength() {
+    counter.mergeTo(new int[M / 64]);
+  }
+
+  @Test
+  public void testUnreachableCounterIsReleased() throws InterruptedException {
+    NativeMemoryReference memory =
+        new OffHeapLinearCounter<>(M, MurmurHashers.stringHasher()).getMemory();
+    assertTrue(memory.getAddress() != 0);
+
+    for (int i = 0; i < 100 && memory.getAddress() != 0; i++) {
+      System.gc();
+      Thread.sleep(10);
+      NativeMemoryReference.expunge();
+    }
+    assertEquals(0, memory.getAddress());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testClose() {
+    counter.close();
+    counter.close();
+    counter.count("foo");
+  }
+}
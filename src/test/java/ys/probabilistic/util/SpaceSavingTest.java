@@ -0,0 +1,82 @@
+package ys.probabilistic.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link SpaceSaving}.
+ *
+ * @author Yauheni Shahun
+ */
+public class SpaceSavingTest {
+  /*
+   * Number of distinct values.
+   */
+  private static final int N = 10000;
+  /*
+   * Number of the top values.
+   */
+  private static final int K = 10;
+
+  @Test
+  public void testGetTopK_exact() {
+    SpaceSaving<Integer> summary = new SpaceSaving<>(100, 4, MurmurHashers.integerHasher());
+    for (int i = 0; i < 20; i++) {
+      summary.count(i, i + 1);
+    }
+
+    List<SpaceSaving.Item<Integer>> top = summary.getTopK(3);
+    assertEquals(3, top.size());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(19 - i, (int) top.get(i).getValue());
+      assertEquals(20 - i, top.get(i).getCount());
+      assertEquals(0, top.get(i).getError());
+    }
+    assertEquals(210, summary.getTotalCount());
+  }
+
+  @Test
+  public void testGetTopK_zipf() {
+    SpaceSaving<Integer> summary = new SpaceSaving<>(K * 20, 4, MurmurHashers.integerHasher());
+    long[] counts = new long[N];
+    Random random = new Random(42);
+    // Frequency of value i is proportional to 1 / (i + 1).
+    double[] cdf = new double[N];
+    double sum = 0;
+    for (int i = 0; i < N; i++) {
+      sum += 1d / (i + 1);
+      cdf[i] = sum;
+    }
+    for (int n = 0; n < 200000; n++) {
+      double x = random.nextDouble() * sum;
+      int value = 0;
+      while (cdf[value] < x) {
+        value++;
+      }
+      counts[value]++;
+      summary.count(value);
+    }
+
+    List<SpaceSaving.Item<Integer>> top = summary.getTopK(K);
+    assertEquals(K, top.size());
+    for (int i = 0; i < K; i++) {
+      SpaceSaving.Item<Integer> item = top.get(i);
+      long count = counts[item.getValue()];
+      assertTrue(item.getLowerBound() <= count && count <= item.getCount());
+      if (i > 0) {
+        assertTrue(item.getCount() <= top.get(i - 1).getCount());
+      }
+    }
+    // The most frequent values are far above the error bound.
+    assertEquals(0, (int) top.get(0).getValue());
+    assertEquals(1, (int) top.get(1).getValue());
+
+    summary.clear();
+    assertEquals(0, summary.getTopK(K).size());
+  }
+}
@@ -0,0 +1,110 @@
+package ys.probabilistic.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link StripedLinearCounter}.
+ *
+ * @author Yauheni Shahun
+ */
+public class StripedLinearCounterTest {
+  /*
+   * Number of unique values.
+   */
+  private static final int N = 8000;
+  /*
+   * Number of bits for counting.
+   */
+  private static final int M = 8 * 1024 * 8;
+  /*
+   * Confidence interval 99.99% (see WriteConcurrentLinearCounterTest).
+   */
+  private static final double CONFIDENCE_9999 = 3.9 * 22.5;
+
+  private StripedLinearCounter<String> counter;
+
+  @Before
+  public void setUp() {
+    counter = new StripedLinearCounter<>(M, 4, MurmurHashers.stringHasher());
+  }
+
+  @Test
+  public void testStripeCount() {
+    assertEquals(1, new StripedLinearCounter<>(M, 1, new SimpleHasher<String>()).getStripeCount());
+    assertEquals(4, new StripedLinearCounter<>(M, 3, new SimpleHasher<String>()).getStripeCount());
+    assertEquals(8, new StripedLinearCounter<>(M, 8, new SimpleHasher<String>()).getStripeCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testStripeCount_invalid() {
+    new StripedLinearCounter<>(M, 0, new SimpleHasher<String>());
+  }
+
+  @Test
+  public void testCardinality_withMultipleWriters() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      final int offset = i * N / 4;
+      futures.add(executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          for (int j = 0; j < N / 4; j++) {
+            counter.count(String.valueOf(offset + j));
+            counter.count(String.valueOf(offset + j));
+          }
+        }
+      }));
+    }
+    executor.shutdown();
+
+    for (Future<?> future : futures) {
+      future.get();
+    }
+
+    assertEquals(N, counter.getCardinality(), CONFIDENCE_9999);
+  }
+
+  @Test
+  public void testCompatibility() {
+    LinearCounter<String> other =
+        new WriteConcurrentLinearCounter<>(M, MurmurHashers.stringHasher());
+    for (int i = 0; i < 1000; i++) {
+      counter.count(String.valueOf(i));
+      other.count(String.valueOf(i));
+    }
+
+    assertArrayEquals(other.getBitmap(), counter.getBitmap());
+    assertEquals(other.getCardinality(), counter.getCardinality(), 0d);
+    assertEquals(other.getFillRatio(), counter.getFillRatio(), 0d);
+
+    int[] bitmap = new int[M / LinearCounter.BLOCK_SIZE];
+    counter.mergeTo(bitmap);
+    assertArrayEquals(other.getBitmap(), bitmap);
+  }
+
+  @Test
+  public void testClear() {
+    CountTestUtil.observeUnique(counter, 100);
+    assertTrue(counter.getCardinality() > 0);
+
+    counter.clear();
+    assertEquals(0d, counter.getCardinality(), 0d);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeTo_bitmapWithDifferentLength() {
+    counter.mergeTo(new int[M / 64]);
+  }
+}
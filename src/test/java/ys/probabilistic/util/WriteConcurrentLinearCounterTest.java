@@ -1,5 +1,6 @@
 package ys.probabilistic.util;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -12,6 +13,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -98,6 +100,129 @@ public class WriteConcurrentLinearCounterTest {
     assertEquals(N, counter.getCardinality(), CONFIDENCE_9999);
   }
 
+  @Test
+  public void testCardinality_trackOneBitCount() throws Exception {
+    final WriteConcurrentLinearCounter<String> trackingCounter =
+        new WriteConcurrentLinearCounter<>(M, MurmurHashers.stringHasher(), true);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      futures.add(executor.submit(new Observer(trackingCounter, N / 2)));
+    }
+    executor.shutdown();
+
+    for (Future<?> future : futures) {
+      future.get();
+    }
+
+    int oneBitCount = CountUtil.getBitCount(trackingCounter.getBitmap());
+    assertEquals(oneBitCount, trackingCounter.getOneBitCount());
+    assertEquals(oneBitCount / (double) M, trackingCounter.getFillRatio(), 0d);
+    assertEquals(CountUtil.calculateCardinality(M, oneBitCount),
+        trackingCounter.getCardinality(), 0d);
+
+    CountTestUtil.observeUnique(counter, 1000);
+    trackingCounter.mergeFrom(counter.getBitmap());
+    assertEquals(CountUtil.getBitCount(trackingCounter.getBitmap()),
+        trackingCounter.getOneBitCount());
+
+    trackingCounter.clear();
+    assertEquals(0, trackingCounter.getOneBitCount());
+    assertEquals(0d, trackingCounter.getCardinality(), 0d);
+  }
+
+  @Test
+  public void testCasRetryCount_instrumentationDisabled() throws Exception {
+    // The retries are counted only if the instrumentation is enabled (see the build).
+    Assume.assumeFalse(Instrumentation.ENABLED);
+
+    // The writers of a small bitmap contend on the same blocks.
+    WriteConcurrentLinearCounter<String> smallCounter =
+        new WriteConcurrentLinearCounter<>(256, MurmurHashers.stringHasher());
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      futures.add(executor.submit(new Observer(smallCounter, N)));
+    }
+    executor.shutdown();
+
+    for (Future<?> future : futures) {
+      future.get();
+    }
+
+    assertTrue(smallCounter.getCardinality() > 0);
+    assertEquals(0, smallCounter.getCasRetryCount());
+  }
+
+  @Test
+  public void testCount_primitives() {
+    Hasher<Integer> intHasher = MurmurHashers.integerHasher();
+    LinearCounter<Integer> intCounter = new WriteConcurrentLinearCounter<>(M, intHasher);
+    LinearCounter<Integer> boxedIntCounter = new WriteConcurrentLinearCounter<>(M, intHasher);
+    LinearCounter<Long> longCounter =
+        new WriteConcurrentLinearCounter<>(M, new SimpleHasher<Long>());
+    LinearCounter<Long> boxedLongCounter =
+        new WriteConcurrentLinearCounter<>(M, new SimpleHasher<Long>());
+
+    for (int i = 0; i < N; i++) {
+      intCounter.countInt(i);
+      boxedIntCounter.count(Integer.valueOf(i));
+      longCounter.countLong(i * 31L << 20);
+      boxedLongCounter.count(Long.valueOf(i * 31L << 20));
+    }
+
+    assertArrayEquals(boxedIntCounter.getBitmap(), intCounter.getBitmap());
+    assertArrayEquals(boxedLongCounter.getBitmap(), longCounter.getBitmap());
+    assertEquals(N, intCounter.getCardinality(), CONFIDENCE_9999);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testCountInt_unsupportedHasher() {
+    new WriteConcurrentLinearCounter<>(M, MurmurHashers.stringHasher()).countInt(5);
+  }
+
+  @Test
+  public void testCountHash() {
+    LinearCounter<String> other = new WriteConcurrentLinearCounter<>(M, new SimpleHasher<String>());
+    for (int i = 0; i < 100; i++) {
+      String value = String.valueOf(i);
+      counter.count(value);
+      other.countHash(value.hashCode());
+    }
+
+    assertArrayEquals(counter.getBitmap(), other.getBitmap());
+  }
+
+  @Test
+  public void testCount_batch() {
+    LinearCounter<String> arrayCounter =
+        new WriteConcurrentLinearCounter<>(M, new SimpleHasher<String>());
+    LinearCounter<String> iterableCounter =
+        new WriteConcurrentLinearCounter<>(M, new SimpleHasher<String>());
+    LinearCounter<String> hashCounter =
+        new WriteConcurrentLinearCounter<>(M, new SimpleHasher<String>());
+
+    String[] values = new String[N];
+    int[] hashes = new int[N + 2];
+    for (int i = 0; i < N; i++) {
+      values[i] = String.valueOf(i % (N / 2));
+      hashes[i + 1] = values[i].hashCode();
+      counter.count(values[i]);
+    }
+    arrayCounter.count(values);
+    iterableCounter.count(Arrays.asList(values));
+    hashCounter.countHashes(hashes, 1, N);
+
+    assertArrayEquals(counter.getBitmap(), arrayCounter.getBitmap());
+    assertArrayEquals(counter.getBitmap(), iterableCounter.getBitmap());
+    assertArrayEquals(counter.getBitmap(), hashCounter.getBitmap());
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testCount_batchWithNull() {
+    counter.count(new String[] {"a", null});
+  }
+
   @Test
   public void testClear() {
     assertEquals(0d, counter.getCardinality(), 0d);
@@ -138,6 +263,25 @@ public class WriteConcurrentLinearCounterTest {
     counter.mergeTo(new int[M / 64]);
   }
 
+  @Test
+  public void testMergeFrom() {
+    WriteConcurrentLinearCounter<String> other =
+        new WriteConcurrentLinearCounter<>(M, MurmurHashers.stringHasher());
+    CountTestUtil.observeUnique(other, 100);
+    int[] bitmap = other.getBitmap();
+
+    CountTestUtil.observeUnique(counter, 100);
+    counter.mergeTo(bitmap);
+    counter.mergeFrom(other.getBitmap());
+
+    assertArrayEquals(bitmap, counter.getBitmap());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeFrom_bitmapWithDifferentLength() {
+    counter.mergeFrom(new int[M / 64]);
+  }
+
   /**
    * An object that imitates the given count of unique observations.
    */
@@ -0,0 +1,126 @@
+package ys.probabilistic.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link WriteConcurrentLongLinearCounter}.
+ *
+ * @author Yauheni Shahun
+ */
+public class WriteConcurrentLongLinearCounterTest {
+  /*
+   * Number of unique values.
+   */
+  private static final int N = 8000;
+  /*
+   * Number of bits for counting (not a multiple of the word size).
+   */
+  private static final int M = 8 * 1024 * 8 + 32;
+  /*
+   * Confidence interval 99.99% (see WriteConcurrentLinearCounterTest).
+   */
+  private static final double CONFIDENCE_9999 = 3.9 * 22.5;
+
+  private WriteConcurrentLongLinearCounter<String> counter;
+
+  @Before
+  public void setUp() {
+    counter = new WriteConcurrentLongLinearCounter<>(M, MurmurHashers.stringHasher());
+  }
+
+  @Test
+  public void testCardinality() {
+    CountTestUtil.observe(counter, N * 2, N);
+    assertEquals(N, counter.getCardinality(), CONFIDENCE_9999);
+  }
+
+  @Test
+  public void testCardinality_withMultipleWriters() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      final int offset = i * N / 4;
+      futures.add(executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          for (int j = 0; j < N / 2; j++) {
+            counter.count(String.valueOf(offset + j % (N / 4)));
+          }
+        }
+      }));
+    }
+    executor.shutdown();
+
+    for (Future<?> future : futures) {
+      future.get();
+    }
+
+    assertEquals(N, counter.getCardinality(), CONFIDENCE_9999);
+  }
+
+  @Test
+  public void testGetBitmap() {
+    CountTestUtil.observeUnique(counter, 1000);
+
+    int[] bitmap = counter.getBitmap();
+    assertEquals(CountUtil.getBlockCount(M), bitmap.length);
+    assertArrayEquals(counter.getLongBitmap(), CountUtil.toLongBitmap(bitmap));
+
+    // The bitmap can be aggregated by the counter of int blocks.
+    AggregateLinearCounter<String> aggregate = new AggregateLinearCounter<>(M);
+    counter.mergeTo(aggregate.getBitmap());
+    assertArrayEquals(bitmap, aggregate.getBitmap());
+    assertEquals(counter.getCardinality(), aggregate.getCardinality(), 0d);
+    assertEquals(counter.getFillRatio(), aggregate.getFillRatio(), 0d);
+  }
+
+  @Test
+  public void testMerge() {
+    WriteConcurrentLongLinearCounter<String> other =
+        new WriteConcurrentLongLinearCounter<>(M, MurmurHashers.stringHasher());
+    CountTestUtil.observeUnique(counter, 1000);
+    CountTestUtil.observeUnique(other, 2000);
+
+    AggregateLongLinearCounter<String> aggregate = new AggregateLongLinearCounter<>(M);
+    counter.mergeTo(aggregate.getLongBitmap());
+    other.mergeTo(aggregate.getLongBitmap());
+    assertEquals(3000, aggregate.getCardinality(), CONFIDENCE_9999);
+
+    other.mergeFrom(counter.getLongBitmap());
+    assertArrayEquals(aggregate.getLongBitmap(), other.getLongBitmap());
+
+    counter.clear();
+    counter.mergeFrom(other.getBitmap());
+    assertArrayEquals(aggregate.getBitmap(), counter.getBitmap());
+  }
+
+  @Test
+  public void testClear() {
+    CountTestUtil.observeUnique(counter, 100);
+    counter.clear();
+    assertEquals(0d, counter.getCardinality(), 0d);
+  }
+
+  @Test
+  public void testToIntBitmap() {
+    int[] bitmap = {1, -1, 0x80000000, 7, 42};
+    long[] words = CountUtil.toLongBitmap(bitmap);
+    assertArrayEquals(new long[] {0xffffffff00000001L, 0x0000000780000000L, 42L}, words);
+    assertArrayEquals(bitmap, CountUtil.toIntBitmap(words, bitmap.length));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeTo_bitmapWithDifferentLength() {
+    counter.mergeTo(new long[M / 128]);
+  }
+}